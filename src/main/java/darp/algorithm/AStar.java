@@ -0,0 +1,457 @@
+package darp.algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import darp.jxmapviewer2.MyWaypoint;
+import darp.models.ParametersModel;
+import darp.models.RequestsModel;
+import darp.models.ResultModel;
+import darp.models.TestModel;
+import darp.utils.Router;
+
+/**
+ * An exact darp solver that searches the state graph of {@link Psaraftis} forward from the start state (0, [3,...,3])
+ * in the order of the cost to reach a state plus a lower bound of its remaining cost (A*).
+ * Unlike the dynamic programming solution it only expands the states that might be part of a route cheaper than the best known one,
+ * which is a small fraction of all states if the customers are spatially clustered.
+ * <p>
+ * The states are the packed states of {@link StateSpace} and have to pass the same screens. The remaining cost of a state is bounded
+ * by {@link LowerBound} and states that can't lead to a route cheaper than a heuristic route (see {@link Alns}) are not generated at all.
+ * The lower bound is admissible but not necessarily consistent, so a closed state is opened again if it is reached more cheaply.
+ * <p>
+ * The memory grows with the number of generated states, which is still exponential in the number of customers for loose constraints.
+ * @author Daniel Schröder
+ */
+public class AStar implements DarpSolver {
+
+	// the number of expanded states between two checks for cancellation
+	private static final int CHECK_INTERVAL = 4096;
+
+	// the iterations of the heuristic search for the first upper bound
+	private static final int HEURISTIC_ITERATIONS = 1000;
+
+	// the initial number of states that can be stored
+	private static final int INITIAL_CAPACITY = 1024;
+
+	// used for routing between points
+	private Router router;
+
+	// defined by the test
+	private int n;
+	private CostMatrix costs;
+	private RouteEvaluator evaluator;
+	private StateSpace space;
+
+	// the lower bound of the remaining cost of a state
+	private LowerBound lowerBound;
+
+	// the best route found so far
+	private int[] bestRoute;
+	private double bestCost;
+
+	// the generated states with the cost to reach them, the lower bound of their remaining cost,
+	// their predecessor on the cheapest known path and whether they are expanded
+	private long[] states;
+	private double[] reached;
+	private double[] remaining;
+	private int[] parents;
+	private boolean[] closed;
+	private int size;
+
+	// open addressing hash table from the packed states to their indices (-1 if empty)
+	private int[] table;
+
+	// binary heap of the open states ordered by their estimated total cost (entries may be outdated)
+	private int[] heap;
+	private double[] heapCosts;
+	private int heapSize;
+
+	// statistics
+	private long expanded;
+
+	// used to cancel the calculation
+	private volatile boolean cancelled;
+	private volatile Thread solvingThread;
+
+	// used to report better routes
+	private volatile IncumbentListener incumbentListener;
+
+	/**
+	 * Creates a new darp solver that cannot use routing.
+	 * (Mainly for testing purposes)
+	 */
+	public AStar() {
+
+	}
+
+	/**
+	 * Creates a new darp solver.
+	 * @param router a Router to calculate paths between points
+	 * @throws NullPointerException if router is null
+	 */
+	public AStar(Router router) throws NullPointerException {
+		this.router = Objects.requireNonNull(router);
+	}
+
+	@Override
+	public List<MyWaypoint> getOptRoute(TestModel test) throws NullPointerException, IllegalArgumentException, CancellationException {
+		if (test == null || test.getParametersModel() == null || test.getRequestsModel() == null || test.getResultModel() == null) {
+			throw new NullPointerException("Invalid TestModel");
+		}
+
+		// the calculation can be cancelled by calling cancel() or by interrupting this thread
+		solvingThread = Thread.currentThread();
+
+		try {
+			RequestsModel requests = test.getRequestsModel();
+			ParametersModel parameters = test.getParametersModel();
+
+			// the start position of the vehicle and the start and destination positions of the customers
+			List<MyWaypoint> points = new ArrayList<>();
+			points.addAll(requests.getStartWaypoints());
+			points.addAll(requests.getDestWaypoints());
+
+			n = requests.getDestWaypoints().size();
+
+			if (n > StateSpace.MAX_CUSTOMERS) {
+				throw new IllegalArgumentException("Too many customers (maximum is " + StateSpace.MAX_CUSTOMERS + ")");
+			}
+
+			boolean routing = parameters.isRouting() & (router != null);
+
+			long startTime = System.currentTimeMillis();
+			costs = routing ? new CostMatrix(points, router) : new CostMatrix(points);
+			long routingTime = costs.getRoutingTime();
+
+			evaluator = new RouteEvaluator(costs, parameters);
+			space = new StateSpace(n, evaluator.getCapacity(), evaluator.getMPS());
+
+			List<MyWaypoint> sequence = new ArrayList<>();
+
+			try {
+				calcOptRoute(points);
+
+				for (int l : bestRoute) {
+					sequence.add(points.get(l));
+				}
+			} finally {
+				// only needed while solving
+				costs = null;
+				evaluator = null;
+				space = null;
+				lowerBound = null;
+				states = null;
+				reached = null;
+				remaining = null;
+				parents = null;
+				closed = null;
+				table = null;
+				heap = null;
+				heapCosts = null;
+			}
+
+			long totalTime = System.currentTimeMillis() - startTime;
+
+			ResultModel result = test.getResultModel();
+
+			// set times
+			result.setTotalTime(totalTime);
+			result.setRoutingTime(routingTime);
+			result.setAlgoTime(totalTime - routingTime);
+
+			// the search only stops at an optimal route
+			result.setOptimal(true);
+
+			return sequence;
+		} finally {
+			cancelled = false;
+		}
+	}
+
+	/**
+	 * Searches the optimal route. The result is saved in bestRoute.
+	 * @param points the points of the test
+	 */
+	private void calcOptRoute(List<MyWaypoint> points) {
+		// like Psaraftis, the route of a test without a feasible route only contains the start position
+		if (!evaluator.hasFeasibleRoute()) {
+			bestRoute = new int[] { 0 };
+			return;
+		}
+
+		// the first upper bound
+		Incumbent incumbent = new Incumbent(points, incumbentListener);
+		bestRoute = evaluator.getSequentialRoute();
+
+		if (n > 1) {
+			bestRoute = new Insertion(evaluator).construct(2);
+			bestRoute = new Alns(evaluator, new Random(0)).search(bestRoute, HEURISTIC_ITERATIONS, Long.MAX_VALUE);
+		}
+
+		bestCost = evaluator.getCost(bestRoute);
+		incumbent.update(bestRoute, bestCost);
+
+		lowerBound = new LowerBound(evaluator);
+
+		states = new long[INITIAL_CAPACITY];
+		reached = new double[INITIAL_CAPACITY];
+		remaining = new double[INITIAL_CAPACITY];
+		parents = new int[INITIAL_CAPACITY];
+		closed = new boolean[INITIAL_CAPACITY];
+		table = new int[2 * INITIAL_CAPACITY];
+		heap = new int[INITIAL_CAPACITY];
+		heapCosts = new double[INITIAL_CAPACITY];
+		size = 0;
+		heapSize = 0;
+		expanded = 0;
+
+		Arrays.fill(table, -1);
+
+		long start = space.getStartState();
+		push(add(start, 0, lowerBound.get(space, start), -1));
+
+		while (heapSize > 0) {
+			double estimate = heapCosts[0];
+			int index = pop();
+
+			// the state was reached more cheaply or is already expanded
+			if (closed[index] || estimate != reached[index] + remaining[index]) {
+				continue;
+			}
+
+			// no state can lead to a cheaper route
+			if (estimate >= bestCost) {
+				break;
+			}
+
+			if (++expanded % CHECK_INTERVAL == 0) {
+				checkCancelled();
+			}
+
+			closed[index] = true;
+			long state = states[index];
+
+			// all customers are delivered, because of the lower bounds no other route can be cheaper
+			if (space.getKsInState(state, 1) == n) {
+				bestCost = reached[index];
+				bestRoute = getRoute(index);
+				incumbent.update(bestRoute, bestCost);
+
+				break;
+			}
+
+			expand(index);
+		}
+	}
+
+	/**
+	 * Generates the next states of a state that pass the screens and might lead to a route cheaper than the best one.
+	 * @param index the index of the state
+	 */
+	private void expand(int index) {
+		long state = states[index];
+		int l = space.getStop(state);
+		double factor = evaluator.getPropFactor(space.getKsInState(state, 2), space.getKsInState(state, 3));
+
+		for (long nextStops = space.getNextStops(state); nextStops != 0; nextStops &= nextStops - 1) {
+			int s = StateSpace.nextStop(nextStops);
+			long nextState = space.getNextState(state, s);
+
+			if (!space.checkVehicleCapacity(nextState) || !space.checkMPS(nextState)) {
+				continue;
+			}
+
+			double cost = reached[index] + costs.get(l, s) * factor;
+			int next = find(nextState);
+
+			if (next == -1) {
+				double bound = lowerBound.get(space, nextState);
+
+				if (cost + bound < bestCost) {
+					push(add(nextState, cost, bound, index));
+				}
+			} else if (cost < reached[next]) {
+				// (re)open the state with the cheaper path
+				reached[next] = cost;
+				parents[next] = index;
+				closed[next] = false;
+
+				if (cost + remaining[next] < bestCost) {
+					push(next);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the route to a state by following the predecessors.
+	 * @param index the index of the state
+	 * @return the route
+	 */
+	private int[] getRoute(int index) {
+		int[] route = new int[2 * n + 1];
+
+		for (int i = route.length - 1; i >= 0; i--) {
+			route[i] = space.getStop(states[index]);
+			index = parents[index];
+		}
+
+		return route;
+	}
+
+	/**
+	 * Stores a new state.
+	 * @param state the packed state
+	 * @param cost the cost to reach the state
+	 * @param bound the lower bound of the remaining cost of the state
+	 * @param parent the index of the predecessor (-1 for the start state)
+	 * @return the index of the state
+	 */
+	private int add(long state, double cost, double bound, int parent) {
+		if (size == states.length) {
+			int capacity = 2 * states.length;
+
+			states = Arrays.copyOf(states, capacity);
+			reached = Arrays.copyOf(reached, capacity);
+			remaining = Arrays.copyOf(remaining, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+			closed = Arrays.copyOf(closed, capacity);
+
+			// keep the load of the hash table at most 1/2
+			table = new int[2 * capacity];
+			Arrays.fill(table, -1);
+
+			for (int i = 0; i < size; i++) {
+				table[getSlot(states[i])] = i;
+			}
+		}
+
+		int index = size++;
+
+		states[index] = state;
+		reached[index] = cost;
+		remaining[index] = bound;
+		parents[index] = parent;
+		table[getSlot(state)] = index;
+
+		return index;
+	}
+
+	/**
+	 * @param state the packed state
+	 * @return the index of the state or -1 if it wasn't generated yet
+	 */
+	private int find(long state) {
+		return table[getSlot(state)];
+	}
+
+	/**
+	 * Returns the slot of the hash table that contains the given state or the empty slot where it belongs (linear probing).
+	 * @param state the packed state
+	 * @return the slot
+	 */
+	private int getSlot(long state) {
+		int mask = table.length - 1;
+		int slot = (int) ((state * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+
+		while (table[slot] != -1 && states[table[slot]] != state) {
+			slot = (slot + 1) & mask;
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Adds a state to the heap with its current estimated total cost.
+	 * @param index the index of the state
+	 */
+	private void push(int index) {
+		if (heapSize == heap.length) {
+			heap = Arrays.copyOf(heap, 2 * heap.length);
+			heapCosts = Arrays.copyOf(heapCosts, 2 * heapCosts.length);
+		}
+
+		double estimate = reached[index] + remaining[index];
+		int i = heapSize++;
+
+		while (i > 0 && heapCosts[(i - 1) / 2] > estimate) {
+			heap[i] = heap[(i - 1) / 2];
+			heapCosts[i] = heapCosts[(i - 1) / 2];
+			i = (i - 1) / 2;
+		}
+
+		heap[i] = index;
+		heapCosts[i] = estimate;
+	}
+
+	/**
+	 * Removes the state with the smallest estimated total cost from the heap.
+	 * @return the index of the state
+	 */
+	private int pop() {
+		int top = heap[0];
+		int last = heap[--heapSize];
+		double lastCost = heapCosts[heapSize];
+		int i = 0;
+
+		while (2 * i + 1 < heapSize) {
+			int child = 2 * i + 1;
+
+			if (child + 1 < heapSize && heapCosts[child + 1] < heapCosts[child]) {
+				child++;
+			}
+
+			if (heapCosts[child] >= lastCost) {
+				break;
+			}
+
+			heap[i] = heap[child];
+			heapCosts[i] = heapCosts[child];
+			i = child;
+		}
+
+		heap[i] = last;
+		heapCosts[i] = lastCost;
+
+		return top;
+	}
+
+	/**
+	 * Stops the calculation if the solver was cancelled or the solving thread was interrupted.
+	 * @throws CancellationException if the calculation should stop
+	 */
+	private void checkCancelled() throws CancellationException {
+		if (cancelled || solvingThread.isInterrupted()) {
+			throw new CancellationException("The calculation was cancelled");
+		}
+	}
+
+	/**
+	 * @return the number of states expanded by the last search
+	 */
+	public long getExpandedStates() {
+		return expanded;
+	}
+
+	/**
+	 * @return the number of states generated by the last search
+	 */
+	public long getGeneratedStates() {
+		return size;
+	}
+
+	@Override
+	public void cancel() {
+		cancelled = true;
+	}
+
+	@Override
+	public void setIncumbentListener(IncumbentListener listener) {
+		incumbentListener = listener;
+	}
+}
@@ -0,0 +1,469 @@
+package darp.algorithm;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Adaptive large neighbourhood search (Ropke and Pisinger) for the route of a test.
+ * In each iteration some customers are removed from the current route by a removal operator (random, worst or Shaw removal)
+ * and inserted again by a repair operator (cheapest, regret-2 or regret-3 insertion, see {@link Insertion}).
+ * The operators are selected by their weights, which adapt to their success every {@value #SEGMENT} iterations.
+ * A new route replaces the current one by simulated annealing.
+ * <p>
+ * Removing both stops of a customer keeps the precedence of the remaining stops, so every route stays feasible.
+ * The routes are int arrays that are reused by all iterations. The search only depends on the random numbers,
+ * so it finds the same route for the same seed unless it is stopped by the time limit.
+ * A search object is not thread-safe, but it can be cancelled from any thread.
+ * @author Daniel Schröder
+ */
+public class Alns {
+
+	// the number of iterations after which the weights are adjusted
+	private static final int SEGMENT = 100;
+
+	// how fast the weights follow the scores of the last segment
+	private static final double REACTION = 0.1;
+
+	// the scores of an operator for a new best, a better and an accepted route
+	private static final double SCORE_BEST = 33, SCORE_BETTER = 9, SCORE_ACCEPTED = 13;
+
+	// a route that is this much worse than the initial one is accepted with probability 0.5 at the start
+	private static final double START_WORSENING = 0.05;
+	private static final double COOLING = 0.99975;
+
+	// the largest fraction of customers removed in one iteration
+	private static final double MAX_REMOVAL = 0.4;
+
+	// the randomness of the worst and Shaw removal (larger values remove the worst or most related customers more likely)
+	private static final int WORST_DETERMINISM = 3, SHAW_DETERMINISM = 6;
+
+	// the removal operators
+	private static final int RANDOM = 0, WORST = 1, SHAW = 2;
+
+	// the regrets of the repair operators
+	private static final int[] REGRETS = { 1, 2, 3 };
+
+	private final RouteEvaluator evaluator;
+	private final CostMatrix costs;
+	private final Insertion insertion;
+	private final Random random;
+	private final int n;
+
+	// used to normalise the relatedness of two customers
+	private final double maxCost;
+
+	// the routes
+	private final int[] current, candidate, best;
+
+	// the customers in any order, the removed customers and the customers sorted by a key
+	private final int[] customers, removed, sorted;
+	private final boolean[] isRemoved;
+	private final double[] keys;
+
+	// the adaptive weights of the operators
+	private final double[] removalWeights, removalScores, repairWeights, repairScores;
+	private final int[] removalUses, repairUses;
+
+	// the best route of all searches for the test (optional)
+	private Incumbent incumbent;
+
+	// statistics
+	private long iterations;
+
+	// used to cancel the search
+	private volatile boolean cancelled;
+
+	/**
+	 * Creates a new search for a test.
+	 * @param evaluator the evaluator of the test
+	 * @param random the source of all random decisions
+	 * @throws NullPointerException if null is passed
+	 */
+	public Alns(RouteEvaluator evaluator, Random random) throws NullPointerException {
+		this.evaluator = Objects.requireNonNull(evaluator);
+		this.random = Objects.requireNonNull(random);
+
+		costs = evaluator.getCosts();
+		insertion = new Insertion(evaluator);
+		n = evaluator.getN();
+
+		double max = 0;
+
+		for (int l1 = 0; l1 < costs.size(); l1++) {
+			for (int l2 = 0; l2 < costs.size(); l2++) {
+				max = Math.max(max, costs.get(l1, l2));
+			}
+		}
+
+		maxCost = max > 0 ? max : 1;
+
+		current = new int[2 * n + 1];
+		candidate = new int[2 * n + 1];
+		best = new int[2 * n + 1];
+		customers = new int[n];
+		removed = new int[n];
+		sorted = new int[n];
+		isRemoved = new boolean[n + 1];
+		keys = new double[n + 1];
+
+		for (int q = 1; q <= n; q++) {
+			customers[q - 1] = q;
+		}
+
+		removalWeights = new double[3];
+		removalScores = new double[3];
+		removalUses = new int[3];
+		repairWeights = new double[REGRETS.length];
+		repairScores = new double[REGRETS.length];
+		repairUses = new int[REGRETS.length];
+	}
+
+	/**
+	 * @return the evaluator of the test
+	 */
+	public RouteEvaluator getEvaluator() {
+		return evaluator;
+	}
+
+	/**
+	 * Sets the best route shared with other searches for the same test.
+	 * Every new best route of this search is offered to it.
+	 * @param incumbent the incumbent or null
+	 */
+	public void setIncumbent(Incumbent incumbent) {
+		this.incumbent = incumbent;
+	}
+
+	/**
+	 * Searches for a better route than the given one.
+	 * @param initial a feasible route
+	 * @param maxIterations the maximum number of iterations
+	 * @param timeLimit the maximum time (in millis) of the search
+	 * @return the best route found
+	 * @throws NullPointerException if initial is null
+	 * @throws IllegalArgumentException if initial is not a feasible route of the test
+	 */
+	public int[] search(int[] initial, long maxIterations, long timeLimit) throws NullPointerException, IllegalArgumentException {
+		if (!evaluator.isFeasible(Objects.requireNonNull(initial))) {
+			throw new IllegalArgumentException("The initial route must be feasible");
+		}
+
+		try {
+			iterations = 0;
+
+			System.arraycopy(initial, 0, current, 0, initial.length);
+			System.arraycopy(initial, 0, best, 0, initial.length);
+
+			// with a single customer there is only one route
+			if (n < 2) {
+				return best.clone();
+			}
+
+			Arrays.fill(removalWeights, 1);
+			Arrays.fill(repairWeights, 1);
+			resetScores();
+
+			double currentCost = getCost(current, current.length, 0);
+			double bestCost = currentCost;
+			double temperature = START_WORSENING * currentCost / Math.log(2);
+
+			long now = System.currentTimeMillis();
+			long deadline = timeLimit < Long.MAX_VALUE - now ? now + timeLimit : Long.MAX_VALUE;
+			int maxRemoval = Math.max(1, (int) (MAX_REMOVAL * n));
+
+			// the search can also be stopped by interrupting this thread
+			while (iterations < maxIterations && !cancelled && !Thread.currentThread().isInterrupted() && System.currentTimeMillis() < deadline) {
+				iterations++;
+
+				int removal = select(removalWeights);
+				int repair = select(repairWeights);
+				int count = 1 + random.nextInt(maxRemoval);
+
+				System.arraycopy(current, 0, candidate, 0, current.length);
+
+				switch (removal) {
+				case RANDOM:
+					removeRandom(count);
+					break;
+				case WORST:
+					removeWorst(count);
+					break;
+				default:
+					removeShaw(count);
+				}
+
+				int size = removeStops(candidate, count);
+				double score = 0;
+
+				// the insertion can get stuck because of the maximum position shift
+				if (insertion.insert(candidate, size, removed, count, REGRETS[repair]) == candidate.length) {
+					double cost = getCost(candidate, candidate.length, 0);
+
+					if (cost < currentCost - 1e-9 || random.nextDouble() < Math.exp((currentCost - cost) / temperature)) {
+						score = cost < bestCost - 1e-9 ? SCORE_BEST : cost < currentCost - 1e-9 ? SCORE_BETTER : SCORE_ACCEPTED;
+
+						System.arraycopy(candidate, 0, current, 0, candidate.length);
+						currentCost = cost;
+
+						if (cost < bestCost - 1e-9) {
+							System.arraycopy(candidate, 0, best, 0, candidate.length);
+							bestCost = cost;
+
+							if (incumbent != null) {
+								incumbent.update(best, bestCost);
+							}
+						}
+					}
+				}
+
+				removalScores[removal] += score;
+				removalUses[removal]++;
+				repairScores[repair] += score;
+				repairUses[repair]++;
+
+				temperature *= COOLING;
+
+				if (iterations % SEGMENT == 0) {
+					adjustWeights(removalWeights, removalScores, removalUses);
+					adjustWeights(repairWeights, repairScores, repairUses);
+					resetScores();
+				}
+			}
+
+			return best.clone();
+		} finally {
+			cancelled = false;
+		}
+	}
+
+	/**
+	 * Asks the running search to stop after the current iteration.
+	 * The search then returns the best route found so far. If the search hasn't started yet, it returns the initial route.
+	 * This can be called from any thread.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * @return the number of iterations of the last search
+	 */
+	public long getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Selects an operator with a probability proportional to its weight.
+	 * @param weights the weights of the operators
+	 * @return the index of the operator
+	 */
+	private int select(double[] weights) {
+		double sum = 0;
+
+		for (double weight : weights) {
+			sum += weight;
+		}
+
+		double value = random.nextDouble() * sum;
+
+		for (int i = 0; i < weights.length - 1; i++) {
+			value -= weights[i];
+
+			if (value < 0) {
+				return i;
+			}
+		}
+
+		return weights.length - 1;
+	}
+
+	/**
+	 * Moves the weights towards the average scores of the last segment.
+	 * @param weights the weights
+	 * @param scores the scores of the last segment
+	 * @param uses the number of uses in the last segment
+	 */
+	private static void adjustWeights(double[] weights, double[] scores, int[] uses) {
+		for (int i = 0; i < weights.length; i++) {
+			if (uses[i] > 0) {
+				weights[i] = weights[i] * (1 - REACTION) + REACTION * scores[i] / uses[i];
+			}
+
+			// an operator must never become impossible to select
+			weights[i] = Math.max(weights[i], 0.01);
+		}
+	}
+
+	/**
+	 * Resets the scores and uses of all operators.
+	 */
+	private void resetScores() {
+		Arrays.fill(removalScores, 0);
+		Arrays.fill(removalUses, 0);
+		Arrays.fill(repairScores, 0);
+		Arrays.fill(repairUses, 0);
+	}
+
+	/**
+	 * Removes random customers.
+	 * @param count the number of customers
+	 */
+	private void removeRandom(int count) {
+		// partial shuffle
+		for (int k = 0; k < count; k++) {
+			int h = k + random.nextInt(n - k);
+			int q = customers[h];
+
+			customers[h] = customers[k];
+			customers[k] = q;
+			removed[k] = q;
+		}
+	}
+
+	/**
+	 * Removes customers that are expensive in the current route.
+	 * The cost of a customer is the saving of the route without it.
+	 * @param count the number of customers
+	 */
+	private void removeWorst(int count) {
+		double cost = getCost(candidate, candidate.length, 0);
+
+		for (int q = 1; q <= n; q++) {
+			sorted[q - 1] = q;
+
+			// the largest saving first
+			keys[q] = getCost(candidate, candidate.length, q) - cost;
+		}
+
+		sortByKeys(n);
+		selectSorted(n, count, 0, WORST_DETERMINISM);
+	}
+
+	/**
+	 * Removes customers that are related to each other: their pickups and deliveries are close
+	 * and their numbers are similar (so they are picked up and delivered at similar positions).
+	 * @param count the number of customers
+	 */
+	private void removeShaw(int count) {
+		removed[0] = 1 + random.nextInt(n);
+		isRemoved[removed[0]] = true;
+
+		for (int k = 1; k < count; k++) {
+			int r = removed[random.nextInt(k)];
+			int m = 0;
+
+			for (int q = 1; q <= n; q++) {
+				if (!isRemoved[q]) {
+					sorted[m++] = q;
+					keys[q] = (costs.get(r, q) + costs.get(n + r, n + q)) / maxCost + (double) Math.abs(r - q) / n;
+				}
+			}
+
+			sortByKeys(m);
+			selectSorted(m, 1, k, SHAW_DETERMINISM);
+			isRemoved[removed[k]] = true;
+		}
+
+		for (int k = 0; k < count; k++) {
+			isRemoved[removed[k]] = false;
+		}
+	}
+
+	/**
+	 * Selects customers from the sorted ones, preferring the first ones.
+	 * @param m the number of sorted customers
+	 * @param count the number of customers to select
+	 * @param offset the index of the first selected customer in the removed customers
+	 * @param determinism the preference of the first customers
+	 */
+	private void selectSorted(int m, int count, int offset, int determinism) {
+		for (int k = 0; k < count; k++) {
+			int h = (int) (Math.pow(random.nextDouble(), determinism) * (m - k));
+
+			removed[offset + k] = sorted[h];
+
+			// keep the order of the remaining customers
+			System.arraycopy(sorted, h + 1, sorted, h, m - k - h - 1);
+		}
+	}
+
+	/**
+	 * Sorts the first customers by their keys (ascending).
+	 * Insertion sort doesn't allocate and is fast for the number of customers of a test.
+	 * @param m the number of customers
+	 */
+	private void sortByKeys(int m) {
+		for (int i = 1; i < m; i++) {
+			int q = sorted[i];
+			int j = i - 1;
+
+			while (j >= 0 && keys[sorted[j]] > keys[q]) {
+				sorted[j + 1] = sorted[j];
+				j--;
+			}
+
+			sorted[j + 1] = q;
+		}
+	}
+
+	/**
+	 * Removes the stops of the removed customers from a route.
+	 * @param route the route
+	 * @param count the number of removed customers
+	 * @return the number of remaining stops
+	 */
+	private int removeStops(int[] route, int count) {
+		for (int k = 0; k < count; k++) {
+			isRemoved[removed[k]] = true;
+		}
+
+		int size = 1;
+
+		for (int p = 1; p < route.length; p++) {
+			int l = route[p];
+
+			if (!isRemoved[l <= n ? l : l - n]) {
+				route[size++] = l;
+			}
+		}
+
+		for (int k = 0; k < count; k++) {
+			isRemoved[removed[k]] = false;
+		}
+
+		return size;
+	}
+
+	/**
+	 * Returns the cost of a route without the stops of a customer, which then waits during the whole route.
+	 * @param route the route
+	 * @param size the number of stops
+	 * @param skipped the customer or 0 to use all stops
+	 * @return the cost
+	 */
+	private double getCost(int[] route, int size, int skipped) {
+		double cost = 0;
+		int pickups = 0, deliveries = 0;
+		int previous = route[0];
+
+		for (int p = 1; p < size; p++) {
+			int l = route[p];
+
+			if (skipped > 0 && (l == skipped || l == n + skipped)) {
+				continue;
+			}
+
+			cost += costs.get(previous, l) * evaluator.getPropFactor(pickups - deliveries, n - pickups);
+			previous = l;
+
+			if (l <= n) {
+				pickups++;
+			} else {
+				deliveries++;
+			}
+		}
+
+		return cost;
+	}
+}
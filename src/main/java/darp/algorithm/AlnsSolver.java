@@ -0,0 +1,201 @@
+package darp.algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import darp.jxmapviewer2.MyWaypoint;
+import darp.models.ParametersModel;
+import darp.models.RequestsModel;
+import darp.models.ResultModel;
+import darp.models.TestModel;
+import darp.utils.Router;
+
+/**
+ * A heuristic darp solver that improves the route of the insertion heuristic by adaptive large neighbourhood search (see {@link Alns}).
+ * It scales to tests with many customers, but the route is not necessarily optimal.
+ * As long as the search is stopped by the number of iterations, the same seed always leads to the same route.
+ * @author Daniel Schröder
+ */
+public class AlnsSolver implements DarpSolver {
+
+	// used for routing between points
+	private Router router;
+
+	// the seed of the random numbers
+	private long seed;
+
+	// the limits of the search
+	private long iterations = 10000;
+	private long timeLimit = 5000;
+
+	// used to cancel the calculation
+	private volatile boolean cancelled;
+	private volatile Alns alns;
+
+	// used to report better routes
+	private volatile IncumbentListener incumbentListener;
+
+	/**
+	 * Creates a new darp solver that cannot use routing.
+	 * (Mainly for testing purposes)
+	 */
+	public AlnsSolver() {
+
+	}
+
+	/**
+	 * Creates a new darp solver.
+	 * @param router a Router to calculate paths between points
+	 * @throws NullPointerException if router is null
+	 */
+	public AlnsSolver(Router router) throws NullPointerException {
+		this.router = Objects.requireNonNull(router);
+	}
+
+	/**
+	 * Sets the seed of the random numbers, which is used for every following test.
+	 * @param seed the seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @return the seed of the random numbers
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Sets the number of iterations of the search.
+	 * @param iterations the number of iterations
+	 * @throws IllegalArgumentException if iterations is less than 1
+	 */
+	public void setIterations(long iterations) throws IllegalArgumentException {
+		if (iterations < 1) {
+			throw new IllegalArgumentException("The number of iterations must be at least 1");
+		}
+
+		this.iterations = iterations;
+	}
+
+	/**
+	 * @return the number of iterations
+	 */
+	public long getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Sets the time after which the search stops even if not all iterations are done.
+	 * @param timeLimit the time limit (in millis)
+	 * @throws IllegalArgumentException if timeLimit is less than 1
+	 */
+	public void setTimeLimit(long timeLimit) throws IllegalArgumentException {
+		if (timeLimit < 1) {
+			throw new IllegalArgumentException("The time limit must be at least 1 ms");
+		}
+
+		this.timeLimit = timeLimit;
+	}
+
+	/**
+	 * @return the time limit (in millis)
+	 */
+	public long getTimeLimit() {
+		return timeLimit;
+	}
+
+	@Override
+	public List<MyWaypoint> getOptRoute(TestModel test) throws NullPointerException, CancellationException {
+		if (test == null || test.getParametersModel() == null || test.getRequestsModel() == null || test.getResultModel() == null) {
+			throw new NullPointerException("Invalid TestModel");
+		}
+
+		try {
+			RequestsModel requests = test.getRequestsModel();
+			ParametersModel parameters = test.getParametersModel();
+
+			// the start position of the vehicle and the start and destination positions of the customers
+			List<MyWaypoint> points = new ArrayList<>();
+			points.addAll(requests.getStartWaypoints());
+			points.addAll(requests.getDestWaypoints());
+
+			boolean routing = parameters.isRouting() & (router != null);
+
+			long startTime = System.currentTimeMillis();
+			CostMatrix costs = routing ? new CostMatrix(points, router) : new CostMatrix(points);
+
+			RouteEvaluator evaluator = new RouteEvaluator(costs, parameters);
+			int[] route;
+
+			// like Psaraftis, the route of a test without a feasible route only contains the start position
+			if (evaluator.hasFeasibleRoute()) {
+				alns = new Alns(evaluator, new Random(seed));
+
+				int[] initial = new Insertion(evaluator).construct(2);
+
+				if (incumbentListener != null) {
+					Incumbent incumbent = new Incumbent(points, incumbentListener);
+					incumbent.update(initial, evaluator.getCost(initial));
+					alns.setIncumbent(incumbent);
+				}
+
+				try {
+					// the solver might have been cancelled before the search was created
+					route = alns.search(initial, cancelled ? 0 : iterations, timeLimit);
+				} finally {
+					alns = null;
+				}
+			} else {
+				route = new int[] { 0 };
+			}
+
+			if (cancelled || Thread.currentThread().isInterrupted()) {
+				throw new CancellationException("The calculation was cancelled");
+			}
+
+			List<MyWaypoint> sequence = new ArrayList<>();
+
+			for (int l : route) {
+				sequence.add(points.get(l));
+			}
+
+			long totalTime = System.currentTimeMillis() - startTime;
+
+			ResultModel result = test.getResultModel();
+
+			// set times
+			result.setTotalTime(totalTime);
+			result.setRoutingTime(costs.getRoutingTime());
+			result.setAlgoTime(totalTime - costs.getRoutingTime());
+
+			// the search is a heuristic
+			result.setOptimal(false);
+
+			return sequence;
+		} finally {
+			cancelled = false;
+		}
+	}
+
+	@Override
+	public void cancel() {
+		cancelled = true;
+
+		Alns current = alns;
+
+		if (current != null) {
+			current.cancel();
+		}
+	}
+
+	@Override
+	public void setIncumbentListener(IncumbentListener listener) {
+		incumbentListener = listener;
+	}
+}
@@ -0,0 +1,394 @@
+package darp.algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import darp.jxmapviewer2.MyWaypoint;
+import darp.models.ParametersModel;
+import darp.models.RequestsModel;
+import darp.models.ResultModel;
+import darp.models.TestModel;
+import darp.utils.Router;
+
+/**
+ * An exact darp solver that searches all feasible routes depth first and prunes partial routes
+ * that cannot be completed to a route cheaper than the best one found so far.
+ * <p>
+ * The search starts with the route of a short heuristic search (see {@link Alns}) as upper bound.
+ * The next stops of a partial route have to pass the screens of the capacity and the maximum position shift,
+ * which also force the smallest customer that is not picked up (or delivered) if its position can't be shifted any further.
+ * The remaining cost of a partial route is bounded by the cheapest edges into the remaining stops (see {@link LowerBound}).
+ * A partial route is also pruned if swapping its last two stops reaches the same state more cheaply.
+ * <p>
+ * The memory only grows with the cost matrix, so tests with tight constraints can be solved that are too large for the tables
+ * of {@link Psaraftis}. The time still grows exponentially with the number of customers.
+ * @author Daniel Schröder
+ */
+public class BranchAndBound implements DarpSolver {
+
+	// the number of nodes between two checks for cancellation
+	private static final int CHECK_INTERVAL = 4096;
+
+	// the iterations of the heuristic search for the first upper bound
+	private static final int HEURISTIC_ITERATIONS = 1000;
+
+	// used for routing between points
+	private Router router;
+
+	// defined by the test
+	private int n, c, mps;
+	private CostMatrix costs;
+	private RouteEvaluator evaluator;
+
+	// the stops of the current partial route and whether a stop is part of it
+	private int[] route;
+	private boolean[] visited;
+
+	// the best route found so far
+	private int[] bestRoute;
+	private double bestCost;
+	private Incumbent incumbent;
+
+	// the lower bound of the remaining cost
+	private LowerBound lowerBound;
+
+	// indexed by the depth (the number of visited stops)
+	private int[][] children;
+	private double[][] childCosts;
+
+	// statistics
+	private long nodes;
+
+	// used to cancel the calculation
+	private volatile boolean cancelled;
+	private volatile Thread solvingThread;
+
+	// used to report better routes
+	private volatile IncumbentListener incumbentListener;
+
+	/**
+	 * Creates a new darp solver that cannot use routing.
+	 * (Mainly for testing purposes)
+	 */
+	public BranchAndBound() {
+
+	}
+
+	/**
+	 * Creates a new darp solver.
+	 * @param router a Router to calculate paths between points
+	 * @throws NullPointerException if router is null
+	 */
+	public BranchAndBound(Router router) throws NullPointerException {
+		this.router = Objects.requireNonNull(router);
+	}
+
+	@Override
+	public List<MyWaypoint> getOptRoute(TestModel test) throws NullPointerException, CancellationException {
+		if (test == null || test.getParametersModel() == null || test.getRequestsModel() == null || test.getResultModel() == null) {
+			throw new NullPointerException("Invalid TestModel");
+		}
+
+		// the calculation can be cancelled by calling cancel() or by interrupting this thread
+		solvingThread = Thread.currentThread();
+
+		try {
+			RequestsModel requests = test.getRequestsModel();
+			ParametersModel parameters = test.getParametersModel();
+
+			// the start position of the vehicle and the start and destination positions of the customers
+			List<MyWaypoint> points = new ArrayList<>();
+			points.addAll(requests.getStartWaypoints());
+			points.addAll(requests.getDestWaypoints());
+
+			boolean routing = parameters.isRouting() & (router != null);
+
+			long startTime = System.currentTimeMillis();
+			costs = routing ? new CostMatrix(points, router) : new CostMatrix(points);
+			long routingTime = costs.getRoutingTime();
+
+			evaluator = new RouteEvaluator(costs, parameters);
+			n = evaluator.getN();
+			c = evaluator.getCapacity();
+			mps = evaluator.getMPS();
+
+			List<MyWaypoint> sequence = new ArrayList<>();
+
+			try {
+				calcOptRoute(points);
+
+				for (int l : bestRoute) {
+					sequence.add(points.get(l));
+				}
+			} finally {
+				// only needed while solving
+				costs = null;
+				evaluator = null;
+				incumbent = null;
+				lowerBound = null;
+				children = null;
+				childCosts = null;
+			}
+
+			long totalTime = System.currentTimeMillis() - startTime;
+
+			ResultModel result = test.getResultModel();
+
+			// set times
+			result.setTotalTime(totalTime);
+			result.setRoutingTime(routingTime);
+			result.setAlgoTime(totalTime - routingTime);
+
+			// the search only stops when all branches are bounded
+			result.setOptimal(true);
+
+			return sequence;
+		} finally {
+			cancelled = false;
+		}
+	}
+
+	/**
+	 * Searches the optimal route. The result is saved in bestRoute.
+	 * @param points the points of the test
+	 */
+	private void calcOptRoute(List<MyWaypoint> points) {
+		// like Psaraftis, the route of a test without a feasible route only contains the start position
+		if (!evaluator.hasFeasibleRoute()) {
+			bestRoute = new int[] { 0 };
+			return;
+		}
+
+		int size = 2 * n + 1;
+
+		route = new int[size];
+		visited = new boolean[size];
+		children = new int[size][size];
+		childCosts = new double[size][size];
+		nodes = 0;
+
+		// the first upper bound
+		incumbent = new Incumbent(points, incumbentListener);
+		bestRoute = new Insertion(evaluator).construct(2);
+		bestRoute = new Alns(evaluator, new Random(0)).search(bestRoute, HEURISTIC_ITERATIONS, Long.MAX_VALUE);
+		bestCost = evaluator.getCost(bestRoute);
+		incumbent.update(bestRoute, bestCost);
+
+		lowerBound = new LowerBound(evaluator);
+
+		visited[0] = true;
+		search(0, 0, 0, 0);
+	}
+
+	/**
+	 * Searches all completions of the current partial route.
+	 * @param depth the number of visited stops (without the start position)
+	 * @param cost the cost of the partial route
+	 * @param pickups the number of customers that are picked up
+	 * @param deliveries the number of customers that are delivered
+	 */
+	private void search(int depth, double cost, int pickups, int deliveries) {
+		if (++nodes % CHECK_INTERVAL == 0) {
+			checkCancelled();
+		}
+
+		int l = route[depth];
+
+		if (depth == 2 * n) {
+			if (cost < bestCost) {
+				bestCost = cost;
+				bestRoute = route.clone();
+				incumbent.update(bestRoute, bestCost);
+			}
+
+			return;
+		}
+
+		double factor = evaluator.getPropFactor(pickups - deliveries, n - pickups);
+
+		if (cost + lowerBound.get(l, visited, n - deliveries, factor) >= bestCost) {
+			return;
+		}
+
+		int count = getChildren(depth, l, factor, pickups, deliveries);
+		int[] next = children[depth];
+		double[] nextCosts = childCosts[depth];
+
+		// the difference of the last two legs if the last two stops were swapped (NaN if that's infeasible)
+		double swapSaving = getSwapSaving(depth, pickups, deliveries);
+
+		for (int i = 0; i < count; i++) {
+			int s = next[i];
+
+			// the route with the last two stops swapped reaches the same state at a lower cost (or with a smaller stop first)
+			// the optimal route that is the smallest in this order is never pruned
+			if (depth >= 2) {
+				int x = route[depth - 1];
+				double saving = swapSaving + (costs.get(l, s) - costs.get(x, s)) * factor;
+
+				if (saving > 0 || (saving == 0 && l < x)) {
+					continue;
+				}
+			}
+
+			route[depth + 1] = s;
+			visited[s] = true;
+
+			if (s <= n) {
+				search(depth + 1, cost + nextCosts[i], pickups + 1, deliveries);
+			} else {
+				search(depth + 1, cost + nextCosts[i], pickups, deliveries + 1);
+			}
+
+			visited[s] = false;
+		}
+	}
+
+	/**
+	 * Returns how much cheaper the two legs to the last two stops are if these stops are swapped,
+	 * not including the leg to the next stop (which depends on the next stop).
+	 * @param depth the number of visited stops
+	 * @param pickups the number of customers that are picked up
+	 * @param deliveries the number of customers that are delivered
+	 * @return the saving or NaN if the swapped route is infeasible
+	 */
+	private double getSwapSaving(int depth, int pickups, int deliveries) {
+		if (depth < 2) {
+			return Double.NaN;
+		}
+
+		int prev = route[depth - 2];
+		int x = route[depth - 1];
+		int y = route[depth];
+
+		// the delivery can't be swapped with the pickup of its customer
+		if (x == y - n) {
+			return Double.NaN;
+		}
+
+		// the numbers after prev
+		int p0 = pickups - (x <= n ? 1 : 0) - (y <= n ? 1 : 0);
+		int d0 = deliveries - (x > n ? 1 : 0) - (y > n ? 1 : 0);
+
+		// the numbers after y in the swapped route
+		int p1 = p0 + (y <= n ? 1 : 0);
+		int d1 = d0 + (y > n ? 1 : 0);
+
+		if (p1 - d1 > c) {
+			return Double.NaN;
+		}
+
+		// two pickups or two deliveries swap their positions
+		if (x <= n && y <= n && (Math.abs(y - p0 - 1) > mps || Math.abs(x - p0 - 2) > mps)) {
+			return Double.NaN;
+		}
+
+		if (x > n && y > n && (Math.abs(y - n - d0 - 1) > mps || Math.abs(x - n - d0 - 2) > mps)) {
+			return Double.NaN;
+		}
+
+		double f0 = evaluator.getPropFactor(p0 - d0, n - p0);
+		double f1 = evaluator.getPropFactor(p0 - d0 + (x <= n ? 1 : -1), n - p0 - (x <= n ? 1 : 0));
+		double f1Swapped = evaluator.getPropFactor(p1 - d1, n - p1);
+
+		return costs.get(prev, x) * f0 + costs.get(x, y) * f1 - costs.get(prev, y) * f0 - costs.get(y, x) * f1Swapped;
+	}
+
+	/**
+	 * Finds the next stops of the partial route that pass the screens, sorted by the cost of the leg.
+	 * @param depth the number of visited stops
+	 * @param l the current stop
+	 * @param factor the proportionality factor of the next leg
+	 * @param pickups the number of customers that are picked up
+	 * @param deliveries the number of customers that are delivered
+	 * @return the number of next stops
+	 */
+	private int getChildren(int depth, int l, double factor, int pickups, int deliveries) {
+		int[] next = children[depth];
+		double[] nextCosts = childCosts[depth];
+		int count = 0;
+
+		// the smallest customers that are not picked up and not delivered
+		int firstWaiting = 1;
+		int firstUndelivered = 1;
+
+		while (firstWaiting <= n && visited[firstWaiting]) {
+			firstWaiting++;
+		}
+
+		while (firstUndelivered <= n && visited[n + firstUndelivered]) {
+			firstUndelivered++;
+		}
+
+		// the positions of these customers can't be shifted any further, so they have to be the next pickup or delivery
+		boolean pickupForced = firstWaiting <= n && pickups + 1 == firstWaiting + mps;
+		boolean deliveryForced = firstUndelivered <= n && deliveries + 1 == firstUndelivered + mps;
+
+		for (int j = 1; j <= n; j++) {
+			int s;
+
+			if (!visited[j]) {
+				// pickup (the vehicle must not be full)
+				if (pickups - deliveries >= c || Math.abs(j - pickups - 1) > mps || (pickupForced && j != firstWaiting)) {
+					continue;
+				}
+
+				s = j;
+			} else if (!visited[n + j]) {
+				// delivery
+				if (Math.abs(j - deliveries - 1) > mps || (deliveryForced && j != firstUndelivered)) {
+					continue;
+				}
+
+				s = n + j;
+			} else {
+				continue;
+			}
+
+			double value = costs.get(l, s) * factor;
+			int i = count++;
+
+			// insertion sort by the cost of the leg
+			while (i > 0 && nextCosts[i - 1] > value) {
+				next[i] = next[i - 1];
+				nextCosts[i] = nextCosts[i - 1];
+				i--;
+			}
+
+			next[i] = s;
+			nextCosts[i] = value;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Stops the calculation if the solver was cancelled or the solving thread was interrupted.
+	 * @throws CancellationException if the calculation should stop
+	 */
+	private void checkCancelled() throws CancellationException {
+		if (cancelled || solvingThread.isInterrupted()) {
+			throw new CancellationException("The calculation was cancelled");
+		}
+	}
+
+	/**
+	 * @return the number of nodes of the last search
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	@Override
+	public void cancel() {
+		cancelled = true;
+	}
+
+	@Override
+	public void setIncumbentListener(IncumbentListener listener) {
+		incumbentListener = listener;
+	}
+}
@@ -0,0 +1,96 @@
+package darp.algorithm;
+
+import java.util.List;
+import java.util.Objects;
+
+import org.jxmapviewer.viewer.GeoPosition;
+
+import darp.jxmapviewer2.MyWaypoint;
+import darp.utils.Router;
+
+/**
+ * The travel costs between all points of a test.
+ * The matrix is calculated once, so that the solvers only have to look up the costs.
+ * @author Daniel Schröder
+ */
+public class CostMatrix {
+
+	private final double[][] costs;
+
+	// statistics
+	private long routingTime;
+
+	/**
+	 * Creates a new cost matrix containing the distances between the given points.
+	 * @param points the points
+	 * @throws NullPointerException if points is null
+	 */
+	public CostMatrix(List<MyWaypoint> points) throws NullPointerException {
+		int size = Objects.requireNonNull(points).size();
+		costs = new double[size][size];
+
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				costs[i][j] = i == j ? 0 : getDistance(points.get(i), points.get(j));
+			}
+		}
+	}
+
+	/**
+	 * Creates a new cost matrix containing the travel times (in millis) between the given points.
+	 * The travel times are calculated by a many-to-many search (see {@link Router#getTimes(List)}),
+	 * so the road network is only searched once for each point instead of once for each pair of points.
+	 * @param points the points
+	 * @param router the router to calculate the travel times
+	 * @throws NullPointerException if null is passed
+	 */
+	public CostMatrix(List<MyWaypoint> points, Router router) throws NullPointerException {
+		Objects.requireNonNull(points);
+		Objects.requireNonNull(router);
+
+		long startTime = System.currentTimeMillis();
+		costs = router.getTimes(points);
+		routingTime = System.currentTimeMillis() - startTime;
+	}
+
+	/**
+	 * Returns the distance between the given points.
+	 * @param start the first point
+	 * @param dest the second point
+	 * @return the distance
+	 */
+	private static double getDistance(MyWaypoint start, MyWaypoint dest) {
+		GeoPosition startPos = start.getPosition();
+		GeoPosition destPos = dest.getPosition();
+
+		double dx = startPos.getLongitude() - destPos.getLongitude();
+		double dy = startPos.getLatitude() - destPos.getLatitude();
+
+		// the square distance could be used for better performance
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Returns the cost to get from one point to another.
+	 * @param l1 the index of the start point
+	 * @param l2 the index of the destination point
+	 * @return the time or distance
+	 */
+	public double get(int l1, int l2) {
+		return costs[l1][l2];
+	}
+
+	/**
+	 * @return the number of points
+	 */
+	public int size() {
+		return costs.length;
+	}
+
+	/**
+	 * @return the time (in millis) spent on routing while creating the matrix
+	 */
+	public long getRoutingTime() {
+		return routingTime;
+	}
+}
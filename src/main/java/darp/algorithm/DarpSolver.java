@@ -1,6 +1,7 @@
 package darp.algorithm;
 
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
 import darp.jxmapviewer2.MyWaypoint;
 import darp.models.TestModel;
@@ -18,4 +19,33 @@ public interface DarpSolver {
 	 */
 	public List<MyWaypoint> getOptRoute(TestModel test);
 
+	/**
+	 * Asks the solver to stop the current calculation as soon as possible.
+	 * The running call of {@link #getOptRoute(TestModel)} then throws a {@link CancellationException}.
+	 * If the calculation hasn't started yet, it is cancelled as soon as it starts, so a cancellation is never lost.
+	 * This can be called from any thread. Solvers that don't support cancellation finish the test normally.
+	 */
+	public default void cancel() {
+
+	}
+
+	/**
+	 * Sets the listener that is informed about the progress of the following calculations.
+	 * Solvers that don't report their progress ignore the listener.
+	 * @param listener the listener or null to remove the current one
+	 */
+	public default void setProgressListener(ProgressListener listener) {
+
+	}
+
+	/**
+	 * Sets the listener that is informed about better routes during the following calculations.
+	 * This allows to show a route before the calculation has finished. Solvers that only find a single route
+	 * (like the exact solvers) ignore the listener, their route is the result of {@link #getOptRoute(TestModel)}.
+	 * @param listener the listener or null to remove the current one
+	 */
+	public default void setIncumbentListener(IncumbentListener listener) {
+
+	}
+
 }
\ No newline at end of file
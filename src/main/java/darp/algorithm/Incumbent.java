@@ -0,0 +1,84 @@
+package darp.algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import darp.jxmapviewer2.MyWaypoint;
+
+/**
+ * The best route found so far for a test, shared by all searches that work on the test at the same time.
+ * The cost can be read without locking, so searches can use it as an upper bound as often as they like.
+ * @author Daniel Schröder
+ */
+public class Incumbent {
+
+	private int[] route;
+	private volatile double cost = Double.POSITIVE_INFINITY;
+
+	// used to report new best routes (optional)
+	private final List<MyWaypoint> points;
+	private final IncumbentListener listener;
+
+	/**
+	 * Creates a new incumbent without a route.
+	 */
+	public Incumbent() {
+		this(null, null);
+	}
+
+	/**
+	 * Creates a new incumbent without a route, which reports every new best route to a listener.
+	 * @param points the points of the test (the stops of a route are their indices)
+	 * @param listener the listener or null
+	 */
+	public Incumbent(List<MyWaypoint> points, IncumbentListener listener) {
+		this.points = points;
+		this.listener = listener;
+	}
+
+	/**
+	 * Replaces the best route if the given one is cheaper.
+	 * @param route the route (it is copied)
+	 * @param cost the cost of the route
+	 * @return <code> true </code> if the route is the new best route
+	 * @throws NullPointerException if route is null
+	 */
+	public synchronized boolean update(int[] route, double cost) throws NullPointerException {
+		Objects.requireNonNull(route);
+
+		if (cost >= this.cost) {
+			return false;
+		}
+
+		this.route = route.clone();
+		this.cost = cost;
+
+		// report while holding the lock, so the listener gets the routes in the order of decreasing costs
+		if (listener != null) {
+			List<MyWaypoint> sequence = new ArrayList<>();
+
+			for (int l : route) {
+				sequence.add(points.get(l));
+			}
+
+			listener.incumbentChanged(sequence, cost);
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return a copy of the best route or null if there is none
+	 */
+	public synchronized int[] getRoute() {
+		return route == null ? null : route.clone();
+	}
+
+	/**
+	 * @return the cost of the best route (infinity if there is none)
+	 */
+	public double getCost() {
+		return cost;
+	}
+}
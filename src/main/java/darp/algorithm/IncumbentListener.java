@@ -0,0 +1,22 @@
+package darp.algorithm;
+
+import java.util.List;
+
+import darp.jxmapviewer2.MyWaypoint;
+
+/**
+ * The listener interface for receiving the improving routes a {@link DarpSolver} finds during a calculation.
+ * @author Daniel Schröder
+ */
+public interface IncumbentListener {
+
+	/**
+	 * Invoked when the solver found a route that is better than all previous routes of the current test.
+	 * The calls happen on the solving threads (in the order of decreasing costs), so the implementation should return quickly
+	 * and must not assume to be called on a specific thread.
+	 * @param sequence the sequence of waypoints of the route
+	 * @param cost the cost of the route
+	 */
+	public void incumbentChanged(List<MyWaypoint> sequence, double cost);
+
+}
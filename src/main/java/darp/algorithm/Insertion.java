@@ -0,0 +1,451 @@
+package darp.algorithm;
+
+import java.util.Objects;
+
+/**
+ * Inserts customers into a partial route by cheapest or regret-k insertion.
+ * In each round the pickup and the delivery of every remaining customer are inserted at all feasible pairs of positions
+ * and the customer with the cheapest insertion (or the largest regret) is inserted at its best positions.
+ * <p>
+ * Customers that are not part of the route yet count as waiting (status 3), so the cost of a partial route
+ * changes by separable terms: inserting the pickup after position i and the delivery after position j &gt; i
+ * costs left(i) + right(j). The positions j are limited by the capacity to a window that only moves towards the start
+ * when i decreases, so the best delivery for every pickup position is found with a sliding window minimum.
+ * A round therefore takes O(N^2) and the whole construction O(N^3).
+ * <p>
+ * The maximum position shift depends on customers that are not part of the route yet, so a partial route
+ * has to keep every pickup and delivery within a band of ranks that can still be completed.
+ * The band is exact once all customers are inserted, so a complete route is always feasible.
+ * However, two customers can be placed in an order that no completion allows, so an insertion can get stuck.
+ * Inserting the customers in the order of their numbers never gets stuck (see {@link #insertInOrder(int[], int)}).
+ * An insertion object is not thread-safe, but it can be reused for any number of routes of the same test.
+ * @author Daniel Schröder
+ */
+public class Insertion {
+
+	private final RouteEvaluator evaluator;
+	private final CostMatrix costs;
+	private final int n;
+
+	// the change of the proportionality factor if a customer is picked up or delivered instead of waiting
+	private final double pickupFactor, deliveryFactor;
+
+	// indexed by the position (the values after visiting the position)
+	private final double[] cost, time, factor;
+	private final int[] onboard, pickups, deliveries;
+
+	// the smallest remaining shifts of the pickups and deliveries before (inclusive) or after (exclusive) a position
+	private final int[] pickupSlackBefore, pickupSlackAfter, deliverySlackBefore, deliverySlackAfter;
+
+	// the first position (at or after a position) at which the vehicle is full
+	private final int[] nextFull;
+
+	// used to find the best insertions of a customer
+	private final double[] right, best;
+	private final int[] bestDelivery, window;
+	private final boolean[] deliveryFeasible;
+
+	/**
+	 * Creates a new insertion heuristic for a test.
+	 * @param evaluator the evaluator of the test
+	 * @throws NullPointerException if evaluator is null
+	 */
+	public Insertion(RouteEvaluator evaluator) throws NullPointerException {
+		this.evaluator = Objects.requireNonNull(evaluator);
+
+		costs = evaluator.getCosts();
+		n = evaluator.getN();
+
+		pickupFactor = evaluator.getPropFactor(1, 0) - evaluator.getPropFactor(0, 1);
+		deliveryFactor = evaluator.getPropFactor(0, 0) - evaluator.getPropFactor(0, 1);
+
+		int size = 2 * n + 1;
+
+		cost = new double[size];
+		time = new double[size];
+		factor = new double[size];
+		onboard = new int[size];
+		pickups = new int[size];
+		deliveries = new int[size];
+		pickupSlackBefore = new int[size];
+		pickupSlackAfter = new int[size];
+		deliverySlackBefore = new int[size];
+		deliverySlackAfter = new int[size];
+		nextFull = new int[size];
+		right = new double[size];
+		best = new double[size];
+		bestDelivery = new int[size];
+		window = new int[size];
+		deliveryFeasible = new boolean[size];
+	}
+
+	/**
+	 * @return the evaluator of the test
+	 */
+	public RouteEvaluator getEvaluator() {
+		return evaluator;
+	}
+
+	/**
+	 * Constructs a complete route. The customers are inserted by regret-k insertion and in the order of their numbers,
+	 * the cheaper of both routes is returned.
+	 * @param regret 1 for cheapest insertion or k &gt; 1 for regret-k insertion
+	 * @return the route (a feasible permutation of all 2N+1 stops)
+	 * @throws IllegalArgumentException if regret is less than 1
+	 */
+	public int[] construct(int regret) throws IllegalArgumentException {
+		if (regret < 1) {
+			throw new IllegalArgumentException("The regret must be at least 1");
+		}
+
+		int[] customers = new int[n];
+
+		for (int q = 1; q <= n; q++) {
+			customers[q - 1] = q;
+		}
+
+		int[] route = new int[2 * n + 1];
+		int[] ordered = new int[2 * n + 1];
+
+		insertInOrder(ordered, 1);
+
+		if (insert(route, 1, customers, n, regret) < 0 || evaluator.getCost(ordered) < evaluator.getCost(route)) {
+			return ordered;
+		}
+
+		return route;
+	}
+
+	/**
+	 * Inserts the given customers into a feasible partial route.
+	 * @param route the route (the array must have room for all 2N+1 stops)
+	 * @param size the number of stops of the route (including the start position)
+	 * @param customers the customers to insert (the array is reordered)
+	 * @param count the number of customers to insert
+	 * @param regret 1 for cheapest insertion or k &gt; 1 for regret-k insertion
+	 * @return the new number of stops or -1 if a customer could not be inserted
+	 */
+	public int insert(int[] route, int size, int[] customers, int count, int regret) {
+		while (count > 0) {
+			int missing = n - (size - 1) / 2;
+
+			prepare(route, size, missing);
+
+			int bestIndex = -1;
+			int bestPickup = 0, bestDeliveryPosition = 0;
+			double bestCost = 0, bestRegret = 0;
+
+			for (int index = 0; index < count; index++) {
+				int q = customers[index];
+				int feasible = evaluateCustomer(route, size, q, missing);
+
+				if (feasible == 0) {
+					return -1;
+				}
+
+				// the best and the regret of the customer
+				int i = selectBest(size - 1);
+				double value = best[i];
+				double regretValue = getRegret(size - 1, i, regret, feasible);
+
+				// the customer with the largest regret (or the cheapest insertion) is inserted first
+				if (bestIndex == -1 || (regret > 1 && regretValue > bestRegret) || ((regret == 1 || regretValue == bestRegret) && value < bestCost)) {
+					bestIndex = index;
+					bestPickup = i;
+					bestDeliveryPosition = bestDelivery[i];
+					bestCost = value;
+					bestRegret = regretValue;
+				}
+			}
+
+			int q = customers[bestIndex];
+			customers[bestIndex] = customers[--count];
+
+			size = insertStops(route, size, q, bestPickup, bestDeliveryPosition);
+		}
+
+		return size;
+	}
+
+	/**
+	 * Inserts the remaining customers in the order of their numbers, each one at its cheapest positions.
+	 * The route must contain exactly the first customers. Every partial route is then checked as if the remaining customers
+	 * were visited one after the other at the end, which is always possible. Therefore this never fails for a feasible route.
+	 * @param route the route (the array must have room for all 2N+1 stops)
+	 * @param size the number of stops of the route (including the start position)
+	 * @return the new number of stops
+	 */
+	public int insertInOrder(int[] route, int size) {
+		for (int q = (size - 1) / 2 + 1; q <= n; q++) {
+			prepare(route, size, 1);
+			evaluateCustomer(route, size, q, 1);
+
+			int i = selectBest(size - 1);
+			size = insertStops(route, size, q, i, bestDelivery[i]);
+		}
+
+		return size;
+	}
+
+	/**
+	 * Calculates the values after each position of the route.
+	 * @param route the route
+	 * @param size the number of stops
+	 * @param missing the number of customers that are not part of the route
+	 */
+	private void prepare(int[] route, int size, int missing) {
+		int last = size - 1;
+		int c = evaluator.getCapacity();
+		int mps = evaluator.getMPS();
+
+		cost[0] = 0;
+		time[0] = 0;
+		onboard[0] = 0;
+		pickups[0] = 0;
+		deliveries[0] = 0;
+		factor[0] = evaluator.getPropFactor(0, n);
+		pickupSlackBefore[0] = Integer.MAX_VALUE;
+		deliverySlackBefore[0] = Integer.MAX_VALUE;
+
+		for (int p = 1; p <= last; p++) {
+			int l = route[p];
+			double t = costs.get(route[p - 1], l);
+
+			time[p] = time[p - 1] + t;
+			cost[p] = cost[p - 1] + t * factor[p - 1];
+			pickups[p] = pickups[p - 1];
+			deliveries[p] = deliveries[p - 1];
+			pickupSlackBefore[p] = pickupSlackBefore[p - 1];
+			deliverySlackBefore[p] = deliverySlackBefore[p - 1];
+
+			// one more customer has to fit below the rank (the lower end of the band)
+			if (l <= n) {
+				pickups[p]++;
+				pickupSlackBefore[p] = Math.min(pickupSlackBefore[p], pickups[p] + missing - (l - mps));
+			} else {
+				deliveries[p]++;
+				deliverySlackBefore[p] = Math.min(deliverySlackBefore[p], deliveries[p] + missing - (l - n - mps));
+			}
+
+			onboard[p] = pickups[p] - deliveries[p];
+			factor[p] = evaluator.getPropFactor(onboard[p], n - pickups[p]);
+		}
+
+		pickupSlackAfter[last] = Integer.MAX_VALUE;
+		deliverySlackAfter[last] = Integer.MAX_VALUE;
+		nextFull[last] = onboard[last] >= c ? last : last + 1;
+
+		for (int p = last - 1; p >= 0; p--) {
+			int l = route[p + 1];
+
+			pickupSlackAfter[p] = pickupSlackAfter[p + 1];
+			deliverySlackAfter[p] = deliverySlackAfter[p + 1];
+
+			// the rank of a later stop increases by one (the upper end of the band)
+			if (l <= n) {
+				pickupSlackAfter[p] = Math.min(pickupSlackAfter[p], l + mps - pickups[p + 1]);
+			} else {
+				deliverySlackAfter[p] = Math.min(deliverySlackAfter[p], l - n + mps - deliveries[p + 1]);
+			}
+
+			nextFull[p] = onboard[p] >= c ? p : nextFull[p + 1];
+		}
+	}
+
+	/**
+	 * Calculates the best insertion of a customer for each pickup position.
+	 * The result is stored in best and bestDelivery (infinity if there is no feasible insertion).
+	 * @param route the route
+	 * @param size the number of stops
+	 * @param q the customer
+	 * @param missing the number of customers that are not part of the route
+	 * @return the number of pickup positions with a feasible insertion
+	 */
+	private int evaluateCustomer(int[] route, int size, int q, int missing) {
+		int last = size - 1;
+		int mps = evaluator.getMPS();
+		int pickup = q;
+		int delivery = n + q;
+
+		// the delivery conditions don't depend on the pickup position (except for the capacity)
+		for (int j = 0; j <= last; j++) {
+			int rank = deliveries[j] + 1;
+
+			deliveryFeasible[j] = deliverySlackAfter[j] >= 1 && deliverySlackBefore[j] >= 1 && rank <= q + mps && rank + missing - 1 >= q - mps;
+
+			if (!deliveryFeasible[j]) {
+				continue;
+			}
+
+			// the customer is on board until the delivery, afterwards it is delivered instead of waiting
+			right[j] = cost[j] + pickupFactor * time[j] + costs.get(route[j], delivery) * (factor[j] + pickupFactor);
+
+			if (j < last) {
+				right[j] += costs.get(delivery, route[j + 1]) * (factor[j] + deliveryFactor) - cost[j + 1] + cost[last]
+						+ deliveryFactor * (time[last] - time[j + 1]);
+			}
+		}
+
+		// the window of delivery positions after the pickup position
+		// (from head to tail the positions decrease and the values increase, so the head is the cheapest one)
+		int head = 0, tail = 0;
+		int feasible = 0;
+
+		for (int i = last; i >= 0; i--) {
+			best[i] = Double.POSITIVE_INFINITY;
+
+			int rank = pickups[i] + 1;
+
+			if (pickupSlackAfter[i] < 1 || pickupSlackBefore[i] < 1 || rank > q + mps || rank + missing - 1 < q - mps || nextFull[i] == i) {
+				// the window still has to be maintained
+				if (i < last) {
+					tail = push(head, tail, i + 1);
+				}
+
+				continue;
+			}
+
+			// the pickup and the delivery next to each other
+			if (deliveryFeasible[i]) {
+				double value = cost[i] + costs.get(route[i], pickup) * factor[i] + costs.get(pickup, delivery) * (factor[i] + pickupFactor);
+
+				if (i < last) {
+					value += costs.get(delivery, route[i + 1]) * (factor[i] + deliveryFactor) + cost[last] - cost[i + 1]
+							+ deliveryFactor * (time[last] - time[i + 1]);
+				}
+
+				best[i] = value - cost[last];
+				bestDelivery[i] = i;
+			}
+
+			if (i < last) {
+				tail = push(head, tail, i + 1);
+
+				// the vehicle must not be full between the pickup and the delivery
+				while (head < tail && window[head] >= nextFull[i]) {
+					head++;
+				}
+
+				if (head < tail) {
+					int j = window[head];
+					double left = cost[i] + costs.get(route[i], pickup) * factor[i] + costs.get(pickup, route[i + 1]) * (factor[i] + pickupFactor)
+							- cost[i + 1] - pickupFactor * time[i + 1];
+					double value = left + right[j] - cost[last];
+
+					if (value < best[i]) {
+						best[i] = value;
+						bestDelivery[i] = j;
+					}
+				}
+			}
+
+			if (best[i] < Double.POSITIVE_INFINITY) {
+				feasible++;
+			}
+		}
+
+		return feasible;
+	}
+
+	/**
+	 * Adds a delivery position at the tail of the window.
+	 * Positions that are larger and not cheaper are removed, as they leave the window earlier.
+	 * @param head the first index of the window
+	 * @param tail the index after the last index of the window
+	 * @param j the delivery position
+	 * @return the new tail
+	 */
+	private int push(int head, int tail, int j) {
+		if (!deliveryFeasible[j]) {
+			return tail;
+		}
+
+		while (tail > head && right[window[tail - 1]] >= right[j]) {
+			tail--;
+		}
+
+		window[tail] = j;
+
+		return tail + 1;
+	}
+
+	/**
+	 * @param last the last position of the route
+	 * @return the pickup position with the cheapest insertion
+	 */
+	private int selectBest(int last) {
+		int i = 0;
+
+		for (int p = 1; p <= last; p++) {
+			if (best[p] < best[i]) {
+				i = p;
+			}
+		}
+
+		return i;
+	}
+
+	/**
+	 * Returns the regret of a customer: the sum of the differences between the k best insertions and the best one.
+	 * If there are less than k feasible insertions the customer should be inserted as soon as possible.
+	 * @param last the last position of the route
+	 * @param i the pickup position of the best insertion
+	 * @param k the number of insertions
+	 * @param feasible the number of pickup positions with a feasible insertion
+	 * @return the regret
+	 */
+	private double getRegret(int last, int i, int k, int feasible) {
+		if (k == 1) {
+			return 0;
+		}
+
+		if (feasible < k) {
+			return Double.MAX_VALUE / (feasible + 1);
+		}
+
+		// partial selection of the k-1 next best values
+		double regret = 0;
+		double value = best[i];
+		double previous = value;
+		int previousIndex = i;
+
+		for (int h = 1; h < k; h++) {
+			double next = Double.POSITIVE_INFINITY;
+			int nextIndex = -1;
+
+			for (int p = 0; p <= last; p++) {
+				// the values are ordered by (value, position)
+				if ((best[p] > previous || (best[p] == previous && p > previousIndex)) && best[p] < next) {
+					next = best[p];
+					nextIndex = p;
+				}
+			}
+
+			regret += next - value;
+			previous = next;
+			previousIndex = nextIndex;
+		}
+
+		return regret;
+	}
+
+	/**
+	 * Inserts the pickup and the delivery of a customer into the route.
+	 * @param route the route
+	 * @param size the number of stops
+	 * @param q the customer
+	 * @param i the position after which the pickup is inserted
+	 * @param j the position after which the delivery is inserted
+	 * @return the new number of stops
+	 */
+	private int insertStops(int[] route, int size, int q, int i, int j) {
+		// make room for both stops after j and for the pickup after i
+		System.arraycopy(route, j + 1, route, j + 3, size - j - 1);
+		System.arraycopy(route, i + 1, route, i + 2, j - i);
+
+		route[i + 1] = q;
+		route[j + 2] = n + q;
+
+		return size + 2;
+	}
+}
@@ -0,0 +1,109 @@
+package darp.algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import darp.jxmapviewer2.MyWaypoint;
+import darp.models.ParametersModel;
+import darp.models.RequestsModel;
+import darp.models.ResultModel;
+import darp.models.TestModel;
+import darp.utils.Router;
+
+/**
+ * A heuristic darp solver that constructs a route by inserting the customers one after the other (see {@link Insertion}).
+ * It takes O(N^3) time, so it finds a feasible route almost instantly even for many customers,
+ * but the route is not necessarily optimal.
+ * @author Daniel Schröder
+ */
+public class InsertionSolver implements DarpSolver {
+
+	// used for routing between points
+	private Router router;
+
+	// 1 for cheapest insertion or k > 1 for regret-k insertion
+	private int regret = 2;
+
+	/**
+	 * Creates a new darp solver that cannot use routing.
+	 * (Mainly for testing purposes)
+	 */
+	public InsertionSolver() {
+
+	}
+
+	/**
+	 * Creates a new darp solver.
+	 * @param router a Router to calculate paths between points
+	 * @throws NullPointerException if router is null
+	 */
+	public InsertionSolver(Router router) throws NullPointerException {
+		this.router = Objects.requireNonNull(router);
+	}
+
+	/**
+	 * Sets the number of insertions whose differences decide which customer is inserted next.
+	 * @param regret 1 for cheapest insertion or k &gt; 1 for regret-k insertion
+	 * @throws IllegalArgumentException if regret is less than 1
+	 */
+	public void setRegret(int regret) throws IllegalArgumentException {
+		if (regret < 1) {
+			throw new IllegalArgumentException("The regret must be at least 1");
+		}
+
+		this.regret = regret;
+	}
+
+	/**
+	 * @return 1 for cheapest insertion or k &gt; 1 for regret-k insertion
+	 */
+	public int getRegret() {
+		return regret;
+	}
+
+	@Override
+	public List<MyWaypoint> getOptRoute(TestModel test) throws NullPointerException {
+		if (test == null || test.getParametersModel() == null || test.getRequestsModel() == null || test.getResultModel() == null) {
+			throw new NullPointerException("Invalid TestModel");
+		}
+
+		RequestsModel requests = test.getRequestsModel();
+		ParametersModel parameters = test.getParametersModel();
+
+		// the start position of the vehicle and the start and destination positions of the customers
+		List<MyWaypoint> points = new ArrayList<>();
+		points.addAll(requests.getStartWaypoints());
+		points.addAll(requests.getDestWaypoints());
+
+		boolean routing = parameters.isRouting() & (router != null);
+
+		long startTime = System.currentTimeMillis();
+		CostMatrix costs = routing ? new CostMatrix(points, router) : new CostMatrix(points);
+
+		RouteEvaluator evaluator = new RouteEvaluator(costs, parameters);
+
+		// like Psaraftis, the route of a test without a feasible route only contains the start position
+		int[] route = evaluator.hasFeasibleRoute() ? new Insertion(evaluator).construct(regret) : new int[] { 0 };
+
+		List<MyWaypoint> sequence = new ArrayList<>();
+
+		for (int l : route) {
+			sequence.add(points.get(l));
+		}
+
+		long totalTime = System.currentTimeMillis() - startTime;
+
+		ResultModel result = test.getResultModel();
+
+		// set times
+		result.setTotalTime(totalTime);
+		result.setRoutingTime(costs.getRoutingTime());
+		result.setAlgoTime(totalTime - costs.getRoutingTime());
+
+		// the insertion is a heuristic
+		result.setOptimal(false);
+
+		return sequence;
+	}
+}
@@ -0,0 +1,223 @@
+package darp.algorithm;
+
+import java.util.Objects;
+
+/**
+ * Local search for the route of a test. The route is improved by moves until no move makes it cheaper:
+ * exchanging two stops, moving a chain of up to {@value #MAX_CHAIN} consecutive stops to another position
+ * (or-opt, a chain of one stop is a relocation) and reversing the stops between two positions (2-opt).
+ * <p>
+ * The moves are evaluated on a {@link Route}, so only the changed part of the route is evaluated
+ * and moves that break the precedence, the capacity or the maximum position shift are never applied.
+ * Either the first improving move or the best move of the whole neighbourhood is applied (see {@link #setBestImprovement(boolean)}).
+ * The search doesn't allocate memory after the route is created.
+ * A search object is not thread-safe, but it can be cancelled from any thread.
+ * @author Daniel Schröder
+ */
+public class LocalSearch {
+
+	// the longest chain moved by or-opt
+	private static final int MAX_CHAIN = 3;
+
+	// the smallest improvement of an applied move (rounding errors must not lead to cycles)
+	private static final double MIN_IMPROVEMENT = 1e-9;
+
+	// the number of evaluated moves between two checks of the time limit
+	private static final int CHECK_INTERVAL = 256;
+
+	// the moves
+	private static final int SWAP = 0, OR_OPT = 1, TWO_OPT = 2;
+
+	private final RouteEvaluator evaluator;
+
+	// apply the best move of the neighbourhood instead of the first improving one
+	private boolean bestImprovement;
+
+	// the best move of the current scan of the neighbourhood
+	private int move, moveFrom, moveLength, moveTo;
+	private double moveCost;
+
+	// used to stop the search
+	private long deadline;
+	private boolean stopped;
+
+	// statistics
+	private long evaluations, moves;
+
+	// used to cancel the search
+	private volatile boolean cancelled;
+
+	/**
+	 * Creates a new search for a test.
+	 * @param evaluator the evaluator of the test
+	 * @throws NullPointerException if evaluator is null
+	 */
+	public LocalSearch(RouteEvaluator evaluator) throws NullPointerException {
+		this.evaluator = Objects.requireNonNull(evaluator);
+	}
+
+	/**
+	 * Sets whether the best move of the whole neighbourhood is applied instead of the first improving one.
+	 * Best improvement evaluates more moves per step, but usually needs fewer steps.
+	 * @param bestImprovement <code> true </code> if the best move should be applied
+	 */
+	public void setBestImprovement(boolean bestImprovement) {
+		this.bestImprovement = bestImprovement;
+	}
+
+	/**
+	 * @return <code> true </code> if the best move of the neighbourhood is applied
+	 */
+	public boolean isBestImprovement() {
+		return bestImprovement;
+	}
+
+	/**
+	 * Improves the given route until no move makes it cheaper or the time limit is reached.
+	 * @param initial a feasible route
+	 * @param timeLimit the maximum time (in millis) of the search
+	 * @return the improved route
+	 * @throws NullPointerException if initial is null
+	 * @throws IllegalArgumentException if initial is not a feasible route of the test
+	 */
+	public int[] improve(int[] initial, long timeLimit) throws NullPointerException, IllegalArgumentException {
+		if (!evaluator.isFeasible(Objects.requireNonNull(initial))) {
+			throw new IllegalArgumentException("The initial route must be feasible");
+		}
+
+		try {
+			// the search might have been cancelled before it started
+			stopped = cancelled;
+			evaluations = 0;
+			moves = 0;
+
+			long now = System.currentTimeMillis();
+			deadline = timeLimit < Long.MAX_VALUE - now ? now + timeLimit : Long.MAX_VALUE;
+
+			Route route = new Route(evaluator, initial);
+
+			while (!stopped && scan(route)) {
+				moves++;
+			}
+
+			return route.getStops();
+		} finally {
+			cancelled = false;
+		}
+	}
+
+	/**
+	 * Evaluates the moves of the neighbourhood and applies the first improving or the best one.
+	 * @param route the route
+	 * @return <code> true </code> if a move was applied
+	 */
+	private boolean scan(Route route) {
+		int size = route.size();
+
+		move = -1;
+		moveCost = route.getCost() - MIN_IMPROVEMENT;
+
+		for (int i = 1; i < size; i++) {
+			for (int j = i + 1; j < size; j++) {
+				if (consider(SWAP, i, 1, j, route.evaluateSwap(i, j))) {
+					return apply(route);
+				}
+			}
+		}
+
+		for (int length = 1; length <= MAX_CHAIN; length++) {
+			for (int from = 1; from + length <= size; from++) {
+				for (int to = 1; to + length <= size; to++) {
+					if (to != from && consider(OR_OPT, from, length, to, route.evaluateOrOpt(from, length, to))) {
+						return apply(route);
+					}
+				}
+			}
+		}
+
+		// reversing two stops is a swap
+		for (int i = 1; i < size; i++) {
+			for (int j = i + 2; j < size; j++) {
+				if (consider(TWO_OPT, i, 1, j, route.evaluateTwoOpt(i, j))) {
+					return apply(route);
+				}
+			}
+		}
+
+		return apply(route);
+	}
+
+	/**
+	 * Remembers a move if it's better than the best one of the current scan.
+	 * @param type the type of the move
+	 * @param from the first position
+	 * @param length the length of the chain (only for or-opt)
+	 * @param to the second position
+	 * @param cost the cost of the route after the move
+	 * @return <code> true </code> if the scan should stop (an improving move was found in first improvement mode or the search was stopped)
+	 */
+	private boolean consider(int type, int from, int length, int to, double cost) {
+		if (++evaluations % CHECK_INTERVAL == 0 && (cancelled || Thread.currentThread().isInterrupted() || System.currentTimeMillis() >= deadline)) {
+			stopped = true;
+		}
+
+		if (cost < moveCost) {
+			move = type;
+			moveFrom = from;
+			moveLength = length;
+			moveTo = to;
+			moveCost = cost;
+
+			if (!bestImprovement) {
+				return true;
+			}
+		}
+
+		return stopped;
+	}
+
+	/**
+	 * Applies the best move of the current scan.
+	 * @param route the route
+	 * @return <code> true </code> if there was an improving move
+	 */
+	private boolean apply(Route route) {
+		switch (move) {
+		case SWAP:
+			route.applySwap(moveFrom, moveTo);
+			break;
+		case OR_OPT:
+			route.applyOrOpt(moveFrom, moveLength, moveTo);
+			break;
+		case TWO_OPT:
+			route.applyTwoOpt(moveFrom, moveTo);
+			break;
+		default:
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Asks the running search to stop soon. The search then returns the route improved so far.
+	 * If the search hasn't started yet, it returns the initial route. This can be called from any thread.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * @return the number of moves applied by the last search
+	 */
+	public long getMoves() {
+		return moves;
+	}
+
+	/**
+	 * @return the number of moves evaluated by the last search
+	 */
+	public long getEvaluations() {
+		return evaluations;
+	}
+}
@@ -0,0 +1,255 @@
+package darp.algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+
+import darp.jxmapviewer2.MyWaypoint;
+import darp.models.ParametersModel;
+import darp.models.RequestsModel;
+import darp.models.ResultModel;
+import darp.models.TestModel;
+import darp.utils.Router;
+
+/**
+ * A darp solver that improves the route of another solver by local search (see {@link LocalSearch}).
+ * It can be put in front of any solver, but only heuristic solvers benefit from it, as the routes of exact solvers are already optimal.
+ * Routes that aren't feasible routes of the test (e.g. of a solver that ignores a constraint) are returned unchanged.
+ * <p>
+ * The cost matrix of the other solver isn't accessible, so it is calculated again for the local search.
+ * @author Daniel Schröder
+ */
+public class LocalSearchSolver implements DarpSolver {
+
+	// the solver whose routes are improved
+	private final DarpSolver solver;
+
+	// used for routing between points
+	private Router router;
+
+	// the settings of the local search
+	private boolean bestImprovement;
+	private long timeLimit = 1000;
+
+	// used to cancel the calculation
+	// (the solver is only cancelled while it runs, so a cancellation doesn't remain pending in it)
+	private volatile boolean cancelled;
+	private volatile LocalSearch localSearch;
+	private final Object lock = new Object();
+	private boolean solving;
+
+	// used to report better routes
+	private volatile IncumbentListener incumbentListener;
+
+	/**
+	 * Creates a new darp solver that cannot use routing.
+	 * (Mainly for testing purposes)
+	 * @param solver the solver whose routes are improved
+	 * @throws NullPointerException if solver is null
+	 */
+	public LocalSearchSolver(DarpSolver solver) throws NullPointerException {
+		this.solver = Objects.requireNonNull(solver);
+	}
+
+	/**
+	 * Creates a new darp solver.
+	 * @param solver the solver whose routes are improved
+	 * @param router a Router to calculate paths between points
+	 * @throws NullPointerException if null is passed
+	 */
+	public LocalSearchSolver(DarpSolver solver, Router router) throws NullPointerException {
+		this.solver = Objects.requireNonNull(solver);
+		this.router = Objects.requireNonNull(router);
+	}
+
+	/**
+	 * @return the solver whose routes are improved
+	 */
+	public DarpSolver getSolver() {
+		return solver;
+	}
+
+	/**
+	 * Sets whether the best move of the whole neighbourhood is applied instead of the first improving one.
+	 * @param bestImprovement <code> true </code> if the best move should be applied
+	 */
+	public void setBestImprovement(boolean bestImprovement) {
+		this.bestImprovement = bestImprovement;
+	}
+
+	/**
+	 * @return <code> true </code> if the best move of the neighbourhood is applied
+	 */
+	public boolean isBestImprovement() {
+		return bestImprovement;
+	}
+
+	/**
+	 * Sets the time after which the local search stops even if the route could still be improved.
+	 * @param timeLimit the time limit (in millis)
+	 * @throws IllegalArgumentException if timeLimit is less than 1
+	 */
+	public void setTimeLimit(long timeLimit) throws IllegalArgumentException {
+		if (timeLimit < 1) {
+			throw new IllegalArgumentException("The time limit must be at least 1 ms");
+		}
+
+		this.timeLimit = timeLimit;
+	}
+
+	/**
+	 * @return the time limit (in millis)
+	 */
+	public long getTimeLimit() {
+		return timeLimit;
+	}
+
+	@Override
+	public List<MyWaypoint> getOptRoute(TestModel test) throws NullPointerException, CancellationException {
+		if (test == null || test.getParametersModel() == null || test.getRequestsModel() == null || test.getResultModel() == null) {
+			throw new NullPointerException("Invalid TestModel");
+		}
+
+		try {
+			List<MyWaypoint> sequence;
+
+			synchronized (lock) {
+				if (cancelled) {
+					throw new CancellationException("The calculation was cancelled");
+				}
+
+				solving = true;
+			}
+
+			try {
+				sequence = solver.getOptRoute(test);
+			} finally {
+				synchronized (lock) {
+					solving = false;
+				}
+			}
+
+			ResultModel result = test.getResultModel();
+			long solverTime = result.getTotalTime();
+			long solverRoutingTime = result.getRoutingTime();
+
+			RequestsModel requests = test.getRequestsModel();
+			ParametersModel parameters = test.getParametersModel();
+
+			// the start position of the vehicle and the start and destination positions of the customers
+			List<MyWaypoint> points = new ArrayList<>();
+			points.addAll(requests.getStartWaypoints());
+			points.addAll(requests.getDestWaypoints());
+
+			boolean routing = parameters.isRouting() & (router != null);
+
+			long startTime = System.currentTimeMillis();
+			CostMatrix costs = routing ? new CostMatrix(points, router) : new CostMatrix(points);
+
+			RouteEvaluator evaluator = new RouteEvaluator(costs, parameters);
+			int[] route = getStops(points, sequence);
+
+			if (route != null && evaluator.isFeasible(route)) {
+				LocalSearch search = new LocalSearch(evaluator);
+				search.setBestImprovement(bestImprovement);
+				localSearch = search;
+
+				int[] improved;
+
+				try {
+					// the solver might have been cancelled before the search was created
+					improved = search.improve(route, cancelled ? 1 : timeLimit);
+				} finally {
+					localSearch = null;
+				}
+
+				if (cancelled || Thread.currentThread().isInterrupted()) {
+					throw new CancellationException("The calculation was cancelled");
+				}
+
+				double cost = evaluator.getCost(improved);
+
+				if (cost < evaluator.getCost(route)) {
+					sequence = new ArrayList<>();
+
+					for (int l : improved) {
+						sequence.add(points.get(l));
+					}
+
+					IncumbentListener listener = incumbentListener;
+
+					if (listener != null) {
+						listener.incumbentChanged(sequence, cost);
+					}
+				}
+			}
+
+			long totalTime = System.currentTimeMillis() - startTime;
+
+			// add the times of the local search to the times of the solver
+			result.setTotalTime(solverTime + totalTime);
+			result.setRoutingTime(solverRoutingTime + costs.getRoutingTime());
+			result.setAlgoTime(result.getTotalTime() - result.getRoutingTime());
+
+			return sequence;
+		} finally {
+			cancelled = false;
+		}
+	}
+
+	/**
+	 * Returns the stops of a sequence of waypoints.
+	 * @param points the points of the test
+	 * @param sequence the sequence
+	 * @return the stops or null if the sequence doesn't start at the start position or visits a point twice
+	 */
+	private static int[] getStops(List<MyWaypoint> points, List<MyWaypoint> sequence) {
+		if (sequence.size() > points.size()) {
+			return null;
+		}
+
+		int[] stops = new int[sequence.size()];
+		boolean[] visited = new boolean[points.size()];
+
+		for (int i = 0; i < stops.length; i++) {
+			stops[i] = points.indexOf(sequence.get(i));
+
+			if (stops[i] == -1 || visited[stops[i]]) {
+				return null;
+			}
+
+			visited[stops[i]] = true;
+		}
+
+		return stops.length > 0 && stops[0] == 0 ? stops : null;
+	}
+
+	@Override
+	public void cancel() {
+		synchronized (lock) {
+			cancelled = true;
+
+			if (solving) {
+				solver.cancel();
+			}
+		}
+
+		LocalSearch current = localSearch;
+
+		if (current != null) {
+			current.cancel();
+		}
+	}
+
+	@Override
+	public void setProgressListener(ProgressListener listener) {
+		solver.setProgressListener(listener);
+	}
+
+	@Override
+	public void setIncumbentListener(IncumbentListener listener) {
+		incumbentListener = listener;
+		solver.setIncumbentListener(listener);
+	}
+}
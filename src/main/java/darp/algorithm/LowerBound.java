@@ -0,0 +1,150 @@
+package darp.algorithm;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A lower bound of the cost to visit the remaining stops of a partial route.
+ * <p>
+ * Every remaining stop has to be reached by one of the remaining legs, so the cheapest edge into each stop is a lower bound for
+ * its leg. The legs are weighted by the smallest proportionality factor that is possible with the number of remaining stops,
+ * so pairing the most expensive edge with the smallest factor gives a lower bound of the remaining cost.
+ * <p>
+ * An instance is not thread-safe, so every search needs its own one.
+ * @author Daniel Schröder
+ */
+final class LowerBound {
+
+	private final int n;
+	private final CostMatrix costs;
+	private final RouteEvaluator evaluator;
+
+	// for each stop all other stops sorted by the cost of the edge into the stop
+	private final int[][] predecessors;
+
+	// the smallest proportionality factor of a leg if at least this many customers are not delivered
+	private final double[] minFactor;
+
+	// the cheapest edges into the remaining stops
+	private final double[] edges;
+
+	// the visited stops of a packed state
+	private final boolean[] visited;
+
+	/**
+	 * Creates the lower bound for a test.
+	 * @param evaluator the evaluator of the test
+	 * @throws NullPointerException if evaluator is null
+	 */
+	public LowerBound(RouteEvaluator evaluator) throws NullPointerException {
+		this.evaluator = evaluator;
+
+		n = evaluator.getN();
+		costs = evaluator.getCosts();
+
+		int size = 2 * n + 1;
+		predecessors = new int[size][];
+
+		for (int s = 1; s < size; s++) {
+			int stop = s;
+			Integer[] order = new Integer[size - 1];
+
+			for (int p = 0, i = 0; p < size; p++) {
+				if (p != s) {
+					order[i++] = p;
+				}
+			}
+
+			Arrays.sort(order, Comparator.comparingDouble(p -> costs.get(p, stop)));
+			predecessors[s] = new int[size - 1];
+
+			for (int i = 0; i < order.length; i++) {
+				predecessors[s][i] = order[i];
+			}
+		}
+
+		// the factor is linear in the numbers of customers, so the smallest one has only waiting or only carried customers
+		minFactor = new double[n + 1];
+		double min = Double.POSITIVE_INFINITY;
+
+		for (int undelivered = n; undelivered >= 0; undelivered--) {
+			min = Math.min(min, Math.min(evaluator.getPropFactor(undelivered, 0), evaluator.getPropFactor(0, undelivered)));
+			minFactor[undelivered] = min;
+		}
+
+		edges = new double[size];
+		visited = new boolean[size];
+	}
+
+	/**
+	 * Returns a lower bound of the cost to visit the remaining stops of a state (see {@link StateSpace}).
+	 * @param space the state space of the test
+	 * @param state the packed state
+	 * @return the lower bound
+	 */
+	public double get(StateSpace space, long state) {
+		visited[0] = true;
+
+		for (int j = 1; j <= n; j++) {
+			int status = space.getStatus(state, j);
+
+			visited[j] = status < 3;
+			visited[n + j] = status == 1;
+		}
+
+		int x2 = space.getKsInState(state, 2);
+		int x3 = space.getKsInState(state, 3);
+
+		return get(space.getStop(state), visited, x2 + x3, evaluator.getPropFactor(x2, x3));
+	}
+
+	/**
+	 * Returns a lower bound of the cost to visit the remaining stops.
+	 * @param l the current stop
+	 * @param visited whether a stop is part of the partial route
+	 * @param undelivered the number of customers that are not delivered
+	 * @param factor the proportionality factor of the next leg
+	 * @return the lower bound
+	 */
+	public double get(int l, boolean[] visited, int undelivered, double factor) {
+		int count = 0;
+
+		for (int s = 1; s <= 2 * n; s++) {
+			if (visited[s]) {
+				continue;
+			}
+
+			// the cheapest edge from the current stop or another remaining stop
+			// (a pickup can't follow the delivery of its customer and a delivery can't follow the current stop before the pickup)
+			boolean waiting = s > n && !visited[s - n];
+
+			for (int p : predecessors[s]) {
+				if ((p == l && !waiting) || (!visited[p] && p != s + n)) {
+					edges[count++] = costs.get(p, s);
+					break;
+				}
+			}
+		}
+
+		if (count == 0) {
+			return 0;
+		}
+
+		Arrays.sort(edges, 0, count);
+
+		// the most expensive edge is paired with the smallest factor
+		// the first leg has the known factor, which is the largest one
+		double bound = edges[0] * factor;
+
+		for (int i = 1; i < count; i++) {
+			// r stops are remaining at the start of the leg, at least half of them are deliveries
+			// and at most one customer is delivered per leg
+			int r = count - i;
+			int minUndelivered = Math.max((r + 1) / 2, undelivered - i);
+
+			bound += edges[i] * minFactor[minUndelivered];
+		}
+
+		return bound;
+	}
+}
@@ -0,0 +1,473 @@
+package darp.algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import darp.jxmapviewer2.MyWaypoint;
+import darp.models.ParametersModel;
+import darp.models.RequestsModel;
+import darp.models.ResultModel;
+import darp.models.TestModel;
+import darp.utils.Router;
+
+/**
+ * A darp solver that runs several solvers for a test at the same time and returns the best route within a time limit.
+ * The route of the insertion heuristic, improved by local search ({@link LocalSearch}), is available immediately. Then the exact solver ({@link Psaraftis})
+ * and several adaptive large neighbourhood searches with different seeds run in parallel and share the best route found so far.
+ * As soon as the exact solver finishes, its optimal route is returned. The exact solver only runs if its tables
+ * fit into the available memory (see {@link PsaraftisEstimator}). It only generates reachable states
+ * and skips the states that can't lead to a route cheaper than the shared best route (see {@link Psaraftis#setPruning(boolean)}).
+ * <p>
+ * If the exact solver doesn't finish, the best route is improved by local search in the remaining time.
+ * The time limit is the one of the solver or the one of the test, whichever is shorter (see {@link ParametersModel#getTimeLimit()}).
+ * The result of the test tells whether the route is optimal (see {@link ResultModel#isOptimal()}).
+ * <p>
+ * All solvers use the same cost matrix, so the routing is only done once per test.
+ * @author Daniel Schröder
+ */
+public class PortfolioSolver implements DarpSolver {
+
+	// the maximum time (in millis) until a cancellation is noticed while waiting for the solvers
+	private static final long POLL_INTERVAL = 100;
+
+	// the fraction of the time limit that the local search of the first route may take
+	private static final double INITIAL_SEARCH_SHARE = 0.1;
+
+	// used for routing between points
+	private Router router;
+
+	// the exact solver and its estimator
+	private final Psaraftis exactSolver;
+	private final PsaraftisEstimator estimator;
+
+	// the number of searches, the seed of the first one and the iterations of each one
+	// (the other processors are used by the exact solver)
+	private int searches = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+	private long seed;
+	private long iterations = 20000;
+
+	// the time (in millis) after which the best route found so far is returned (if the test has no shorter one)
+	private long timeLimit = Long.MAX_VALUE;
+
+	// used to cancel the calculation
+	// (the exact solver is stopped by interrupting its thread, so a cancellation doesn't remain pending in it after the race)
+	private volatile boolean cancelled;
+	private final List<Alns> running = new ArrayList<>();
+	private volatile LocalSearch localSearch;
+	private volatile Future<List<MyWaypoint>> exactFuture;
+
+	// used to report better routes
+	private volatile IncumbentListener incumbentListener;
+
+	/**
+	 * Creates a new darp solver that cannot use routing.
+	 * (Mainly for testing purposes)
+	 */
+	public PortfolioSolver() {
+		exactSolver = new Psaraftis();
+		estimator = new PsaraftisEstimator(exactSolver);
+
+		configureExactSolver();
+	}
+
+	/**
+	 * Creates a new darp solver.
+	 * @param router a Router to calculate paths between points
+	 * @throws NullPointerException if router is null
+	 */
+	public PortfolioSolver(Router router) throws NullPointerException {
+		this.router = Objects.requireNonNull(router);
+
+		exactSolver = new Psaraftis(router);
+		estimator = new PsaraftisEstimator(exactSolver);
+
+		configureExactSolver();
+	}
+
+	/**
+	 * Lets the exact solver only generate reachable states and prune them by the shared best route.
+	 * Pruning only applies to reachable states, so both are needed for the race to help the exact solver.
+	 * The exact solver uses the processors that are not used by the searches.
+	 */
+	private void configureExactSolver() {
+		exactSolver.setReachableOnly(true);
+		exactSolver.setPruning(true);
+		exactSolver.setParallelism(Math.max(1, Runtime.getRuntime().availableProcessors() - searches));
+	}
+
+	/**
+	 * Returns the exact solver, which can be configured (e.g. to use a different number of threads).
+	 * By default it only generates reachable states, prunes them by the shared best route
+	 * and uses the processors that are not used by the searches.
+	 * @return the exact solver
+	 */
+	public Psaraftis getExactSolver() {
+		return exactSolver;
+	}
+
+	/**
+	 * Sets the number of searches that run in parallel to the exact solver.
+	 * @param searches the number of searches
+	 * @throws IllegalArgumentException if searches is less than 0
+	 */
+	public void setSearches(int searches) throws IllegalArgumentException {
+		if (searches < 0) {
+			throw new IllegalArgumentException("The number of searches must not be negative");
+		}
+
+		this.searches = searches;
+	}
+
+	/**
+	 * @return the number of searches
+	 */
+	public int getSearches() {
+		return searches;
+	}
+
+	/**
+	 * Sets the seed of the first search. The following searches use the next seeds.
+	 * @param seed the seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @return the seed of the first search
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Sets the number of iterations of each search.
+	 * @param iterations the number of iterations
+	 * @throws IllegalArgumentException if iterations is less than 1
+	 */
+	public void setIterations(long iterations) throws IllegalArgumentException {
+		if (iterations < 1) {
+			throw new IllegalArgumentException("The number of iterations must be at least 1");
+		}
+
+		this.iterations = iterations;
+	}
+
+	/**
+	 * @return the number of iterations of each search
+	 */
+	public long getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Sets the time after which the best route found so far is returned if the exact solver hasn't finished.
+	 * A test with a shorter time limit uses its own one (see {@link ParametersModel#getTimeLimit()}).
+	 * @param timeLimit the time limit (in millis)
+	 * @throws IllegalArgumentException if timeLimit is less than 1
+	 */
+	public void setTimeLimit(long timeLimit) throws IllegalArgumentException {
+		if (timeLimit < 1) {
+			throw new IllegalArgumentException("The time limit must be at least 1 ms");
+		}
+
+		this.timeLimit = timeLimit;
+	}
+
+	/**
+	 * @return the time limit (in millis)
+	 */
+	public long getTimeLimit() {
+		return timeLimit;
+	}
+
+	@Override
+	public List<MyWaypoint> getOptRoute(TestModel test) throws NullPointerException, CancellationException {
+		if (test == null || test.getParametersModel() == null || test.getRequestsModel() == null || test.getResultModel() == null) {
+			throw new NullPointerException("Invalid TestModel");
+		}
+
+		try {
+			RequestsModel requests = test.getRequestsModel();
+			ParametersModel parameters = test.getParametersModel();
+
+			// the start position of the vehicle and the start and destination positions of the customers
+			List<MyWaypoint> points = new ArrayList<>();
+			points.addAll(requests.getStartWaypoints());
+			points.addAll(requests.getDestWaypoints());
+
+			boolean routing = parameters.isRouting() & (router != null);
+
+			long startTime = System.currentTimeMillis();
+			CostMatrix costs = routing ? new CostMatrix(points, router) : new CostMatrix(points);
+
+			long timeLimit = getTimeLimit(parameters);
+			long now = System.currentTimeMillis();
+			long deadline = timeLimit < Long.MAX_VALUE - now ? now + timeLimit : Long.MAX_VALUE;
+
+			RouteEvaluator evaluator = new RouteEvaluator(costs, parameters);
+			List<MyWaypoint> sequence;
+			boolean exactRoute;
+
+			if (evaluator.hasFeasibleRoute()) {
+				// the insertion heuristic guarantees a route, however short the time limit is
+				Incumbent incumbent = new Incumbent(points, incumbentListener);
+				int[] initial = new Insertion(evaluator).construct(2);
+
+				incumbent.update(initial, evaluator.getCost(initial));
+
+				initial = improve(evaluator, initial, Math.max(1, (long) (INITIAL_SEARCH_SHARE * timeLimit)));
+				incumbent.update(initial, evaluator.getCost(initial));
+
+				boolean exact = estimator.estimate(requests, parameters).fits(PsaraftisEstimator.getAvailableMemory());
+				sequence = race(test, evaluator, initial, incumbent, exact, deadline);
+				exactRoute = sequence != null;
+
+				// the searches might have finished early
+				long remaining = deadline - System.currentTimeMillis();
+
+				if (sequence == null && remaining > 0 && !cancelled) {
+					int[] route = improve(evaluator, incumbent.getRoute(), remaining);
+					incumbent.update(route, evaluator.getCost(route));
+				}
+
+				if (cancelled || Thread.currentThread().isInterrupted()) {
+					throw new CancellationException("The calculation was cancelled");
+				}
+
+				if (sequence == null) {
+					sequence = new ArrayList<>();
+
+					for (int l : incumbent.getRoute()) {
+						sequence.add(points.get(l));
+					}
+				}
+			} else {
+				// like Psaraftis, the route of a test without a feasible route only contains the start position
+				sequence = new ArrayList<>(points.subList(0, 1));
+				exactRoute = true;
+			}
+
+			long totalTime = System.currentTimeMillis() - startTime;
+
+			ResultModel result = test.getResultModel();
+
+			// set times
+			result.setTotalTime(totalTime);
+			result.setRoutingTime(costs.getRoutingTime());
+			result.setAlgoTime(totalTime - costs.getRoutingTime());
+
+			// only the route of the exact solver (or the lack of a feasible route) is known to be optimal
+			result.setOptimal(exactRoute);
+
+			return sequence;
+		} finally {
+			cancelled = false;
+		}
+	}
+
+	/**
+	 * Returns the time limit for a test, which is the shorter one of the solver and the test.
+	 * @param parameters the parameters of the test
+	 * @return the time limit (in millis)
+	 */
+	private long getTimeLimit(ParametersModel parameters) {
+		long testLimit = parameters.getTimeLimit();
+
+		// no time limit for the test
+		if (testLimit <= 0) {
+			return timeLimit;
+		}
+
+		return testLimit <= timeLimit / 1000 ? testLimit * 1000 : timeLimit;
+	}
+
+	/**
+	 * Improves a route by local search.
+	 * @param evaluator the evaluator of the test
+	 * @param route a feasible route
+	 * @param timeLimit the maximum time (in millis) of the search
+	 * @return the improved route
+	 */
+	private int[] improve(RouteEvaluator evaluator, int[] route, long timeLimit) {
+		LocalSearch search = new LocalSearch(evaluator);
+		localSearch = search;
+
+		try {
+			// the solver might have been cancelled before the search was created
+			return search.improve(route, cancelled ? 1 : timeLimit);
+		} finally {
+			localSearch = null;
+		}
+	}
+
+	/**
+	 * Runs the exact solver and the searches until the exact solver finishes, all searches finish or the time limit is reached.
+	 * All solvers are stopped before this method returns.
+	 * @param test the test
+	 * @param evaluator the evaluator of the test
+	 * @param initial the initial route of the searches
+	 * @param incumbent the best route found so far
+	 * @param exact whether the exact solver should run
+	 * @param deadline the time (in millis) when the solvers are stopped
+	 * @return the optimal route or null if the exact solver didn't finish
+	 */
+	private List<MyWaypoint> race(TestModel test, RouteEvaluator evaluator, int[] initial, Incumbent incumbent, boolean exact, long deadline) {
+		int tasks = (exact ? 1 : 0) + (evaluator.getN() > 1 ? searches : 0);
+
+		if (tasks == 0) {
+			return null;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(tasks);
+		CompletionService<List<MyWaypoint>> completion = new ExecutorCompletionService<>(executor);
+		long searchTime = Math.max(1, deadline - System.currentTimeMillis());
+
+		try {
+			if (exact) {
+				exactSolver.setIncumbent(incumbent);
+				exactFuture = completion.submit(() -> exactSolver.getOptRoute(test, evaluator.getCosts()));
+
+				// the solver might have been cancelled before the exact solver was submitted
+				if (cancelled) {
+					exactFuture.cancel(true);
+				}
+			}
+
+			for (int i = 0; i < tasks - (exact ? 1 : 0); i++) {
+				Alns alns = new Alns(evaluator, new Random(seed + i));
+				alns.setIncumbent(incumbent);
+
+				synchronized (running) {
+					running.add(alns);
+				}
+
+				completion.submit(() -> {
+					alns.search(initial, iterations, searchTime);
+					return null;
+				});
+			}
+
+			int finished = 0;
+
+			while (finished < tasks && !cancelled) {
+				long remaining = deadline - System.currentTimeMillis();
+
+				// the time limit is reached
+				if (remaining <= 0) {
+					return null;
+				}
+
+				Future<List<MyWaypoint>> future = completion.poll(Math.min(remaining, POLL_INTERVAL), TimeUnit.MILLISECONDS);
+
+				if (future == null) {
+					continue;
+				}
+
+				finished++;
+
+				if (future == exactFuture) {
+					try {
+						return future.get();
+					} catch (ExecutionException e) {
+						// the exact solver failed (e.g. ran out of memory), the searches go on
+					} catch (CancellationException e) {
+						// the solver was cancelled
+						return null;
+					}
+				}
+			}
+
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			return null;
+		} finally {
+			stop(executor);
+		}
+	}
+
+	/**
+	 * Stops all solvers and waits until they have finished,
+	 * so the exact solver can be used for the next test.
+	 * @param executor the executor running the solvers
+	 */
+	private void stop(ExecutorService executor) {
+		Future<List<MyWaypoint>> future = exactFuture;
+
+		if (future != null) {
+			future.cancel(true);
+			exactFuture = null;
+		}
+
+		synchronized (running) {
+			for (Alns alns : running) {
+				alns.cancel();
+			}
+
+			running.clear();
+		}
+
+		executor.shutdownNow();
+
+		boolean interrupted = false;
+
+		while (!executor.isTerminated()) {
+			try {
+				executor.awaitTermination(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		exactSolver.setIncumbent(null);
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void cancel() {
+		cancelled = true;
+
+		Future<List<MyWaypoint>> future = exactFuture;
+
+		if (future != null) {
+			future.cancel(true);
+		}
+
+		LocalSearch current = localSearch;
+
+		if (current != null) {
+			current.cancel();
+		}
+
+		synchronized (running) {
+			for (Alns alns : running) {
+				alns.cancel();
+			}
+		}
+	}
+
+	@Override
+	public void setProgressListener(ProgressListener listener) {
+		exactSolver.setProgressListener(listener);
+	}
+
+	@Override
+	public void setIncumbentListener(IncumbentListener listener) {
+		incumbentListener = listener;
+	}
+}
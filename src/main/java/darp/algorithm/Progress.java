@@ -0,0 +1,113 @@
+package darp.algorithm;
+
+import java.util.Objects;
+
+/**
+ * A snapshot of the progress of a {@link DarpSolver} in the current phase.
+ * @author Daniel Schröder
+ */
+public class Progress {
+
+	/**
+	 * The phases of a calculation.
+	 */
+	public enum Phase {
+		/**
+		 * The travel costs between all points are calculated.
+		 */
+		COST_MATRIX,
+		/**
+		 * The states that are reachable from the start state are generated (part of screening).
+		 */
+		GENERATION,
+		/**
+		 * The states are screened and their optimal values are calculated (backward recursion).
+		 */
+		RECURSION,
+		/**
+		 * The optimal route is constructed.
+		 */
+		IDENTIFICATION
+	}
+
+	private final Phase phase;
+	private final long processed, total, feasible, elapsedTime;
+
+	/**
+	 * Creates a new snapshot.
+	 * @param phase the current phase
+	 * @param processed the number of processed units (e.g. states) in the phase
+	 * @param total the total number of units in the phase
+	 * @param feasible the number of feasible states found in the phase
+	 * @param elapsedTime the time (in millis) since the phase started
+	 * @throws NullPointerException if phase is null
+	 */
+	public Progress(Phase phase, long processed, long total, long feasible, long elapsedTime) throws NullPointerException {
+		this.phase = Objects.requireNonNull(phase);
+		this.processed = processed;
+		this.total = total;
+		this.feasible = feasible;
+		this.elapsedTime = elapsedTime;
+	}
+
+	/**
+	 * @return the current phase
+	 */
+	public Phase getPhase() {
+		return phase;
+	}
+
+	/**
+	 * @return the number of processed units (e.g. states) in the phase
+	 */
+	public long getProcessed() {
+		return processed;
+	}
+
+	/**
+	 * @return the total number of units in the phase
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return the number of feasible states found in the phase
+	 */
+	public long getFeasible() {
+		return feasible;
+	}
+
+	/**
+	 * @return the time (in millis) since the phase started
+	 */
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+
+	/**
+	 * @return the processed fraction of the phase (between 0 and 1)
+	 */
+	public double getFraction() {
+		return total <= 0 ? 0 : Math.min(1, (double) processed / total);
+	}
+
+	/**
+	 * Returns the estimated time (in millis) until the phase is finished,
+	 * assuming that the remaining units take as long as the processed ones.
+	 * @return the estimated remaining time or -1 if nothing was processed yet
+	 */
+	public long getEstimatedRemainingTime() {
+		if (processed <= 0) {
+			return -1;
+		}
+
+		return (long) ((double) elapsedTime / processed * Math.max(0, total - processed));
+	}
+
+	@Override
+	public String toString() {
+		return phase + ": " + processed + "/" + total + " (" + Math.round(getFraction() * 100) + "%), feasible " + feasible + ", elapsed "
+				+ elapsedTime + " ms, remaining " + getEstimatedRemainingTime() + " ms";
+	}
+}
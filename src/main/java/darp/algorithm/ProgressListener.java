@@ -0,0 +1,17 @@
+package darp.algorithm;
+
+/**
+ * The listener interface for receiving the progress of a {@link DarpSolver}.
+ * @author Daniel Schröder
+ */
+public interface ProgressListener {
+
+	/**
+	 * Invoked when the solver made progress. The calls are throttled by the solver,
+	 * but they happen on the solving threads, so the implementation should return quickly
+	 * and must not assume to be called on a specific thread.
+	 * @param progress the current progress
+	 */
+	public void progressChanged(Progress progress);
+
+}
@@ -2,20 +2,23 @@ package darp.algorithm;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
-
-import org.jxmapviewer.viewer.GeoPosition;
-
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import darp.algorithm.Progress.Phase;
 import darp.jxmapviewer2.MyWaypoint;
 import darp.models.ParametersModel;
 import darp.models.RequestsModel;
 import darp.models.ResultModel;
 import darp.models.TestModel;
+import darp.utils.Log;
 import darp.utils.Router;
 
 /**
@@ -25,6 +28,18 @@ import darp.utils.Router;
  */
 public class Psaraftis implements DarpSolver {
 
+	// in parallel mode layers are split into tasks until this many customers are left to enumerate
+	private static final int SEQUENTIAL_CUSTOMERS = 6;
+
+	// in parallel mode levels of reachable states are split into tasks of this size
+	private static final int SEQUENTIAL_STATES = 4096;
+
+	// the minimum time (in nanos) between two progress reports of a phase
+	private static final long PROGRESS_INTERVAL = 200_000_000;
+
+	// the iterations of the heuristic search for the upper bound used by pruning
+	private static final int HEURISTIC_ITERATIONS = 1000;
+
 	// used for routing between points
 	private Router router;
 
@@ -34,15 +49,61 @@ public class Psaraftis implements DarpSolver {
 	private double a, w1, w2;
 	private boolean routing;
 
+	// use float instead of double for the optimal values
+	private boolean singlePrecision;
+
+	// the number of threads used by the algorithm
+	private int parallelism = 1;
+
+	// only generate the states that are reachable from the start state
+	private boolean reachableOnly;
+
+	// skip the reachable states that can't lead to a route cheaper than the best known one
+	private boolean pruning;
+	private volatile Incumbent sharedIncumbent;
+
 	// statistics
 	private long totalTime, routingTime, algoTime;
 
+	// used to cancel the calculation
+	private volatile boolean cancelled;
+	private volatile Thread solvingThread;
+
+	// used to report the progress of the current phase
+	// the counters are shared by all threads working on a test
+	private volatile ProgressListener progressListener;
+	private Phase phase;
+	private long phaseStart, phaseTotal;
+	private final LongAdder processed = new LongAdder();
+	private final LongAdder feasible = new LongAdder();
+	private final AtomicLong nextReport = new AtomicLong();
+
+	// the travel costs between all points
+	private CostMatrix costs;
+
 	// used by the algorithm
-	private Set<State> feasbl;
-	private Map<State, Double> optValue;
-	private Map<State, Integer> next;
+	// all tables are indexed by the rank of a state
+	private StateSpace space;
+	private AtomicLongArray feasbl;
+	private double[] optValue;
+	private float[] optValueFloat;
+	private byte[] next;
 	private List<MyWaypoint> sequence;
 
+	// used by the algorithm if only reachable states are generated
+	// level d contains the sorted reachable states after d stops
+	// a next stop of 0 marks an infeasible state
+	private long[][] levels;
+	private double[][] levelValue;
+	private byte[][] levelNext;
+
+	// used by the algorithm if states are pruned
+	// the cost to reach each state of a level and the best route known before the algorithm
+	private double[][] levelReached;
+	private RouteEvaluator evaluator;
+	private LowerBound lowerBound;
+	private Incumbent incumbent;
+
 	/**
 	 * Creates a new darp solver that cannot use routing.
 	 * (Mainly for testing purposes)
@@ -60,54 +121,254 @@ public class Psaraftis implements DarpSolver {
 		this.router = Objects.requireNonNull(router);
 	}
 
+	/**
+	 * Sets whether the optimal values should be stored as float instead of double.
+	 * This halves the largest table, but ties between almost equal routes might be broken differently.
+	 * @param singlePrecision <code> true </code> if float should be used
+	 */
+	public void setSinglePrecision(boolean singlePrecision) {
+		this.singlePrecision = singlePrecision;
+	}
+
+	/**
+	 * @return <code> true </code> if float is used for the optimal values
+	 */
+	public boolean isSinglePrecision() {
+		return singlePrecision;
+	}
+
+	/**
+	 * Sets the number of threads used to solve a test.
+	 * With more than one thread the states are processed in layers (see {@link #layeredRecursion()}).
+	 * @param parallelism the number of threads
+	 * @throws IllegalArgumentException if parallelism is less than 1
+	 */
+	public void setParallelism(int parallelism) throws IllegalArgumentException {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return the number of threads used to solve a test
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets whether only the states that are reachable from the start state should be generated
+	 * (see {@link #forwardGeneration()}). Instead of dense tables for the whole state space,
+	 * only the reachable states and their values are stored. This is much faster and needs less memory
+	 * if the capacity or the maximum position shift are small. It also allows up to
+	 * {@value StateSpace#MAX_CUSTOMERS} customers, as the states don't have to be ranked.
+	 * @param reachableOnly <code> true </code> if only reachable states should be generated
+	 */
+	public void setReachableOnly(boolean reachableOnly) {
+		this.reachableOnly = reachableOnly;
+	}
+
+	/**
+	 * @return <code> true </code> if only the states that are reachable from the start state are generated
+	 */
+	public boolean isReachableOnly() {
+		return reachableOnly;
+	}
+
+	/**
+	 * Sets whether reachable states that can't lead to a route cheaper than the best known one should be skipped
+	 * (see {@link #pruneLevel(int)}). The best known route is the one of a shared incumbent (see {@link #setIncumbent(Incumbent)})
+	 * or of a short heuristic search that runs before the algorithm. The skipped states are neither stored nor evaluated,
+	 * so the tables are usually much smaller. Pruning only applies if only reachable states are generated.
+	 * @param pruning <code> true </code> if states should be pruned
+	 */
+	public void setPruning(boolean pruning) {
+		this.pruning = pruning;
+	}
+
+	/**
+	 * @return <code> true </code> if states are pruned
+	 */
+	public boolean isPruning() {
+		return pruning;
+	}
+
+	/**
+	 * Sets the best route found so far by other solvers working on the same test, whose cost is used as upper bound by pruning.
+	 * The cost is read again for every level, so the bound gets tighter while the other solvers improve the route.
+	 * @param incumbent the incumbent (or null to search a route before the algorithm)
+	 */
+	public void setIncumbent(Incumbent incumbent) {
+		sharedIncumbent = incumbent;
+	}
+
 	@Override
-	public List<MyWaypoint> getOptRoute(TestModel test) throws NullPointerException {
+	public List<MyWaypoint> getOptRoute(TestModel test) throws NullPointerException, IllegalArgumentException, CancellationException {
+		return getOptRoute(test, null);
+	}
+
+	/**
+	 * Returns the sequence of waypoints of the optimal route for a given test using already calculated travel costs.
+	 * This allows other solvers to share the cost matrix of a test.
+	 * @param test the test
+	 * @param costs the travel costs between the points of the test or null to calculate them
+	 * @return the sequence
+	 * @throws NullPointerException if test is invalid
+	 * @throws IllegalArgumentException if the test has too many customers or the costs don't match the test
+	 * @throws CancellationException if the calculation was cancelled
+	 */
+	public List<MyWaypoint> getOptRoute(TestModel test, CostMatrix costs) throws NullPointerException, IllegalArgumentException, CancellationException {
 		if (test == null || test.getParametersModel() == null || test.getRequestsModel() == null || test.getResultModel() == null) {
 			throw new NullPointerException("Invalid TestModel");
 		}
 
-		RequestsModel requests = test.getRequestsModel();
-		ParametersModel parameters = test.getParametersModel();
+		// the calculation can be cancelled by calling cancel() or by interrupting this thread
+		solvingThread = Thread.currentThread();
+
+		try {
+			RequestsModel requests = test.getRequestsModel();
+			ParametersModel parameters = test.getParametersModel();
+
+			// the start and destination positions
+			// this includes the start position of the vehicle
+			// and a start and destination position for each customer
+			// therefore the list contains 2N+1 positions
+			points = new ArrayList<>();
+			points.addAll(requests.getStartWaypoints());
+			points.addAll(requests.getDestWaypoints());
+
+			// load the test parameters
+			n = requests.getDestWaypoints().size(); // only customers have a destination (and exactly one)
+
+			int maxCustomers = reachableOnly ? StateSpace.MAX_CUSTOMERS : StateSpace.MAX_RANKED_CUSTOMERS;
+
+			if (n > maxCustomers) {
+				throw new IllegalArgumentException("Too many customers (maximum is " + maxCustomers + ")");
+			}
+
+			if (costs != null && costs.size() != points.size()) {
+				throw new IllegalArgumentException("The cost matrix doesn't match the test");
+			}
+
+			c = parameters.getCapacity();
+			mps = parameters.getMPS();
+			a = parameters.getTimePref();
+			w2 = parameters.getWeight() / 100d;
+			w1 = (1 - w2);
+			routing = parameters.isRouting() & (router != null);
+
+			// reset times
+			totalTime = 0;
+			routingTime = 0;
+			algoTime = 0;
+
+			long startTime = System.currentTimeMillis();
+			// calculate the travel costs once before the algorithm starts
+			startPhase(Phase.COST_MATRIX, (long) points.size() * points.size());
+			this.costs = costs != null ? costs : routing ? new CostMatrix(points, router) : new CostMatrix(points);
+			routingTime = this.costs.getRoutingTime();
+			processed.add(phaseTotal);
+			reportProgress();
+
+			// the evaluator is only needed for the upper and lower bounds of pruning
+			evaluator = reachableOnly && pruning ? new RouteEvaluator(this.costs, parameters) : null;
+
+			if (pruning && !reachableOnly) {
+				Log.getLogger().warning("Pruning is ignored, as it only applies if only reachable states are generated");
+			}
+
+			// start the algorithm
+			calcOptRoute();
+			long stopTime = System.currentTimeMillis();
+
+			// calculate times
+			totalTime = stopTime - startTime;
+			algoTime = totalTime - routingTime;
+
+			ResultModel result = test.getResultModel();
+
+			// set times
+			result.setTotalTime(totalTime);
+			result.setRoutingTime(routingTime);
+			result.setAlgoTime(algoTime);
+			result.setOptimal(true);
+
+			return sequence;
+		} finally {
+			cancelled = false;
+		}
+	}
+
+	@Override
+	public void cancel() {
+		cancelled = true;
+	}
+
+	@Override
+	public void setProgressListener(ProgressListener listener) {
+		progressListener = listener;
+	}
 
-		// the start and destination positions
-		// this includes the start position of the vehicle
-		// and a start and destination position for each customer
-		// therefore the list contains 2N+1 positions
-		points = new ArrayList<>();
-		points.addAll(requests.getStartWaypoints());
-		points.addAll(requests.getDestWaypoints());
+	/**
+	 * Starts a new phase of the calculation and reports it to the progress listener.
+	 * @param phase the phase
+	 * @param total the total number of units that will be processed in the phase
+	 */
+	private void startPhase(Phase phase, long total) {
+		this.phase = phase;
+		phaseTotal = total;
+		processed.reset();
+		feasible.reset();
+		phaseStart = System.nanoTime();
+		nextReport.set(phaseStart + PROGRESS_INTERVAL);
+
+		reportProgress();
+	}
 
-		// load the test parameters
-		n = requests.getDestWaypoints().size(); // only customers have a destination (and exactly one)
-		c = parameters.getCapacity();
-		mps = parameters.getMPS();
-		a = parameters.getTimePref();
-		w2 = parameters.getWeight() / 100d;
-		w1 = (1 - w2);
-		routing = parameters.isRouting() & (router != null);
+	/**
+	 * Adds the given units to the progress of the current phase.
+	 * The progress is reported at most every {@value #PROGRESS_INTERVAL} nanos (by the thread that passes the interval first).
+	 * @param units the number of processed units
+	 * @param feasibleStates the number of feasible states among them
+	 */
+	private void addProgress(long units, long feasibleStates) {
+		if (progressListener == null) {
+			return;
+		}
 
-		// reset times
-		totalTime = 0;
-		routingTime = 0;
-		algoTime = 0;
+		processed.add(units);
+		feasible.add(feasibleStates);
 
-		long startTime = System.currentTimeMillis();
-		// start the algorithm
-		calcOptRoute();
-		long stopTime = System.currentTimeMillis();
+		long now = System.nanoTime();
+		long report = nextReport.get();
 
-		// calculate times
-		totalTime = stopTime - startTime;
-		algoTime = totalTime - routingTime;
+		if (now >= report && nextReport.compareAndSet(report, now + PROGRESS_INTERVAL)) {
+			reportProgress();
+		}
+	}
 
-		ResultModel result = test.getResultModel();
+	/**
+	 * Reports the progress of the current phase to the progress listener (if there is one).
+	 */
+	private void reportProgress() {
+		ProgressListener listener = progressListener;
 
-		// set times
-		result.setTotalTime(totalTime);
-		result.setRoutingTime(routingTime);
-		result.setAlgoTime(algoTime);
+		if (listener != null) {
+			listener.progressChanged(new Progress(phase, processed.sum(), phaseTotal, feasible.sum(), (System.nanoTime() - phaseStart) / 1_000_000));
+		}
+	}
 
-		return sequence;
+	/**
+	 * Stops the calculation if the solver was cancelled or the solving thread was interrupted.
+	 * This is polled regularly by all threads working on a test.
+	 * @throws CancellationException if the calculation should stop
+	 */
+	private void checkCancelled() throws CancellationException {
+		if (cancelled || solvingThread.isInterrupted()) {
+			throw new CancellationException("The calculation was cancelled");
+		}
 	}
 
 	/**
@@ -115,334 +376,605 @@ public class Psaraftis implements DarpSolver {
 	 */
 	private void calcOptRoute() {
 		// create fields for the solution
-		feasbl = new HashSet<>();
-		optValue = new HashMap<>();
-		next = new HashMap<>();
+		space = new StateSpace(n, c, mps);
 		sequence = new ArrayList<>();
 
+		try {
+			if (reachableOnly) {
+				calcOptRouteReachable();
+			} else {
+				calcOptRouteDense();
+			}
+		} finally {
+			// the tables are only needed while solving (or are useless if the calculation was cancelled)
+			costs = null;
+			feasbl = null;
+			optValue = null;
+			optValueFloat = null;
+			next = null;
+			levels = null;
+			levelValue = null;
+			levelNext = null;
+			levelReached = null;
+			evaluator = null;
+			lowerBound = null;
+			incumbent = null;
+		}
+	}
+
+	/**
+	 * Calculates the optimal route using dense tables for all states.
+	 */
+	private void calcOptRouteDense() {
+		int ranks = space.getRankCount();
+
+		// one bit per state
+		feasbl = new AtomicLongArray((ranks + 63) / 64);
+		next = new byte[ranks];
+
+		if (singlePrecision) {
+			optValueFloat = new float[ranks];
+		} else {
+			optValue = new double[ranks];
+		}
+
 		// backward recursion is used in the first two steps, so that the following applies to all states:
 		// all possible next states of a state are checked before the state itself
 		// thus the methods start with the terminal states that have no next state and end with the start states
 		// this is important for memory optimization
 
-		// step 1
-		screening(new int[n], 0);
+		// step 1 and 2
+		// every status vector is combined with all 2N+1 stops
+		startPhase(Phase.RECURSION, (long) Math.pow(3, n) * (2 * n + 1));
 
-		// step 2
-		optimization(new int[n], 0);
+		if (parallelism > 1) {
+			layeredRecursion();
+		} else {
+			backwardRecursion(0, 0, 1, 0, 0);
+		}
+
+		reportProgress();
 
 		// step 3
 		identification();
 	}
 
 	/**
-	 * This method corresponds to the first step of the algorithm.
-	 * In this part all possible states are checked for feasibility (using backward recursion).
-	 * @param k the array to be used as the status vector
-	 * @param index the index from which the array should be filled
+	 * Calculates the optimal route using only the states that are reachable from the start state.
 	 */
-	private void screening(int[] k, int index) {
-		if (index >= k.length) {
-			checkFeasibilities(k);
-			return;
+	private void calcOptRouteReachable() {
+		if (evaluator != null) {
+			initPruning();
 		}
 
-		for (int i = 1; i <= 3; i++) {
-			k[index] = i;
-			screening(k, index + 1);
+		// the remaining part of step 1
+		forwardGeneration();
+
+		// step 1 and 2
+		reachableRecursion();
+
+		// step 3
+		if (incumbent != null && incumbent.getRoute() != null && (levelNext[0][0] == 0 || levelValue[0][0] >= incumbent.getCost())) {
+			// all routes cheaper than the known one would have passed the pruning, so the known one is optimal
+			startPhase(Phase.IDENTIFICATION, 2 * n);
+
+			for (int l : incumbent.getRoute()) {
+				sequence.add(points.get(l));
+			}
+
+			addProgress(2 * n, 2 * n);
+			reportProgress();
+		} else {
+			reachableIdentification();
 		}
 	}
 
 	/**
-	 * Checks all possible states for a given status vector for feasibility.
-	 * Only feasible states get stored in the array feasbl.
-	 * @param k the status vector
+	 * Prepares the pruning of states. If no incumbent is shared, a route is searched by a short heuristic search (see {@link Alns}).
 	 */
-	private void checkFeasibilities(int[] k) {
-		for (int j = 0; j <= 2 * n; j++) {
-			State state = new State(j, k.clone());
+	private void initPruning() {
+		incumbent = sharedIncumbent;
+
+		if (incumbent == null) {
+			incumbent = new Incumbent();
 
-			// for memory optimization: only store state if it is feasible
-			if (feasibleState(state)) {
-				feasbl.add(state);
+			// without a feasible route, there is nothing to prune
+			if (evaluator.hasFeasibleRoute()) {
+				int[] route = evaluator.getSequentialRoute();
+
+				if (n > 1) {
+					route = new Insertion(evaluator).construct(2);
+					route = new Alns(evaluator, new Random(0)).search(route, HEURISTIC_ITERATIONS, Long.MAX_VALUE);
+				}
+
+				incumbent.update(route, evaluator.getCost(route));
 			}
 		}
+
+		lowerBound = new LowerBound(evaluator);
+		levelReached = new double[2 * n + 1][];
+		levelReached[0] = new double[] { 0 };
 	}
 
 	/**
-	 * This method corresponds to the second step of the algorithm.
-	 * In this part the optimal value of all subsequent decisions
-	 * from each feasible state till the end of the route is calculated (using backward recursion).
+	 * This method corresponds to the first two steps of the algorithm.
+	 * All possible states are checked for feasibility and for each feasible state
+	 * the optimal value of all subsequent decisions till the end of the route is calculated (using backward recursion).
 	 * (Measured in terms of the specific objective function (1))
 	 * Also for each state the best next stop (which is part of the optimal route)
-	 * will be stored in the array next.
-	 * @param k the array to be used as the status vector
-	 * @param index the index from which the array should be filled
+	 * will be stored in the table next.
+	 * Both steps are done in a single pass, as the feasibility and the optimal value of a state
+	 * only depend on its next states. Infeasible states are never stored.
+	 * @param k the packed status vector filled up to the given customer
+	 * @param index the index of the status vector filled up to the given customer
+	 * @param j the customer from which the status vector should be filled
+	 * @param x2 the number of customers with status 2 so far
+	 * @param x3 the number of customers with status 3 so far
+	 */
+	private void backwardRecursion(long k, int index, int j, int x2, int x3) {
+		if (j > n) {
+			checkAndOptimize(k, index, x2, x3);
+			return;
+		}
+
+		for (int i = 1; i <= 3; i++) {
+			backwardRecursion(space.withStatus(k, j, i), space.withStatusIndex(index, j, i), j + 1, i == 2 ? x2 + 1 : x2, i == 3 ? x3 + 1 : x3);
+		}
+	}
+
+	/**
+	 * This method corresponds to {@link #backwardRecursion(long, int, int, int, int)}, but distributes the work over multiple threads.
+	 * A layer contains all states whose status vectors have the same sum.
+	 * Every transition decreases the sum by one, so all possible next states of the states in a layer
+	 * are contained in the previous layer. Therefore the layers are processed from the terminal states (sum N)
+	 * to the start state (sum 3N) and the states of one layer are checked and optimized concurrently.
+	 */
+	private void layeredRecursion() {
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+		try {
+			for (int sum = n; sum <= 3 * n; sum++) {
+				// the results of a layer are published to the next layer when the task is joined
+				pool.invoke(new LayerTask(0, 0, 1, sum, 0, 0));
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Enumerates all status vectors of a layer (using backward recursion).
+	 * Every state is checked for feasibility and, if it is feasible, its optimal value gets calculated.
+	 * @param k the packed status vector filled up to the given customer
+	 * @param index the index of the status vector filled up to the given customer
+	 * @param j the customer from which the status vector should be filled
+	 * @param sum the sum of the statuses that are still missing
+	 * @param x2 the number of customers with status 2 so far
+	 * @param x3 the number of customers with status 3 so far
 	 */
-	private void optimization(int[] k, int index) {
-		if (index >= k.length) {
-			calculateOptValues(k);
+	private void enumerateLayer(long k, int index, int j, int sum, int x2, int x3) {
+		if (j > n) {
+			checkAndOptimize(k, index, x2, x3);
 			return;
 		}
 
 		for (int i = 1; i <= 3; i++) {
-			k[index] = i;
-			optimization(k, index + 1);
+			// the remaining customers need statuses between 1 and 3
+			if (sum - i >= n - j && sum - i <= 3 * (n - j)) {
+				enumerateLayer(space.withStatus(k, j, i), space.withStatusIndex(index, j, i), j + 1, sum - i, i == 2 ? x2 + 1 : x2,
+						i == 3 ? x3 + 1 : x3);
+			}
 		}
 	}
 
 	/**
-	 * Calculates the optimal value for all feasible states for a given status vector.
-	 * @param k the status vector
+	 * Checks all possible states for a given status vector for feasibility
+	 * and calculates the optimal values of the feasible ones.
+	 * Everything that only depends on the status vector is calculated once for all stops.
+	 * @param k the packed status vector
+	 * @param index the index of the status vector
+	 * @param x2 the number of customers with status 2
+	 * @param x3 the number of customers with status 3
 	 */
-	private void calculateOptValues(int[] k) {
+	private void checkAndOptimize(long k, int index, int x2, int x3) {
+		checkCancelled();
+
+		int x1 = n - x2 - x3;
+
+		// get all possible next stops
+		long nextStops = space.getNextStops(k);
+		// the proportionality factor
+		double m = getPropFactor(x2, x3);
+
+		int feasibleStates = 0;
+
 		for (int j = 0; j <= 2 * n; j++) {
-			State state = new State(j, k.clone());
+			long state = space.withStop(k, j);
+
+			if (feasibleState(state, index, nextStops, x1, x2)) {
+				int rank = space.getRank(j, index);
 
-			// calculate optimal value only for feasible states
-			if (feasbl.contains(state)) {
-				optValue.put(state, getOptimalValue(state));
+				setFeasible(rank);
+				setOptValue(rank, getOptimalValue(j, index, rank, nextStops, m));
+				feasibleStates++;
 			}
 		}
+
+		addProgress(2 * n + 1, feasibleStates);
+	}
+
+	/**
+	 * A task that enumerates a part of a layer.
+	 * The task is split by the status of the next customer, until only a few customers are left.
+	 */
+	private class LayerTask extends RecursiveAction {
+
+		private static final long serialVersionUID = -3920748619237261403L;
+
+		private final long k;
+		private final int index, j, sum, x2, x3;
+
+		/**
+		 * Creates a new task for the part of a layer with the given beginning of the status vector.
+		 * @param k the packed status vector filled up to the given customer
+		 * @param index the index of the status vector filled up to the given customer
+		 * @param j the customer from which the status vector should be filled
+		 * @param sum the sum of the statuses that are still missing
+		 * @param x2 the number of customers with status 2 so far
+		 * @param x3 the number of customers with status 3 so far
+		 */
+		public LayerTask(long k, int index, int j, int sum, int x2, int x3) {
+			this.k = k;
+			this.index = index;
+			this.j = j;
+			this.sum = sum;
+			this.x2 = x2;
+			this.x3 = x3;
+		}
+
+		@Override
+		protected void compute() {
+			if (n - j < SEQUENTIAL_CUSTOMERS) {
+				enumerateLayer(k, index, j, sum, x2, x3);
+				return;
+			}
+
+			List<LayerTask> tasks = new ArrayList<>();
+
+			for (int i = 1; i <= 3; i++) {
+				if (sum - i >= n - j && sum - i <= 3 * (n - j)) {
+					tasks.add(new LayerTask(space.withStatus(k, j, i), space.withStatusIndex(index, j, i), j + 1, sum - i, i == 2 ? x2 + 1 : x2,
+							i == 3 ? x3 + 1 : x3));
+				}
+			}
+
+			invokeAll(tasks);
+		}
 	}
 
 	/**
 	 * This method corresponds to the last step of the algorithm.
-	 * In this part the previously filled array next is used
+	 * In this part the previously filled table next is used
 	 * to construct the optimal route. The result is saved in the array sequence.
 	 */
 	private void identification() {
+		startPhase(Phase.IDENTIFICATION, 2 * n);
+
 		// the start position is always the first stop in the sequence
 		sequence.add(points.get(0));
 
 		// begin with the start state
-		int[] ks = new int[n];
-		Arrays.fill(ks, 3);
-
-		State currentState = new State(0, ks);
+		long currentState = space.getStartState();
 
 		// construct optimal route
-		while (next.containsKey(currentState) && next.get(currentState) != -1) {
-			currentState = getNextState(currentState, next.get(currentState));
-			sequence.add(points.get(currentState.l));
+		int l;
+
+		while ((l = next[space.getRank(currentState)]) != -1) {
+			currentState = space.getNextState(currentState, l);
+			sequence.add(points.get(l));
+			addProgress(1, 1);
 		}
+
+		reportProgress();
 	}
 
 	/**
-	 * Checks if a given state is feasible or not.
-	 * @param state the state to be checked
-	 * @return <code> true </code> if the state is feasible
+	 * Generates all states that are reachable from the start state (0, [3,...,3]) using a breadth-first search.
+	 * As every transition visits exactly one more stop, the levels of the search contain the states after d stops.
+	 * Only next states that pass the screens 2 and 3 are generated (screen 1 holds for every next state),
+	 * so the number of states is usually much smaller than 3^N*(2N+1) if the constraints are tight.
 	 */
-	private boolean feasibleState(State state) {
-		// screen 1
-		if (!checkStateConsistency(state)) {
-			return false;
-		}
-
-		if (state.l == 0) {
-			return true;
-		}
+	private void forwardGeneration() {
+		levels = new long[2 * n + 1][];
+		levels[0] = new long[] { space.getStartState() };
 
-		// screen 2
-		if (!checkVehicleCapacity(state)) {
-			return false;
-		}
+		// the progress is measured in levels, the feasible count is the number of generated states
+		startPhase(Phase.GENERATION, 2 * n);
 
-		// screen 3
-		if (!checkMPS(state)) {
-			return false;
-		}
+		for (int d = 0; d < 2 * n; d++) {
+			levels[d + 1] = space.getNextLevel(levels[d], this::checkCancelled);
 
-		// screen 4
-		List<Integer> nextStops = getNextStops(state);
+			if (incumbent != null) {
+				pruneLevel(d + 1);
+			}
 
-		if (nextStops.isEmpty()) {
-			return true;
+			addProgress(1, levels[d + 1].length);
 		}
 
-		return hasFeasibleNextState(state, nextStops);
+		// the costs to reach the states are not needed by the recursion
+		levelReached = null;
+
+		reportProgress();
 	}
 
 	/**
-	 * First part of screening.
-	 * This method checks the conditions (4)-(6) (the one that applies).
-	 * @param state the state to be checked
-	 * @return <code> true </code> if the conditions hold
-	 */
-	private boolean checkStateConsistency(State state) {
-		if (state.l == 0) {
-			// if L=0 => k[j] = 3 for j = 1,...,N
-			for (int j = 1; j <= n; j++) {
-				if (state.k[j - 1] != 3) {
-					return false;
-				}
+	 * Calculates the cost to reach each state of a level and removes the states whose cost to reach plus a lower bound
+	 * of their remaining cost (see {@link LowerBound}) isn't below the cost of the best known route.
+	 * Every route that is cheaper than the best known one only contains states that pass this test.
+	 * All predecessors of a state are contained in the previous level, which is already pruned.
+	 * @param d the level
+	 */
+	private void pruneLevel(int d) {
+		long[] level = levels[d];
+		double[] reached = new double[level.length];
+
+		Arrays.fill(reached, Double.POSITIVE_INFINITY);
+
+		for (int i = 0; i < levels[d - 1].length; i++) {
+			if ((i & 0xFF) == 0) {
+				checkCancelled();
 			}
-		} else if (state.l >= 1 && state.l <= n) {
-			// if 0<L<N+1 => k[L] = 2
-			if (state.k[state.l - 1] != 2) {
-				return false;
+
+			long state = levels[d - 1][i];
+			int l0 = space.getStop(state);
+			double m = getPropFactor(space.getKsInState(state, 2), space.getKsInState(state, 3));
+
+			for (long nextStops = space.getNextStops(state); nextStops != 0; nextStops &= nextStops - 1) {
+				int l = StateSpace.nextStop(nextStops);
+				int pos = Arrays.binarySearch(level, space.getNextState(state, l));
+
+				// the next state didn't pass the screens
+				if (pos < 0) {
+					continue;
+				}
+
+				reached[pos] = Math.min(reached[pos], levelReached[d - 1][i] + costs.get(l0, l) * m);
 			}
-		} else if (state.l >= n + 1 && state.l <= 2 * n) {
-			// if N<L<2N+1 => k[L-N] = 1
-			if (state.k[(state.l - n) - 1] != 1) {
-				return false;
+		}
+
+		double upperBound = incumbent.getCost();
+		int size = 0;
+
+		for (int i = 0; i < level.length; i++) {
+			if (reached[i] + lowerBound.get(space, level[i]) < upperBound) {
+				level[size] = level[i];
+				reached[size] = reached[i];
+				size++;
 			}
 		}
 
-		return true;
+		levels[d] = Arrays.copyOf(level, size);
+		levelReached[d] = Arrays.copyOf(reached, size);
 	}
 
 	/**
-	 * Second part of screening.
-	 * This method checks the conditions (7)-(8) (the one that applies).
-	 * @param state the state to be checked
-	 * @return <code> true </code> if the conditions hold
+	 * This method corresponds to {@link #backwardRecursion(long, int, int, int, int)} for the reachable states.
+	 * The levels are processed from the terminal states to the start state.
 	 */
-	private boolean checkVehicleCapacity(State state) {
-		int x2 = getKsInState(state, 2);
+	private void reachableRecursion() {
+		levelValue = new double[levels.length][];
+		levelNext = new byte[levels.length][];
 
-		if (state.l >= 1 && state.l <= n) {
-			// if 0<L<N+1 => x2 < C+1
-			if (x2 > c) {
-				return false;
-			}
+		long states = 0;
+
+		for (long[] level : levels) {
+			states += level.length;
 		}
 
-		if (state.l >= n + 1 && state.l <= 2 * n) {
-			// if N<L<2N+1 => x2 < C
-			if (x2 > c - 1) {
-				return false;
+		startPhase(Phase.RECURSION, states);
+
+		ForkJoinPool pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+
+		try {
+			for (int d = levels.length - 1; d >= 0; d--) {
+				levelValue[d] = new double[levels[d].length];
+				levelNext[d] = new byte[levels[d].length];
+
+				if (pool != null) {
+					pool.invoke(new LevelTask(d, 0, levels[d].length));
+				} else {
+					checkAndOptimizeReachable(d, 0, levels[d].length);
+				}
+			}
+		} finally {
+			if (pool != null) {
+				pool.shutdownNow();
 			}
 		}
 
-		return true;
+		reportProgress();
 	}
 
 	/**
-	 * Returns the count of the given number in the given state.
-	 * @param state the state
-	 * @param status the number
-	 * @return the count
+	 * Checks the given reachable states for feasibility (screen 4)
+	 * and calculates the optimal values of the feasible ones.
+	 * @param d the level of the states
+	 * @param from the index of the first state (inclusive)
+	 * @param to the index of the last state (exclusive)
 	 */
-	private int getKsInState(State state, int status) {
-		int count = 0;
+	private void checkAndOptimizeReachable(int d, int from, int to) {
+		// the states since the last progress update
+		int start = from;
+		int feasibleStates = 0;
+
+		for (int i = from; i < to; i++) {
+			if ((i & 0xFF) == 0) {
+				checkCancelled();
+				addProgress(i - start, feasibleStates);
+				start = i;
+				feasibleStates = 0;
+			}
 
-		for (int i = 0; i < state.k.length; i++) {
-			if (state.k[i] == status) {
-				count++;
+			long state = levels[d][i];
+			long nextStops = space.getNextStops(state);
+
+			if (nextStops == 0) {
+				// terminal state
+				levelNext[d][i] = -1;
+				feasibleStates++;
+				continue;
 			}
-		}
 
-		return count;
-	}
+			int l0 = space.getStop(state);
+			double m = getPropFactor(space.getKsInState(state, 2), space.getKsInState(state, 3));
 
-	/**
-	 * Third part of screening.
-	 * This method checks the conditions (9)-(10) (the one that applies).
-	 * @param state the state to be checked
-	 * @return <code> true </code> if the conditions hold
-	 */
-	private boolean checkMPS(State state) {
-		int x1 = getKsInState(state, 1);
+			double minVal = 0;
+			int bestNextStop = 0;
+
+			for (; nextStops != 0; nextStops &= nextStops - 1) {
+				int l = StateSpace.nextStop(nextStops);
+				int pos = Arrays.binarySearch(levels[d + 1], space.getNextState(state, l));
+
+				// only consider feasible states
+				if (pos < 0 || levelNext[d + 1][pos] == 0) {
+					continue;
+				}
 
-		if (state.l >= 1 && state.l <= n) {
-			// if 0<L<N+1 => |L-(x1+x2)| < MPS+1
-			int x2 = getKsInState(state, 2);
+				// calculate value (14)
+				double val = costs.get(l0, l) * m + levelValue[d + 1][pos];
 
-			if (Math.abs(state.l - (x1 + x2)) > mps) {
-				return false;
+				if (bestNextStop == 0 || val < minVal) {
+					minVal = val;
+					bestNextStop = l;
+				}
 			}
-		}
 
-		if (state.l >= n + 1 && state.l <= 2 * n) {
-			// if N<L<2N+1 => |(L-N)-x1| < MPS+1
-			if (Math.abs((state.l - n) - x1) > mps) {
-				return false;
+			levelValue[d][i] = minVal;
+			levelNext[d][i] = (byte) bestNextStop;
+
+			if (bestNextStop != 0) {
+				feasibleStates++;
 			}
 		}
 
-		return true;
+		addProgress(to - start, feasibleStates);
 	}
 
 	/**
-	 * Returns all possible next stops of a given state.
-	 * This corresponds to the set S which is the union
-	 * of the sets S3 and S2 defined in (11) and (12).
-	 * @param state the state
-	 * @return a list of all possible next stops
+	 * A task that checks and optimizes a part of a level of reachable states.
 	 */
-	private List<Integer> getNextStops(State state) {
-		List<Integer> nextStops = new ArrayList<>();
+	private class LevelTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 5181394472935581634L;
+
+		private final int d, from, to;
+
+		/**
+		 * Creates a new task for the given states.
+		 * @param d the level of the states
+		 * @param from the index of the first state (inclusive)
+		 * @param to the index of the last state (exclusive)
+		 */
+		public LevelTask(int d, int from, int to) {
+			this.d = d;
+			this.from = from;
+			this.to = to;
+		}
 
-		for (int i = 1; i <= 2 * n; i++) {
-			// S3
-			if (i >= 1 && i <= n) {
-				if (state.k[i - 1] == 3) {
-					nextStops.add(i);
-				}
+		@Override
+		protected void compute() {
+			if (to - from <= SEQUENTIAL_STATES) {
+				checkAndOptimizeReachable(d, from, to);
+				return;
 			}
 
-			// S2
-			if (i >= n + 1 && i <= 2 * n) {
-				if (state.k[(i - n) - 1] == 2) {
-					nextStops.add(i);
-				}
-			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new LevelTask(d, from, mid), new LevelTask(d, mid, to));
 		}
-
-		return nextStops;
 	}
 
 	/**
-	 * Checks if a given state has at least one feasible next state.
-	 * This is part of the fourth step of screening.
-	 * @param state the state to be checked
-	 * @param nextStops all the possible next stops of the given state
-	 * @return <code> true </code> if the state has at least one feasible next state
+	 * This method corresponds to {@link #identification()} for the reachable states.
 	 */
-	private boolean hasFeasibleNextState(State state, List<Integer> nextStops) {
-		for (int l : nextStops) {
-			if (feasbl.contains(getNextState(state, l))) {
-				return true;
-			}
+	private void reachableIdentification() {
+		startPhase(Phase.IDENTIFICATION, 2 * n);
+
+		// the start position is always the first stop in the sequence
+		sequence.add(points.get(0));
+
+		// begin with the start state
+		long currentState = levels[0][0];
+		int pos = 0;
+
+		// construct optimal route
+		for (int d = 0; levelNext[d][pos] > 0; d++) {
+			int l = levelNext[d][pos];
+
+			currentState = space.getNextState(currentState, l);
+			pos = Arrays.binarySearch(levels[d + 1], currentState);
+			sequence.add(points.get(l));
+			addProgress(1, 1);
 		}
 
-		return false;
+		reportProgress();
 	}
 
 	/**
-	 * Returns the next state of a given state at the given stop.
-	 * @param state the state
-	 * @param l the stop
-	 * @return the next state at the given stop
+	 * Checks if a given state is feasible or not.
+	 * @param state the state to be checked
+	 * @param index the index of the status vector of the state
+	 * @param nextStops all the possible next stops of the state
+	 * @param x1 the number of customers with status 1
+	 * @param x2 the number of customers with status 2
+	 * @return <code> true </code> if the state is feasible
 	 */
-	private State getNextState(State state, int l) {
-		return new State(l, getNextStatusVector(state, l));
+	private boolean feasibleState(long state, int index, long nextStops, int x1, int x2) {
+		// screen 1
+		if (!space.checkStateConsistency(state)) {
+			return false;
+		}
+
+		int l = space.getStop(state);
+
+		if (l == 0) {
+			return true;
+		}
+
+		// screen 2
+		if (!space.checkVehicleCapacity(l, x2)) {
+			return false;
+		}
+
+		// screen 3
+		if (!space.checkMPS(l, x1, x2)) {
+			return false;
+		}
+
+		// screen 4
+		if (nextStops == 0) {
+			return true;
+		}
+
+		return hasFeasibleNextState(index, nextStops);
 	}
 
 	/**
-	 * Returns the status vector of the next state
-	 * for a given state and a given stop.
-	 * This corresponds to definition (13).
-	 * @param state the state
-	 * @param l the stop
-	 * @return the next status vector for the given stop
+	 * Checks if a given state has at least one feasible next state.
+	 * This is part of the fourth step of screening.
+	 * @param index the index of the status vector of the state to be checked
+	 * @param nextStops all the possible next stops of the given state
+	 * @return <code> true </code> if the state has at least one feasible next state
 	 */
-	private int[] getNextStatusVector(State state, int l) {
-		int[] k = new int[n];
+	private boolean hasFeasibleNextState(int index, long nextStops) {
+		for (; nextStops != 0; nextStops &= nextStops - 1) {
+			int l = StateSpace.nextStop(nextStops);
 
-		for (int j = 1; j <= n; j++) {
-
-			if (j == l || j == l - n) {
-				// if j = L' or j = L'-N => k'[j] = k[j] - 1
-				k[j - 1] = state.k[j - 1] - 1;
-			} else {
-				// otherwise k'[j] = k[j]
-				k[j - 1] = state.k[j - 1];
+			if (isFeasible(space.getRank(l, space.getNextVectorIndex(index, l)))) {
+				return true;
 			}
 		}
 
-		return k;
+		return false;
 	}
 
 	/**
@@ -450,46 +982,36 @@ public class Psaraftis implements DarpSolver {
 	 * from a given state till the end of the route.
 	 * (Measured in terms of the specific objective function (1))
 	 * Also the best next stop (which is part of the optimal route),
-	 * will be stored in the array next.
-	 * @param state the state
+	 * will be stored in the table next.
+	 * @param l0 the stop of the state
+	 * @param index the index of the status vector of the state
+	 * @param rank the rank of the state
+	 * @param nextStops all the possible next stops of the state
+	 * @param m the proportionality factor of the state
 	 * @return the optimal value
 	 */
-	private double getOptimalValue(State state) {
-		// get all possible next stops
-		List<Integer> nextStops = getNextStops(state);
+	private double getOptimalValue(int l0, int index, int rank, long nextStops, double m) {
 
 		double minVal = 0;
 		int bestNextStop = -1;
 
-		for (int l : nextStops) {
+		for (; nextStops != 0; nextStops &= nextStops - 1) {
+			int l = StateSpace.nextStop(nextStops);
+
 			// get the next state at a possible next stop
-			State nextState = getNextState(state, l);
+			int nextRank = space.getRank(l, space.getNextVectorIndex(index, l));
 
 			// only consider feasible states
-			if (!feasbl.contains(nextState)) {
+			// because of the backward recursion their optimal values are already calculated
+			if (!isFeasible(nextRank)) {
 				continue;
 			}
 
 			// the travel time between points
-			double t = getDuration(state.l, l);
-			// the proportionality factor
-			double m = getPropFactor(state);
-
-			// the optimal value for the next state
-			double v;
-
-			// only calculate the optimal value for the next state
-			// if it has not yet been calculated
-			if (optValue.containsKey(nextState)) {
-				v = optValue.get(nextState);
-			} else {
-				// if a backward recursion is used, this does not happen
-				v = getOptimalValue(nextState);
-				optValue.put(nextState, v);
-			}
+			double t = costs.get(l0, l);
 
 			// calculate value (14)
-			double val = t * m + v;
+			double val = t * m + getOptValue(nextRank);
 
 			// if the value is the current minimum save it and the next stop
 			// (or if it is the first value/stop)
@@ -500,107 +1022,54 @@ public class Psaraftis implements DarpSolver {
 		}
 
 		// save the best next stop for the state
-		next.put(state, bestNextStop);
+		next[rank] = (byte) bestNextStop;
 
 		return minVal;
 	}
 
 	/**
-	 * Returns the time it takes the vehicle to get from one point to another.
-	 * If Routing is disabled the distance between the points gets returned.
-	 * @param l1 the start point
-	 * @param l2 the destination point
-	 * @return the time or distance
+	 * @param rank the rank of the state
+	 * @return <code> true </code> if the state is marked as feasible
 	 */
-	private double getDuration(int l1, int l2) {
-		return routing ? getTime(l1, l2) : getDistance(l1, l2);
+	private boolean isFeasible(int rank) {
+		return (feasbl.get(rank >>> 6) & (1L << rank)) != 0;
 	}
 
 	/**
-	 * Returns the time it takes the vehicle to get from one point to another.
-	 * @param l1 the start point
-	 * @param l2 the destination point
-	 * @return the time
+	 * Marks the state as feasible. This can be called by multiple threads at the same time.
+	 * @param rank the rank of the state
 	 */
-	private double getTime(int l1, int l2) {
-		long startTime = System.currentTimeMillis();
-		double t = router.getTime(points.get(l1), points.get(l2));
-		long stopTime = System.currentTimeMillis();
-
-		routingTime += stopTime - startTime;
-
-		return t;
+	private void setFeasible(int rank) {
+		feasbl.accumulateAndGet(rank >>> 6, 1L << rank, (word, bit) -> word | bit);
 	}
 
 	/**
-	 * Returns the distance between the given points.
-	 * @param l1 the first point
-	 * @param l2 the second point
-	 * @return the distance
+	 * @param rank the rank of the state
+	 * @return the stored optimal value of the state
 	 */
-	private double getDistance(int l1, int l2) {
-		GeoPosition start = points.get(l1).getPosition();
-		GeoPosition dest = points.get(l2).getPosition();
-
-		double dx = start.getLongitude() - dest.getLongitude();
-		double dy = start.getLatitude() - dest.getLatitude();
-
-		// the square distance could be used for better performance
-		return Math.sqrt(dx * dx + dy * dy);
+	private double getOptValue(int rank) {
+		return singlePrecision ? optValueFloat[rank] : optValue[rank];
 	}
 
 	/**
-	 * Returns the proportionality factor for a given state (15).
-	 * @param state the state
-	 * @return the proportionality factor
+	 * @param rank the rank of the state
+	 * @param value the optimal value of the state
 	 */
-	private double getPropFactor(State state) {
-		int x2 = getKsInState(state, 2);
-		int x3 = getKsInState(state, 3);
-
-		return w1 + w2 * (a * x3 + (2 - a) * x2);
+	private void setOptValue(int rank, double value) {
+		if (singlePrecision) {
+			optValueFloat[rank] = (float) value;
+		} else {
+			optValue[rank] = value;
+		}
 	}
-}
-
-/**
- * Class representing a state.
- * @author Daniel Schröder
- */
-class State {
-
-	public int l;
-	public int k[];
 
 	/**
-	 * Creates a new state with the given stop and status vector.
-	 * @param l the stop
-	 * @param k the status vector
+	 * Returns the proportionality factor for a state (15).
+	 * @param x2 the number of customers with status 2 in the state
+	 * @param x3 the number of customers with status 3 in the state
+	 * @return the proportionality factor
 	 */
-	public State(int l, int k[]) {
-		this.l = l;
-		this.k = k;
-	}
-
-	@Override
-	public boolean equals(Object obj) {
-		if (obj == this) {
-			return true;
-		}
-
-		if (obj == null || obj.getClass() != this.getClass()) {
-			return false;
-		}
-
-		State other = (State) obj;
-		return l == other.l && Arrays.equals(k, other.k);
-	}
-
-	@Override
-	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + l;
-		result = prime * result + Arrays.hashCode(k);
-		return result;
+	private double getPropFactor(int x2, int x3) {
+		return w1 + w2 * (a * x3 + (2 - a) * x2);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,290 @@
+package darp.algorithm;
+
+import java.util.Objects;
+
+import darp.models.ParametersModel;
+import darp.models.RequestsModel;
+
+/**
+ * Estimates the size of the state space, the memory and the time {@link Psaraftis} needs for a test
+ * before the calculation starts.
+ * <p>
+ * The screens 1-3 only depend on the stop and the numbers of customers with each status,
+ * so the states that pass them are counted exactly instead of being sampled.
+ * If only reachable states are generated, most of these states are usually unreachable,
+ * so the reachable states are generated up to a budget and the remaining levels are extrapolated.
+ * Screen 4 is not applied, therefore the number of feasible states is an upper bound.
+ * @author Daniel Schröder
+ */
+public class PsaraftisEstimator {
+
+	// calibrated time (in nanos) per enumerated state and per possible next stop of a feasible state of the dense tables
+	private static final double DENSE_NANOS_PER_STATE = 13;
+	private static final double DENSE_NANOS_PER_TRANSITION = 35;
+
+	// calibrated time (in nanos) per possible next stop of a reachable state
+	private static final double REACHABLE_NANOS_PER_TRANSITION = 130;
+
+	// the number of reachable states up to which the levels are generated
+	private static final long GENERATION_BUDGET = 1_000_000;
+
+	// used to read the configuration of the solver
+	private final Psaraftis solver;
+
+	/**
+	 * Creates a new estimator for the given solver.
+	 * The current configuration of the solver is used for every estimate.
+	 * @param solver the solver
+	 * @throws NullPointerException if solver is null
+	 */
+	public PsaraftisEstimator(Psaraftis solver) throws NullPointerException {
+		this.solver = Objects.requireNonNull(solver);
+	}
+
+	/**
+	 * Estimates the calculation of a test.
+	 * @param requests the requests of the test
+	 * @param parameters the parameters of the test
+	 * @return the estimate
+	 * @throws NullPointerException if null is passed
+	 */
+	public Estimate estimate(RequestsModel requests, ParametersModel parameters) throws NullPointerException {
+		int n = Objects.requireNonNull(requests).getDestWaypoints().size();
+		int c = Objects.requireNonNull(parameters).getCapacity();
+		int mps = parameters.getMPS();
+
+		boolean reachableOnly = solver.isReachableOnly();
+		int maxCustomers = reachableOnly ? StateSpace.MAX_CUSTOMERS : StateSpace.MAX_RANKED_CUSTOMERS;
+
+		// every status vector is combined with all 2N+1 stops
+		double states = Math.pow(3, n) * (2 * n + 1);
+
+		if (n > maxCustomers) {
+			return new Estimate(false, states, (long) states, Long.MAX_VALUE, Long.MAX_VALUE);
+		}
+
+		StateSpace space = new StateSpace(n, c, mps);
+		long[] levels = countScreenedStates(space);
+
+		if (reachableOnly) {
+			levels = countReachableStates(space, levels);
+		}
+
+		long feasible = 0;
+		long maxLevel = 0;
+
+		for (long level : levels) {
+			feasible += level;
+			maxLevel = Math.max(maxLevel, level);
+		}
+
+		// the travel costs
+		long memory = 8L * (2 * n + 1) * (2 * n + 1);
+		double nanos;
+
+		if (reachableOnly) {
+			// a state, its value and its next stop
+			// plus the buffer used to generate a level (which is at most twice as large as the level)
+			memory += 17 * feasible + 16 * maxLevel;
+			nanos = REACHABLE_NANOS_PER_TRANSITION * feasible * n;
+		} else {
+			long ranks = space.getRankCount();
+
+			// a bit for the feasibility, the optimal value and the next stop
+			memory += (ranks + 63) / 64 * 8 + ranks * (solver.isSinglePrecision() ? 4 : 8) + ranks;
+			nanos = DENSE_NANOS_PER_STATE * states + DENSE_NANOS_PER_TRANSITION * feasible * n;
+		}
+
+		long time = (long) (nanos / solver.getParallelism() / 1_000_000);
+
+		return new Estimate(true, states, feasible, memory, time);
+	}
+
+	/**
+	 * Counts the states that pass the screens 1-3.
+	 * A state with d visited stops has x1 customers with status 1 and x2 with status 2, so that d = 2*x1 + x2.
+	 * @param space the state space
+	 * @return the number of screened states for each number of visited stops
+	 */
+	private static long[] countScreenedStates(StateSpace space) {
+		int n = space.getN();
+		long[] levels = new long[2 * n + 1];
+
+		// the start state
+		levels[0] = 1;
+
+		for (int x1 = 0; x1 <= n; x1++) {
+			for (int x2 = 0; x1 + x2 <= n; x2++) {
+				int x3 = n - x1 - x2;
+
+				// the stop determines the status of its customer (screen 1), the others are arbitrary
+				long pickups = x2 > 0 ? multinomial(n - 1, x1, x2 - 1) : 0;
+				long deliveries = x1 > 0 ? multinomial(n - 1, x1 - 1, x2) : 0;
+
+				for (int l = 1; l <= 2 * n; l++) {
+					if (!space.checkVehicleCapacity(l, x2) || !space.checkMPS(l, x1, x2)) {
+						continue;
+					}
+
+					levels[2 * x1 + x2] += l <= n ? pickups : deliveries;
+				}
+			}
+		}
+
+		return levels;
+	}
+
+	/**
+	 * Counts the states that are reachable from the start state by generating the levels (see {@link Psaraftis#setReachableOnly(boolean)})
+	 * until the budget is used up. The remaining levels are extrapolated with the growth of the last generated level,
+	 * but they never contain more states than pass the screens.
+	 * @param space the state space
+	 * @param screened the number of screened states for each number of visited stops
+	 * @return the (estimated) number of reachable states for each number of visited stops
+	 */
+	private static long[] countReachableStates(StateSpace space, long[] screened) {
+		int n = space.getN();
+		long[] levels = new long[2 * n + 1];
+
+		long[] level = { space.getStartState() };
+		long generated = 1;
+		int d = 0;
+
+		levels[0] = 1;
+
+		// a level has at most 2N times more states than the previous one
+		while (d < 2 * n && generated + 2L * n * level.length <= GENERATION_BUDGET) {
+			level = space.getNextLevel(level, () -> {
+			});
+
+			levels[++d] = level.length;
+			generated += level.length;
+		}
+
+		double growth = d > 0 ? (double) levels[d] / levels[d - 1] : 2 * n;
+
+		for (d++; d <= 2 * n; d++) {
+			levels[d] = (long) Math.min(screened[d], Math.ceil(levels[d - 1] * growth));
+		}
+
+		return levels;
+	}
+
+	/**
+	 * Returns the number of status vectors of the given length with the given numbers of customers with status 1 and 2.
+	 * @param n the length
+	 * @param x1 the number of customers with status 1
+	 * @param x2 the number of customers with status 2
+	 * @return the multinomial coefficient n! / (x1! x2! (n-x1-x2)!)
+	 */
+	private static long multinomial(int n, int x1, int x2) {
+		return binomial(n, x1) * binomial(n - x1, x2);
+	}
+
+	/**
+	 * @param n the number of elements
+	 * @param k the number of chosen elements
+	 * @return the binomial coefficient
+	 */
+	private static long binomial(int n, int k) {
+		long result = 1;
+
+		for (int i = 1; i <= k; i++) {
+			result = result * (n - k + i) / i;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the memory that can still be allocated by the JVM.
+	 * @return the available memory (in bytes)
+	 */
+	public static long getAvailableMemory() {
+		Runtime runtime = Runtime.getRuntime();
+
+		return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+	}
+
+	/**
+	 * The estimated calculation of a test.
+	 */
+	public static class Estimate {
+
+		private final boolean supported;
+		private final double states;
+		private final long feasibleStates, memory, time;
+
+		/**
+		 * Creates a new estimate.
+		 * @param supported whether the solver supports the test
+		 * @param states the number of states
+		 * @param feasibleStates the upper bound of the number of feasible states
+		 * @param memory the memory (in bytes)
+		 * @param time the time (in millis)
+		 */
+		private Estimate(boolean supported, double states, long feasibleStates, long memory, long time) {
+			this.supported = supported;
+			this.states = states;
+			this.feasibleStates = feasibleStates;
+			this.memory = memory;
+			this.time = time;
+		}
+
+		/**
+		 * @return <code> true </code> if the solver supports the number of customers
+		 */
+		public boolean isSupported() {
+			return supported;
+		}
+
+		/**
+		 * @return the number of states (L, k), which is 3^N*(2N+1)
+		 */
+		public double getStates() {
+			return states;
+		}
+
+		/**
+		 * @return the upper bound of the number of feasible states
+		 * (the states that pass the screens 1-3 and, if only reachable states are generated, are reachable)
+		 */
+		public long getFeasibleStates() {
+			return feasibleStates;
+		}
+
+		/**
+		 * @return the upper bound of the fraction of feasible states
+		 */
+		public double getFeasibleFraction() {
+			return feasibleStates / states;
+		}
+
+		/**
+		 * @return the estimated memory of the tables (in bytes)
+		 */
+		public long getMemory() {
+			return memory;
+		}
+
+		/**
+		 * @return the estimated time of the calculation (in millis)
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * @param availableMemory the available memory (in bytes)
+		 * @return <code> true </code> if the test is supported and the tables fit into the given memory
+		 */
+		public boolean fits(long availableMemory) {
+			return supported && memory <= availableMemory;
+		}
+
+		@Override
+		public String toString() {
+			return "states " + (long) states + ", feasible " + feasibleStates + ", memory " + memory / (1024 * 1024) + " MB, time " + time + " ms";
+		}
+	}
+}
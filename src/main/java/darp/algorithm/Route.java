@@ -0,0 +1,367 @@
+package darp.algorithm;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A route that can be changed by moves (swap, relocate, or-opt and 2-opt) whose cost can be evaluated before they are applied.
+ * The cost, the violations and the numbers of picked up and delivered customers after each position are cached.
+ * A move only changes the order of the stops between two positions, so the states after that segment
+ * (which only depend on the visited stops) and thus the costs of all later legs stay the same.
+ * Therefore a move is evaluated in O(length of the segment) and applied in O(length of the route).
+ * @author Daniel Schröder
+ */
+public class Route {
+
+	private final RouteEvaluator evaluator;
+	private final CostMatrix costs;
+	private final int n;
+
+	// the stops of the route (the first one is the start position 0)
+	private final int[] stops;
+
+	// indexed by the point
+	private final int[] position, seen;
+
+	// indexed by the position (the values after visiting the position)
+	private final double[] cost;
+	private final int[] violations, pickups, deliveries;
+
+	// the stops of a segment after a move
+	private final int[] segment;
+
+	// counts the evaluations to detect which stops are visited in the current one
+	private int walk;
+
+	/**
+	 * Creates a new route.
+	 * @param evaluator the evaluator of the test
+	 * @param stops the stops of the route (starting with 0, each other stop at most once)
+	 * @throws NullPointerException if null is passed
+	 * @throws IllegalArgumentException if the stops are invalid
+	 */
+	public Route(RouteEvaluator evaluator, int[] stops) throws NullPointerException, IllegalArgumentException {
+		this.evaluator = Objects.requireNonNull(evaluator);
+		this.stops = Objects.requireNonNull(stops).clone();
+
+		costs = evaluator.getCosts();
+		n = evaluator.getN();
+
+		if (stops.length == 0 || stops.length > 2 * n + 1 || stops[0] != 0) {
+			throw new IllegalArgumentException("A route must start at 0 and contain at most 2N+1 stops");
+		}
+
+		// stops that are not part of the route are visited after all others
+		position = new int[2 * n + 1];
+		Arrays.fill(position, Integer.MAX_VALUE);
+
+		for (int p = 0; p < stops.length; p++) {
+			if (stops[p] < 0 || stops[p] > 2 * n || position[stops[p]] != Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Invalid stop " + stops[p]);
+			}
+
+			position[stops[p]] = p;
+		}
+
+		seen = new int[2 * n + 1];
+		cost = new double[stops.length];
+		violations = new int[stops.length];
+		pickups = new int[stops.length];
+		deliveries = new int[stops.length];
+		segment = new int[stops.length];
+
+		update(1);
+	}
+
+	/**
+	 * @return the number of stops (including the start position)
+	 */
+	public int size() {
+		return stops.length;
+	}
+
+	/**
+	 * @param p the position
+	 * @return the stop at the given position
+	 */
+	public int getStop(int p) {
+		return stops[p];
+	}
+
+	/**
+	 * @return a copy of the stops
+	 */
+	public int[] getStops() {
+		return stops.clone();
+	}
+
+	/**
+	 * @return the cost of the route
+	 */
+	public double getCost() {
+		return cost[stops.length - 1];
+	}
+
+	/**
+	 * @return the violations of the route (see {@link RouteEvaluator#getViolations(int[])})
+	 */
+	public int getViolations() {
+		return violations[stops.length - 1];
+	}
+
+	/**
+	 * @return <code> true </code> if the route does not violate any constraint
+	 */
+	public boolean isFeasible() {
+		return getViolations() == 0;
+	}
+
+	/**
+	 * Returns the cost of the route after swapping the stops at two positions.
+	 * @param i the first position (at least 1)
+	 * @param j the second position
+	 * @return the cost or {@link Double#POSITIVE_INFINITY} if the route would be infeasible
+	 */
+	public double evaluateSwap(int i, int j) {
+		return evaluate(fillSwap(i, j), Math.max(i, j));
+	}
+
+	/**
+	 * Swaps the stops at two positions.
+	 * @param i the first position (at least 1)
+	 * @param j the second position
+	 */
+	public void applySwap(int i, int j) {
+		apply(fillSwap(i, j), Math.max(i, j));
+	}
+
+	/**
+	 * Returns the cost of the route after moving the stop at one position to another position.
+	 * @param from the current position of the stop (at least 1)
+	 * @param to the new position of the stop (at least 1)
+	 * @return the cost or {@link Double#POSITIVE_INFINITY} if the route would be infeasible
+	 */
+	public double evaluateRelocate(int from, int to) {
+		return evaluate(fillRelocate(from, to), Math.max(from, to));
+	}
+
+	/**
+	 * Moves the stop at one position to another position.
+	 * @param from the current position of the stop (at least 1)
+	 * @param to the new position of the stop (at least 1)
+	 */
+	public void applyRelocate(int from, int to) {
+		apply(fillRelocate(from, to), Math.max(from, to));
+	}
+
+	/**
+	 * Returns the cost of the route after moving a chain of consecutive stops to another position (or-opt).
+	 * @param from the current position of the first stop of the chain (at least 1)
+	 * @param length the number of stops of the chain
+	 * @param to the new position of the first stop of the chain (at least 1, at most the size minus the length)
+	 * @return the cost or {@link Double#POSITIVE_INFINITY} if the route would be infeasible
+	 */
+	public double evaluateOrOpt(int from, int length, int to) {
+		return evaluate(fillOrOpt(from, length, to), Math.max(from, to) + length - 1);
+	}
+
+	/**
+	 * Moves a chain of consecutive stops to another position (or-opt).
+	 * @param from the current position of the first stop of the chain (at least 1)
+	 * @param length the number of stops of the chain
+	 * @param to the new position of the first stop of the chain (at least 1, at most the size minus the length)
+	 */
+	public void applyOrOpt(int from, int length, int to) {
+		apply(fillOrOpt(from, length, to), Math.max(from, to) + length - 1);
+	}
+
+	/**
+	 * Returns the cost of the route after reversing the stops between two positions.
+	 * @param i the first position (at least 1)
+	 * @param j the last position
+	 * @return the cost or {@link Double#POSITIVE_INFINITY} if the route would be infeasible
+	 */
+	public double evaluateTwoOpt(int i, int j) {
+		return evaluate(fillTwoOpt(i, j), Math.max(i, j));
+	}
+
+	/**
+	 * Reverses the stops between two positions.
+	 * @param i the first position (at least 1)
+	 * @param j the last position
+	 */
+	public void applyTwoOpt(int i, int j) {
+		apply(fillTwoOpt(i, j), Math.max(i, j));
+	}
+
+	/**
+	 * Fills the segment with the stops after a swap.
+	 * @param i the first position
+	 * @param j the second position
+	 * @return the first position of the segment
+	 */
+	private int fillSwap(int i, int j) {
+		int lo = Math.min(i, j);
+		int hi = Math.max(i, j);
+
+		System.arraycopy(stops, lo, segment, lo, hi - lo + 1);
+		segment[lo] = stops[hi];
+		segment[hi] = stops[lo];
+
+		return lo;
+	}
+
+	/**
+	 * Fills the segment with the stops after a relocation.
+	 * @param from the current position of the stop
+	 * @param to the new position of the stop
+	 * @return the first position of the segment
+	 */
+	private int fillRelocate(int from, int to) {
+		if (from < to) {
+			System.arraycopy(stops, from + 1, segment, from, to - from);
+		} else {
+			System.arraycopy(stops, to, segment, to + 1, from - to);
+		}
+
+		segment[to] = stops[from];
+
+		return Math.min(from, to);
+	}
+
+	/**
+	 * Fills the segment with the stops after moving a chain.
+	 * @param from the current position of the chain
+	 * @param length the number of stops of the chain
+	 * @param to the new position of the chain
+	 * @return the first position of the segment
+	 */
+	private int fillOrOpt(int from, int length, int to) {
+		if (from < to) {
+			System.arraycopy(stops, from + length, segment, from, to - from);
+		} else {
+			System.arraycopy(stops, to, segment, to + length, from - to);
+		}
+
+		System.arraycopy(stops, from, segment, to, length);
+
+		return Math.min(from, to);
+	}
+
+	/**
+	 * Fills the segment with the stops after a reversal.
+	 * @param i the first position
+	 * @param j the last position
+	 * @return the first position of the segment
+	 */
+	private int fillTwoOpt(int i, int j) {
+		int lo = Math.min(i, j);
+		int hi = Math.max(i, j);
+
+		for (int p = lo; p <= hi; p++) {
+			segment[p] = stops[lo + hi - p];
+		}
+
+		return lo;
+	}
+
+	/**
+	 * Evaluates the route with the stops of the segment.
+	 * @param lo the first position of the segment
+	 * @param hi the last position of the segment
+	 * @return the cost or {@link Double#POSITIVE_INFINITY} if the route would be infeasible
+	 */
+	private double evaluate(int lo, int hi) {
+		walk++;
+
+		int previous = stops[lo - 1];
+		double value = cost[lo - 1];
+		int violated = violations[lo - 1];
+		int pickedUp = pickups[lo - 1];
+		int delivered = deliveries[lo - 1];
+
+		int last = stops.length - 1;
+
+		for (int p = lo; p <= last; p++) {
+			if (p > hi && pickedUp == pickups[p - 1] && delivered == deliveries[p - 1]) {
+				// the state after the segment is the same as before, so are the following legs
+				value += costs.get(previous, stops[p]) * evaluator.getPropFactor(pickedUp - delivered, n - pickedUp) + cost[last] - cost[p];
+				violated += violations[last] - violations[p - 1];
+				return violated > 0 ? Double.POSITIVE_INFINITY : value;
+			}
+
+			int l = p <= hi ? segment[p] : stops[p];
+
+			// calculate value (14) of the leg
+			value += costs.get(previous, l) * evaluator.getPropFactor(pickedUp - delivered, n - pickedUp);
+
+			if (l <= n) {
+				pickedUp++;
+				violated += evaluator.getPickupViolations(l, pickedUp, delivered);
+				seen[l] = walk;
+			} else if (position[l - n] < lo || seen[l - n] == walk) {
+				delivered++;
+				violated += evaluator.getDeliveryViolations(l - n, delivered);
+			} else {
+				// the customer is delivered before the pickup
+				violated++;
+			}
+
+			if (violated > 0) {
+				return Double.POSITIVE_INFINITY;
+			}
+
+			previous = l;
+		}
+
+		return value;
+	}
+
+	/**
+	 * Copies the segment into the route and updates the cached values.
+	 * @param lo the first position of the segment
+	 * @param hi the last position of the segment
+	 */
+	private void apply(int lo, int hi) {
+		for (int p = lo; p <= hi; p++) {
+			stops[p] = segment[p];
+			position[stops[p]] = p;
+		}
+
+		update(lo);
+	}
+
+	/**
+	 * Updates the cached values from the given position till the end of the route.
+	 * @param from the first position
+	 */
+	private void update(int from) {
+		walk++;
+
+		for (int p = from; p < stops.length; p++) {
+			int l = stops[p];
+			int pickedUp = pickups[p - 1];
+			int delivered = deliveries[p - 1];
+			int violated = violations[p - 1];
+
+			// calculate value (14) of the leg
+			cost[p] = cost[p - 1] + costs.get(stops[p - 1], l) * evaluator.getPropFactor(pickedUp - delivered, n - pickedUp);
+
+			if (l <= n) {
+				pickedUp++;
+				violated += evaluator.getPickupViolations(l, pickedUp, delivered);
+				seen[l] = walk;
+			} else if (position[l - n] < from || seen[l - n] == walk) {
+				delivered++;
+				violated += evaluator.getDeliveryViolations(l - n, delivered);
+			} else {
+				// the customer is delivered before the pickup
+				violated++;
+			}
+
+			pickups[p] = pickedUp;
+			deliveries[p] = delivered;
+			violations[p] = violated;
+		}
+	}
+}
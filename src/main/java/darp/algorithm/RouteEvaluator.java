@@ -0,0 +1,152 @@
+package darp.algorithm;
+
+import java.util.Objects;
+
+import darp.models.ParametersModel;
+
+/**
+ * Evaluates routes of a test with the objective function of {@link Psaraftis}.
+ * A route is an array of stops (indices into the cost matrix), which starts with the start position 0
+ * followed by the pickups 1 to N and the deliveries N+1 to 2N in the order they are visited.
+ * <p>
+ * The cost of a route is the travel time of each leg multiplied by the proportionality factor (15)
+ * of the state the leg starts in. A route is feasible if every customer is picked up before the delivery
+ * and the capacity (7)-(8) and the maximum position shift (9)-(10) are never exceeded.
+ * The evaluator is immutable, so it can be shared by multiple threads.
+ * To change a route and evaluate moves efficiently a {@link Route} should be used.
+ * @author Daniel Schröder
+ */
+public class RouteEvaluator {
+
+	private final CostMatrix costs;
+	private final int n, c, mps;
+	private final double a, w1, w2;
+
+	/**
+	 * Creates a new evaluator for the given travel costs and parameters.
+	 * @param costs the travel costs between the 2N+1 points of the test
+	 * @param parameters the parameters of the test
+	 * @throws NullPointerException if null is passed
+	 */
+	public RouteEvaluator(CostMatrix costs, ParametersModel parameters) throws NullPointerException {
+		this.costs = Objects.requireNonNull(costs);
+
+		n = (costs.size() - 1) / 2;
+		c = parameters.getCapacity();
+		mps = parameters.getMPS();
+		a = parameters.getTimePref();
+		w2 = parameters.getWeight() / 100d;
+		w1 = (1 - w2);
+	}
+
+	/**
+	 * @return the number of customers
+	 */
+	public int getN() {
+		return n;
+	}
+
+	/**
+	 * @return the capacity of the vehicle
+	 */
+	public int getCapacity() {
+		return c;
+	}
+
+	/**
+	 * @return the maximum position shift
+	 */
+	public int getMPS() {
+		return mps;
+	}
+
+	/**
+	 * @return the travel costs between all points
+	 */
+	public CostMatrix getCosts() {
+		return costs;
+	}
+
+	/**
+	 * Returns the proportionality factor for a state (15).
+	 * @param x2 the number of customers with status 2 in the state
+	 * @param x3 the number of customers with status 3 in the state
+	 * @return the proportionality factor
+	 */
+	public double getPropFactor(int x2, int x3) {
+		return w1 + w2 * (a * x3 + (2 - a) * x2);
+	}
+
+	/**
+	 * Returns how much the capacity (7) and the maximum position shift (9) are exceeded by a pickup.
+	 * @param j the customer
+	 * @param pickedUp the number of customers that are picked up (including this one)
+	 * @param delivered the number of customers that are delivered
+	 * @return the violations (0 if the pickup is feasible)
+	 */
+	public int getPickupViolations(int j, int pickedUp, int delivered) {
+		return Math.max(0, pickedUp - delivered - c) + Math.max(0, Math.abs(j - pickedUp) - mps);
+	}
+
+	/**
+	 * Returns how much the maximum position shift (10) is exceeded by a delivery.
+	 * @param j the customer
+	 * @param delivered the number of customers that are delivered (including this one)
+	 * @return the violations (0 if the delivery is feasible)
+	 */
+	public int getDeliveryViolations(int j, int delivered) {
+		return Math.max(0, Math.abs(j - delivered) - mps);
+	}
+
+	/**
+	 * Returns the route that picks up and delivers the customers one after the other (P1, D1, P2, D2, ...).
+	 * This route is feasible if any route is, as the vehicle never carries more than one customer and no position is shifted.
+	 * @return the route
+	 */
+	public int[] getSequentialRoute() {
+		int[] route = new int[2 * n + 1];
+
+		for (int j = 1; j <= n; j++) {
+			route[2 * j - 1] = j;
+			route[2 * j] = n + j;
+		}
+
+		return route;
+	}
+
+	/**
+	 * A test without a feasible route has a capacity of 0, as the sequential route (see {@link #getSequentialRoute()})
+	 * is feasible otherwise.
+	 * @return <code> true </code> if the test has a feasible route
+	 */
+	public boolean hasFeasibleRoute() {
+		return isFeasible(getSequentialRoute());
+	}
+
+	/**
+	 * Returns the cost of a route.
+	 * @param route the route
+	 * @return the cost
+	 */
+	public double getCost(int[] route) {
+		return new Route(this, route).getCost();
+	}
+
+	/**
+	 * Returns the number of violations of a route. Each customer that is delivered before the pickup
+	 * and each customer that exceeds the capacity or the maximum position shift (by one position) counts as one violation.
+	 * @param route the route
+	 * @return the violations (0 if the route is feasible)
+	 */
+	public int getViolations(int[] route) {
+		return new Route(this, route).getViolations();
+	}
+
+	/**
+	 * @param route the route
+	 * @return <code> true </code> if the route is feasible and visits all stops
+	 */
+	public boolean isFeasible(int[] route) {
+		return route.length == 2 * n + 1 && getViolations(route) == 0;
+	}
+}
@@ -0,0 +1,483 @@
+package darp.algorithm;
+
+import java.util.Arrays;
+
+/**
+ * The state space of Psaraftis dynamic programming solution.
+ * A state (L, k) is packed into a single long, so that the algorithm can work on primitives only:
+ * the lowest bits contain the stop L and above that each customer j occupies
+ * two bits containing its status k[j] (1, 2 or 3).
+ * <p>
+ * Additionally every consistent state (screen 1) has a rank, which can be used as an index into dense tables.
+ * The start state has the rank 0. For L > 0 the status of the customer belonging to L is fixed,
+ * so the states with the stop L take up 3^(N-1) consecutive ranks ordered by the remaining status vector.
+ * @author Daniel Schröder
+ */
+final class StateSpace {
+
+	/**
+	 * The maximum number of customers that fit into a packed state.
+	 */
+	public static final int MAX_CUSTOMERS = 28;
+
+	/**
+	 * The maximum number of customers for which all ranks fit into an int.
+	 */
+	public static final int MAX_RANKED_CUSTOMERS = 17;
+
+	// the bits used for the stop
+	private static final int L_BITS = 6;
+	private static final long L_MASK = (1L << L_BITS) - 1;
+
+	// the lower bit of the status of each customer
+	private static final long LOW_BITS = 0x5555555555555555L;
+
+	// the base 3 index of the 4 statuses contained in a byte
+	private static final int[] BYTE_INDEX = new int[256];
+
+	static {
+		for (int b = 0; b < 256; b++) {
+			int index = 0;
+
+			for (int i = 3; i >= 0; i--) {
+				// the status 0 does not occur in valid states
+				index = index * 3 + Math.max(((b >>> (2 * i)) & 3) - 1, 0);
+			}
+
+			BYTE_INDEX[b] = index;
+		}
+	}
+
+	private final int n, c, mps;
+	private final long statusMask;
+
+	// the powers of 3 up to 3^N
+	private final int[] pow3;
+
+	/**
+	 * Creates the state space for the given test parameters.
+	 * @param n the number of customers
+	 * @param c the capacity of the vehicle
+	 * @param mps the maximum position shift
+	 * @throws IllegalArgumentException if there are too many customers
+	 */
+	public StateSpace(int n, int c, int mps) throws IllegalArgumentException {
+		if (n < 0 || n > MAX_CUSTOMERS) {
+			throw new IllegalArgumentException("The number of customers must be between 0 and " + MAX_CUSTOMERS);
+		}
+
+		this.n = n;
+		this.c = c;
+		this.mps = mps;
+
+		statusMask = LOW_BITS & ((1L << (2 * n)) - 1);
+
+		pow3 = new int[Math.min(n, MAX_RANKED_CUSTOMERS) + 1];
+		pow3[0] = 1;
+
+		for (int i = 1; i < pow3.length; i++) {
+			pow3[i] = pow3[i - 1] * 3;
+		}
+	}
+
+	/**
+	 * @return the number of customers
+	 */
+	public int getN() {
+		return n;
+	}
+
+	/**
+	 * Returns the packed state for the given stop and status vector.
+	 * @param l the stop
+	 * @param k the status vector
+	 * @return the packed state
+	 */
+	public long encode(int l, int[] k) {
+		long state = 0;
+
+		for (int j = n; j >= 1; j--) {
+			state = (state << 2) | k[j - 1];
+		}
+
+		return (state << L_BITS) | l;
+	}
+
+	/**
+	 * Returns the start state (0, [3,...,3]).
+	 * @return the packed start state
+	 */
+	public long getStartState() {
+		// the status 3 sets both bits of each customer
+		return (statusMask | (statusMask << 1)) << L_BITS;
+	}
+
+	/**
+	 * Returns the packed state with the given stop and the status vector of the given state.
+	 * @param state the state
+	 * @param l the new stop
+	 * @return the packed state
+	 */
+	public long withStop(long state, int l) {
+		return (state & ~L_MASK) | l;
+	}
+
+	/**
+	 * Returns the packed state with the given status for the given customer.
+	 * The previous status of the customer must be 0.
+	 * @param state the state
+	 * @param j the customer (1,...,N)
+	 * @param status the status (1, 2 or 3)
+	 * @return the packed state
+	 */
+	public long withStatus(long state, int j, int status) {
+		return state | ((long) status << (L_BITS + 2 * (j - 1)));
+	}
+
+	/**
+	 * @param state the state
+	 * @return the stop L of the state
+	 */
+	public int getStop(long state) {
+		return (int) (state & L_MASK);
+	}
+
+	/**
+	 * @param state the state
+	 * @param j the customer (1,...,N)
+	 * @return the status k[j] of the customer
+	 */
+	public int getStatus(long state, int j) {
+		return (int) (state >>> (L_BITS + 2 * (j - 1))) & 3;
+	}
+
+	/**
+	 * Returns a mask containing the lower bit of each customer whose status matches the given one.
+	 * @param state the state
+	 * @param status the status (1, 2 or 3)
+	 * @return the mask
+	 */
+	private long getStatusBits(long state, int status) {
+		long k = state >>> L_BITS;
+		long lo = k & statusMask;
+		long hi = (k >>> 1) & statusMask;
+
+		switch (status) {
+			case 1:
+				return lo & ~hi;
+			case 2:
+				return hi & ~lo;
+			case 3:
+				return hi & lo;
+			default:
+				throw new IllegalArgumentException("Invalid status " + status);
+		}
+	}
+
+	/**
+	 * Returns the count of the given status in the given state.
+	 * @param state the state
+	 * @param status the status (1, 2 or 3)
+	 * @return the count
+	 */
+	public int getKsInState(long state, int status) {
+		return Long.bitCount(getStatusBits(state, status));
+	}
+
+	/**
+	 * Returns all possible next stops of a given state as a bit mask.
+	 * Bit L-1 is set if L is a possible next stop.
+	 * This corresponds to the set S which is the union
+	 * of the sets S3 and S2 defined in (11) and (12).
+	 * Use {@link #nextStop(long)} to iterate over the stops.
+	 * @param state the state
+	 * @return the next stops
+	 */
+	public long getNextStops(long state) {
+		long s3 = compress(getStatusBits(state, 3));
+		long s2 = compress(getStatusBits(state, 2));
+
+		return s3 | (s2 << n);
+	}
+
+	/**
+	 * Returns the lowest stop contained in the given mask of next stops.
+	 * @param nextStops the mask (not empty)
+	 * @return the stop
+	 */
+	public static int nextStop(long nextStops) {
+		return Long.numberOfTrailingZeros(nextStops) + 1;
+	}
+
+	/**
+	 * Maps the lower bit of each customer to consecutive bits (bit 2(j-1) to bit j-1).
+	 * @param bits the bits
+	 * @return the compressed bits
+	 */
+	private static long compress(long bits) {
+		bits &= LOW_BITS;
+		bits = (bits | (bits >>> 1)) & 0x3333333333333333L;
+		bits = (bits | (bits >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+		bits = (bits | (bits >>> 4)) & 0x00FF00FF00FF00FFL;
+		bits = (bits | (bits >>> 8)) & 0x0000FFFF0000FFFFL;
+		bits = (bits | (bits >>> 16)) & 0x00000000FFFFFFFFL;
+
+		return bits;
+	}
+
+	/**
+	 * Returns the next state of a given state at the given stop.
+	 * This corresponds to definition (13):
+	 * k'[j] = k[j] - 1 if j = L' or j = L'-N, otherwise k'[j] = k[j].
+	 * @param state the state
+	 * @param l the stop
+	 * @return the next state at the given stop
+	 */
+	public long getNextState(long state, int l) {
+		int j = l <= n ? l : l - n;
+
+		return ((state & ~L_MASK) - (1L << (L_BITS + 2 * (j - 1)))) | l;
+	}
+
+	/**
+	 * First part of screening.
+	 * This method checks the conditions (4)-(6) (the one that applies).
+	 * @param state the state to be checked
+	 * @return <code> true </code> if the conditions hold
+	 */
+	public boolean checkStateConsistency(long state) {
+		int l = getStop(state);
+
+		if (l == 0) {
+			// if L=0 => k[j] = 3 for j = 1,...,N
+			return state == getStartState();
+		} else if (l >= 1 && l <= n) {
+			// if 0<L<N+1 => k[L] = 2
+			return getStatus(state, l) == 2;
+		} else if (l >= n + 1 && l <= 2 * n) {
+			// if N<L<2N+1 => k[L-N] = 1
+			return getStatus(state, l - n) == 1;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Second part of screening.
+	 * This method checks the conditions (7)-(8) (the one that applies).
+	 * @param state the state to be checked
+	 * @return <code> true </code> if the conditions hold
+	 */
+	public boolean checkVehicleCapacity(long state) {
+		return checkVehicleCapacity(getStop(state), getKsInState(state, 2));
+	}
+
+	/**
+	 * Second part of screening for a state with the given stop and number of customers with status 2.
+	 * @param l the stop
+	 * @param x2 the number of customers with status 2
+	 * @return <code> true </code> if the conditions (7)-(8) hold
+	 */
+	public boolean checkVehicleCapacity(int l, int x2) {
+		if (l >= 1 && l <= n) {
+			// if 0<L<N+1 => x2 < C+1
+			if (x2 > c) {
+				return false;
+			}
+		}
+
+		if (l >= n + 1 && l <= 2 * n) {
+			// if N<L<2N+1 => x2 < C
+			if (x2 > c - 1) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Third part of screening.
+	 * This method checks the conditions (9)-(10) (the one that applies).
+	 * @param state the state to be checked
+	 * @return <code> true </code> if the conditions hold
+	 */
+	public boolean checkMPS(long state) {
+		return checkMPS(getStop(state), getKsInState(state, 1), getKsInState(state, 2));
+	}
+
+	/**
+	 * Third part of screening for a state with the given stop and numbers of customers with status 1 and 2.
+	 * @param l the stop
+	 * @param x1 the number of customers with status 1
+	 * @param x2 the number of customers with status 2
+	 * @return <code> true </code> if the conditions (9)-(10) hold
+	 */
+	public boolean checkMPS(int l, int x1, int x2) {
+		if (l >= 1 && l <= n) {
+			// if 0<L<N+1 => |L-(x1+x2)| < MPS+1
+			if (Math.abs(l - (x1 + x2)) > mps) {
+				return false;
+			}
+		}
+
+		if (l >= n + 1 && l <= 2 * n) {
+			// if N<L<2N+1 => |(L-N)-x1| < MPS+1
+			if (Math.abs((l - n) - x1) > mps) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the number of ranks (1 + 2N*3^(N-1)).
+	 * @return the number of ranks
+	 * @throws IllegalStateException if there are too many customers to rank the states
+	 */
+	public int getRankCount() throws IllegalStateException {
+		checkRankable();
+
+		return n == 0 ? 1 : 1 + 2 * n * pow3[n - 1];
+	}
+
+	/**
+	 * Returns the base 3 index of the status vector of the given state:
+	 * the sum of (k[j]-1)*3^(j-1) for j = 1,...,N.
+	 * @param state the state
+	 * @return the index of the status vector
+	 */
+	public int getVectorIndex(long state) {
+		long k = state >>> L_BITS;
+		int index = 0;
+
+		// 4 customers per byte, starting with the highest byte
+		for (int shift = ((2 * n - 1) & ~7); shift >= 0; shift -= 8) {
+			index = index * 81 + BYTE_INDEX[(int) (k >>> shift) & 0xFF];
+		}
+
+		return index;
+	}
+
+	/**
+	 * Returns the index of the status vector of the given state at the given customer.
+	 * @param index the index of the status vector
+	 * @param j the customer (1,...,N)
+	 * @param status the new status of the customer
+	 * @return the new index
+	 */
+	public int withStatusIndex(int index, int j, int status) {
+		return index + (status - 1) * pow3[j - 1];
+	}
+
+	/**
+	 * Returns the index of the status vector after the status of the customer belonging to the given stop
+	 * was decreased by one (see {@link #getNextState(long, int)}).
+	 * @param index the index of the status vector
+	 * @param l the next stop
+	 * @return the index of the next status vector
+	 */
+	public int getNextVectorIndex(int index, int l) {
+		return index - pow3[(l <= n ? l : l - n) - 1];
+	}
+
+	/**
+	 * Returns the rank of the consistent state with the given stop and index of the status vector.
+	 * @param l the stop
+	 * @param index the index of the status vector
+	 * @return the rank
+	 */
+	public int getRank(int l, int index) {
+		if (l == 0) {
+			return 0;
+		}
+
+		// remove the fixed status of the customer belonging to L
+		int j = l <= n ? l : l - n;
+		int low = index % pow3[j - 1];
+		int high = index / pow3[j];
+
+		return 1 + (l - 1) * pow3[n - 1] + high * pow3[j - 1] + low;
+	}
+
+	/**
+	 * Returns the rank of the given consistent state.
+	 * @param state the state
+	 * @return the rank
+	 */
+	public int getRank(long state) {
+		return getRank(getStop(state), getVectorIndex(state));
+	}
+
+	/**
+	 * Returns all feasible next states of the given states (sorted and without duplicates).
+	 * Only next states that pass the screens 2 and 3 are returned (screen 1 holds for every next state).
+	 * @param level the states
+	 * @param check called regularly during the generation (e.g. to stop it by throwing an exception)
+	 * @return the next states
+	 */
+	public long[] getNextLevel(long[] level, Runnable check) {
+		long[] buffer = new long[Math.max(64, 2 * level.length)];
+		int size = 0;
+
+		for (int i = 0; i < level.length; i++) {
+			long state = level[i];
+
+			if ((i & 0xFF) == 0) {
+				check.run();
+			}
+
+			for (long nextStops = getNextStops(state); nextStops != 0; nextStops &= nextStops - 1) {
+				long nextState = getNextState(state, nextStop(nextStops));
+
+				if (!checkVehicleCapacity(nextState) || !checkMPS(nextState)) {
+					continue;
+				}
+
+				if (size == buffer.length) {
+					// remove the duplicates before the buffer grows
+					size = sortUnique(buffer, size);
+
+					if (size > buffer.length / 2) {
+						buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+					}
+				}
+
+				buffer[size++] = nextState;
+			}
+		}
+
+		return Arrays.copyOf(buffer, sortUnique(buffer, size));
+	}
+
+	/**
+	 * Sorts the beginning of the given array and removes all duplicates.
+	 * @param states the array
+	 * @param size the number of states at the beginning of the array
+	 * @return the number of unique states at the beginning of the array
+	 */
+	private static int sortUnique(long[] states, int size) {
+		Arrays.sort(states, 0, size);
+
+		int unique = 0;
+
+		for (int i = 0; i < size; i++) {
+			if (unique == 0 || states[i] != states[unique - 1]) {
+				states[unique++] = states[i];
+			}
+		}
+
+		return unique;
+	}
+
+	/**
+	 * Makes sure that all ranks fit into an int.
+	 * @throws IllegalStateException if there are too many customers to rank the states
+	 */
+	private void checkRankable() throws IllegalStateException {
+		if (n > MAX_RANKED_CUSTOMERS) {
+			throw new IllegalStateException("States with more than " + MAX_RANKED_CUSTOMERS + " customers can't be ranked");
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package darp.algorithm.optaplanner;
+
+import org.optaplanner.core.api.score.buildin.hardsoftdouble.HardSoftDoubleScore;
+import org.optaplanner.core.impl.score.director.incremental.IncrementalScoreCalculator;
+
+import darp.algorithm.CostMatrix;
+import darp.algorithm.RouteEvaluator;
+
+/**
+ * Calculates the score of a {@link DarpSolution} incrementally.
+ * The soft score is the cost and the hard score the violations of the route (see {@link RouteEvaluator}).
+ * <p>
+ * The values after each position of the route are cached. A move only changes the route
+ * after the earliest new previous standstill, so the route is only evaluated from there.
+ * @author Daniel Schröder
+ */
+public class DarpScoreCalculator implements IncrementalScoreCalculator<DarpSolution> {
+
+	private RouteEvaluator evaluator;
+	private CostMatrix costs;
+	private int n;
+
+	// indexed by the point
+	private int[] position, walked;
+
+	// indexed by the position in the route (the values after visiting the position)
+	private Standstill[] route;
+	private double[] cost;
+	private int[] violations, pickups, deliveries;
+
+	// the number of visits in the route
+	private int length;
+
+	// the first position that has to be evaluated again
+	private int dirty;
+
+	// counts the evaluations to detect which positions are up to date
+	private int walk;
+
+	@Override
+	public void resetWorkingSolution(DarpSolution workingSolution) {
+		evaluator = workingSolution.getEvaluator();
+		costs = evaluator.getCosts();
+		n = evaluator.getN();
+
+		position = new int[2 * n + 1];
+		walked = new int[2 * n + 1];
+		route = new Standstill[2 * n + 1];
+		cost = new double[2 * n + 1];
+		violations = new int[2 * n + 1];
+		pickups = new int[2 * n + 1];
+		deliveries = new int[2 * n + 1];
+
+		route[0] = workingSolution.getVehicle();
+		dirty = 1;
+	}
+
+	@Override
+	public void beforeEntityAdded(Object entity) {
+
+	}
+
+	@Override
+	public void afterEntityAdded(Object entity) {
+		dirty = 1;
+	}
+
+	@Override
+	public void beforeVariableChanged(Object entity, String variableName) {
+
+	}
+
+	@Override
+	public void afterVariableChanged(Object entity, String variableName) {
+		if (!(entity instanceof Visit) || !"previousStandstill".equals(variableName)) {
+			return;
+		}
+
+		Standstill previous = ((Visit) entity).getPreviousStandstill();
+
+		// the route before the earliest new previous standstill is unchanged,
+		// so the cached position of the earliest one is still valid
+		if (previous != null && position[previous.getPoint()] < dirty) {
+			dirty = position[previous.getPoint()] + 1;
+		}
+	}
+
+	@Override
+	public void beforeEntityRemoved(Object entity) {
+
+	}
+
+	@Override
+	public void afterEntityRemoved(Object entity) {
+		dirty = 1;
+	}
+
+	@Override
+	public HardSoftDoubleScore calculateScore() {
+		if (dirty <= 2 * n) {
+			evaluate(dirty);
+			dirty = 2 * n + 1;
+		}
+
+		return HardSoftDoubleScore.of(-violations[length], -cost[length]);
+	}
+
+	/**
+	 * Evaluates the route from the given position till the end.
+	 * @param from the first position
+	 */
+	private void evaluate(int from) {
+		walk++;
+
+		int p = from - 1;
+		Standstill previous = route[p];
+
+		for (Visit visit = previous.getNextVisit(); visit != null; visit = visit.getNextVisit()) {
+			int x2 = pickups[p] - deliveries[p];
+			int x3 = n - pickups[p];
+
+			// calculate value (14) of the leg
+			double value = cost[p] + costs.get(previous.getPoint(), visit.getPoint()) * evaluator.getPropFactor(x2, x3);
+			int violated = violations[p];
+			int pickedUp = pickups[p];
+			int delivered = deliveries[p];
+
+			int j = visit.getCustomer();
+
+			if (visit.isPickup()) {
+				pickedUp++;
+				violated += evaluator.getPickupViolations(j, pickedUp, delivered);
+			} else if (isPickedUp(j, from)) {
+				delivered++;
+				violated += evaluator.getDeliveryViolations(j, delivered);
+			} else {
+				// the customer is delivered before the pickup
+				violated++;
+			}
+
+			p++;
+			route[p] = visit;
+			position[visit.getPoint()] = p;
+			walked[visit.getPoint()] = walk;
+			cost[p] = value;
+			violations[p] = violated;
+			pickups[p] = pickedUp;
+			deliveries[p] = delivered;
+
+			previous = visit;
+		}
+
+		length = p;
+	}
+
+	/**
+	 * Checks if the pickup of a customer is already visited during the current evaluation.
+	 * @param j the customer
+	 * @param from the first position of the current evaluation
+	 * @return <code> true </code> if the customer was picked up
+	 */
+	private boolean isPickedUp(int j, int from) {
+		// the cached positions before the evaluation started are still valid
+		return walked[j] == walk || (position[j] < from && position[j] > 0);
+	}
+}
@@ -0,0 +1,116 @@
+package darp.algorithm.optaplanner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.optaplanner.core.api.domain.solution.PlanningEntityCollectionProperty;
+import org.optaplanner.core.api.domain.solution.PlanningScore;
+import org.optaplanner.core.api.domain.solution.PlanningSolution;
+import org.optaplanner.core.api.domain.solution.drools.ProblemFactCollectionProperty;
+import org.optaplanner.core.api.domain.valuerange.ValueRangeProvider;
+import org.optaplanner.core.api.score.buildin.hardsoftdouble.HardSoftDoubleScore;
+
+import darp.algorithm.RouteEvaluator;
+
+/**
+ * The single vehicle dial-a-ride problem as a planning problem.
+ * The visits form a chain that starts at the vehicle.
+ * @author Daniel Schröder
+ */
+@PlanningSolution
+public class DarpSolution {
+
+	// defined by the test
+	private RouteEvaluator evaluator;
+
+	@ProblemFactCollectionProperty
+	@ValueRangeProvider(id = "vehicleRange")
+	private List<Vehicle> vehicles;
+
+	@PlanningEntityCollectionProperty
+	@ValueRangeProvider(id = "visitRange")
+	private List<Visit> visits;
+
+	@PlanningScore
+	private HardSoftDoubleScore score;
+
+	/**
+	 * Creates an empty solution (needed for cloning).
+	 */
+	public DarpSolution() {
+
+	}
+
+	/**
+	 * Creates a new solution, which visits the customers one after the other (P1, D1, P2, D2, ...).
+	 * This route is always feasible.
+	 * @param evaluator the evaluator of the test
+	 */
+	public DarpSolution(RouteEvaluator evaluator) {
+		this(evaluator, evaluator.getSequentialRoute());
+	}
+
+	/**
+	 * Creates a new solution, which visits the points in the order of the given route.
+	 * @param evaluator the evaluator of the test
+	 * @param route the route (a permutation of all 2N+1 stops that starts with the vehicle)
+	 */
+	public DarpSolution(RouteEvaluator evaluator, int[] route) {
+		this.evaluator = evaluator;
+
+		int n = evaluator.getN();
+
+		Vehicle vehicle = new Vehicle();
+
+		vehicles = new ArrayList<>();
+		vehicles.add(vehicle);
+		visits = new ArrayList<>();
+
+		Standstill previous = vehicle;
+
+		for (int p = 1; p < route.length; p++) {
+			int l = route[p];
+			Visit visit = l <= n ? new Visit(l, l, true) : new Visit(l, l - n, false);
+
+			visit.setPreviousStandstill(previous);
+			previous.setNextVisit(visit);
+			visits.add(visit);
+			previous = visit;
+		}
+	}
+
+	/**
+	 * @return the evaluator of the test
+	 */
+	public RouteEvaluator getEvaluator() {
+		return evaluator;
+	}
+
+	/**
+	 * @return the vehicle
+	 */
+	public Vehicle getVehicle() {
+		return vehicles.get(0);
+	}
+
+	/**
+	 * @return the visits
+	 */
+	public List<Visit> getVisits() {
+		return visits;
+	}
+
+	/**
+	 * @return the score
+	 */
+	public HardSoftDoubleScore getScore() {
+		return score;
+	}
+
+	/**
+	 * @param score the score
+	 */
+	public void setScore(HardSoftDoubleScore score) {
+		this.score = score;
+	}
+}
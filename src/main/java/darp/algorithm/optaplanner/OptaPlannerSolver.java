@@ -0,0 +1,223 @@
+package darp.algorithm.optaplanner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+
+import org.optaplanner.core.api.score.buildin.hardsoftdouble.HardSoftDoubleScore;
+import org.optaplanner.core.api.solver.Solver;
+import org.optaplanner.core.api.solver.SolverFactory;
+import org.optaplanner.core.config.score.director.ScoreDirectorFactoryConfig;
+import org.optaplanner.core.config.solver.SolverConfig;
+import org.optaplanner.core.config.solver.termination.TerminationConfig;
+
+import darp.algorithm.CostMatrix;
+import darp.algorithm.DarpSolver;
+import darp.algorithm.IncumbentListener;
+import darp.algorithm.Insertion;
+import darp.algorithm.RouteEvaluator;
+import darp.jxmapviewer2.MyWaypoint;
+import darp.models.ParametersModel;
+import darp.models.RequestsModel;
+import darp.models.ResultModel;
+import darp.models.TestModel;
+import darp.utils.Router;
+
+/**
+ * A heuristic darp solver that uses OptaPlanner to search for a good route within a time limit.
+ * Unlike {@link darp.algorithm.Psaraftis} it can handle tests with many customers,
+ * but the route is not necessarily optimal.
+ * @author Daniel Schröder
+ */
+public class OptaPlannerSolver implements DarpSolver {
+
+	// used for routing between points
+	private Router router;
+
+	// the time (in millis) the solver searches for a route
+	private long timeLimit = 5000;
+
+	// used to cancel the calculation
+	private volatile boolean cancelled;
+	private volatile Solver<DarpSolution> solver;
+
+	// used to report better routes
+	private volatile IncumbentListener incumbentListener;
+
+	/**
+	 * Creates a new darp solver that cannot use routing.
+	 * (Mainly for testing purposes)
+	 */
+	public OptaPlannerSolver() {
+
+	}
+
+	/**
+	 * Creates a new darp solver.
+	 * @param router a Router to calculate paths between points
+	 * @throws NullPointerException if router is null
+	 */
+	public OptaPlannerSolver(Router router) throws NullPointerException {
+		this.router = Objects.requireNonNull(router);
+	}
+
+	/**
+	 * Sets the time the solver searches for a route.
+	 * @param timeLimit the time limit (in millis)
+	 * @throws IllegalArgumentException if timeLimit is less than 1
+	 */
+	public void setTimeLimit(long timeLimit) throws IllegalArgumentException {
+		if (timeLimit < 1) {
+			throw new IllegalArgumentException("The time limit must be at least 1 ms");
+		}
+
+		this.timeLimit = timeLimit;
+	}
+
+	/**
+	 * @return the time limit (in millis)
+	 */
+	public long getTimeLimit() {
+		return timeLimit;
+	}
+
+	@Override
+	public List<MyWaypoint> getOptRoute(TestModel test) throws NullPointerException, CancellationException {
+		if (test == null || test.getParametersModel() == null || test.getRequestsModel() == null || test.getResultModel() == null) {
+			throw new NullPointerException("Invalid TestModel");
+		}
+
+		try {
+			RequestsModel requests = test.getRequestsModel();
+			ParametersModel parameters = test.getParametersModel();
+
+			// the start position of the vehicle and the start and destination positions of the customers
+			List<MyWaypoint> points = new ArrayList<>();
+			points.addAll(requests.getStartWaypoints());
+			points.addAll(requests.getDestWaypoints());
+
+			int n = requests.getDestWaypoints().size();
+			boolean routing = parameters.isRouting() & (router != null);
+
+			long startTime = System.currentTimeMillis();
+			CostMatrix costs = routing ? new CostMatrix(points, router) : new CostMatrix(points);
+
+			RouteEvaluator evaluator = new RouteEvaluator(costs, parameters);
+			List<MyWaypoint> sequence;
+
+			// like Psaraftis, the route of a test without a feasible route only contains the start position
+			if (evaluator.hasFeasibleRoute()) {
+				// start with a feasible route of the insertion heuristic, so the best solution is feasible too
+				DarpSolution solution = new DarpSolution(evaluator, new Insertion(evaluator).construct(2));
+
+				if (n > 0) {
+					solution = solve(solution, points);
+				}
+
+				sequence = getSequence(solution, points);
+			} else {
+				sequence = new ArrayList<>(points.subList(0, 1));
+			}
+
+			if (cancelled || Thread.currentThread().isInterrupted()) {
+				throw new CancellationException("The calculation was cancelled");
+			}
+
+			long totalTime = System.currentTimeMillis() - startTime;
+
+			ResultModel result = test.getResultModel();
+
+			// set times
+			result.setTotalTime(totalTime);
+			result.setRoutingTime(costs.getRoutingTime());
+			result.setAlgoTime(totalTime - costs.getRoutingTime());
+
+			// the solver is stopped by its termination settings
+			result.setOptimal(false);
+
+			return sequence;
+		} finally {
+			cancelled = false;
+		}
+	}
+
+	/**
+	 * Searches for the best solution until the time limit is reached or the solver gets cancelled.
+	 * @param problem the solution to start with
+	 * @param points the points of the test
+	 * @return the best solution
+	 */
+	private DarpSolution solve(DarpSolution problem, List<MyWaypoint> points) {
+		ScoreDirectorFactoryConfig scoreConfig = new ScoreDirectorFactoryConfig();
+		scoreConfig.setIncrementalScoreCalculatorClass(DarpScoreCalculator.class);
+
+		TerminationConfig terminationConfig = new TerminationConfig();
+		terminationConfig.setMillisecondsSpentLimit(timeLimit);
+
+		SolverConfig config = new SolverConfig();
+		config.setSolutionClass(DarpSolution.class);
+		config.setEntityClassList(Arrays.asList(Standstill.class, Visit.class));
+		config.setScoreDirectorFactoryConfig(scoreConfig);
+		config.setTerminationConfig(terminationConfig);
+
+		solver = SolverFactory.<DarpSolution>create(config).buildSolver();
+
+		IncumbentListener listener = incumbentListener;
+
+		if (listener != null) {
+			// the best solution only gets infeasible if the initial one is
+			solver.addEventListener(event -> {
+				HardSoftDoubleScore score = event.getNewBestSolution().getScore();
+
+				if (score != null && score.isFeasible()) {
+					listener.incumbentChanged(getSequence(event.getNewBestSolution(), points), -score.getSoftScore());
+				}
+			});
+		}
+
+		try {
+			// the solver might have been cancelled before it was created
+			if (cancelled) {
+				return problem;
+			}
+
+			return solver.solve(problem);
+		} finally {
+			solver = null;
+		}
+	}
+
+	/**
+	 * @param solution a solution
+	 * @param points the points of the test
+	 * @return the sequence of waypoints of the solution
+	 */
+	private static List<MyWaypoint> getSequence(DarpSolution solution, List<MyWaypoint> points) {
+		List<MyWaypoint> sequence = new ArrayList<>();
+		sequence.add(points.get(0));
+
+		for (Visit visit = solution.getVehicle().getNextVisit(); visit != null; visit = visit.getNextVisit()) {
+			sequence.add(points.get(visit.getPoint()));
+		}
+
+		return sequence;
+	}
+
+	@Override
+	public void setIncumbentListener(IncumbentListener listener) {
+		incumbentListener = listener;
+	}
+
+	@Override
+	public void cancel() {
+		cancelled = true;
+
+		Solver<DarpSolution> current = solver;
+
+		if (current != null) {
+			current.terminateEarly();
+		}
+	}
+}
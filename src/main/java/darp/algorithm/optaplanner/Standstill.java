@@ -0,0 +1,29 @@
+package darp.algorithm.optaplanner;
+
+import org.optaplanner.core.api.domain.entity.PlanningEntity;
+import org.optaplanner.core.api.domain.variable.InverseRelationShadowVariable;
+
+/**
+ * A position of the vehicle in the route: either its start or a visit.
+ * @author Daniel Schröder
+ */
+@PlanningEntity
+public interface Standstill {
+
+	/**
+	 * @return the index of the point in the cost matrix
+	 */
+	public int getPoint();
+
+	/**
+	 * @return the visit after this one or null if this is the end of the route
+	 */
+	@InverseRelationShadowVariable(sourceVariableName = "previousStandstill")
+	public Visit getNextVisit();
+
+	/**
+	 * @param nextVisit the visit after this one
+	 */
+	public void setNextVisit(Visit nextVisit);
+
+}
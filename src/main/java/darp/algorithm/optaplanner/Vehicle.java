@@ -0,0 +1,28 @@
+package darp.algorithm.optaplanner;
+
+/**
+ * The vehicle, which is the anchor of the route.
+ * @author Daniel Schröder
+ */
+public class Vehicle implements Standstill {
+
+	private Visit nextVisit;
+
+	/**
+	 * The start position of the vehicle is always the first point.
+	 */
+	@Override
+	public int getPoint() {
+		return 0;
+	}
+
+	@Override
+	public Visit getNextVisit() {
+		return nextVisit;
+	}
+
+	@Override
+	public void setNextVisit(Visit nextVisit) {
+		this.nextVisit = nextVisit;
+	}
+}
@@ -0,0 +1,83 @@
+package darp.algorithm.optaplanner;
+
+import org.optaplanner.core.api.domain.entity.PlanningEntity;
+import org.optaplanner.core.api.domain.variable.PlanningVariable;
+import org.optaplanner.core.api.domain.variable.PlanningVariableGraphType;
+
+/**
+ * The pickup or the delivery of a customer.
+ * @author Daniel Schröder
+ */
+@PlanningEntity
+public class Visit implements Standstill {
+
+	private int point, customer;
+	private boolean pickup;
+
+	@PlanningVariable(valueRangeProviderRefs = { "vehicleRange", "visitRange" }, graphType = PlanningVariableGraphType.CHAINED)
+	private Standstill previousStandstill;
+
+	private Visit nextVisit;
+
+	/**
+	 * Creates an empty visit (needed for cloning).
+	 */
+	public Visit() {
+
+	}
+
+	/**
+	 * Creates a new visit.
+	 * @param point the index of the point in the cost matrix
+	 * @param customer the customer (1 to N)
+	 * @param pickup <code> true </code> for the pickup, <code> false </code> for the delivery
+	 */
+	public Visit(int point, int customer, boolean pickup) {
+		this.point = point;
+		this.customer = customer;
+		this.pickup = pickup;
+	}
+
+	@Override
+	public int getPoint() {
+		return point;
+	}
+
+	/**
+	 * @return the customer (1 to N)
+	 */
+	public int getCustomer() {
+		return customer;
+	}
+
+	/**
+	 * @return <code> true </code> for the pickup, <code> false </code> for the delivery
+	 */
+	public boolean isPickup() {
+		return pickup;
+	}
+
+	/**
+	 * @return the standstill before this visit
+	 */
+	public Standstill getPreviousStandstill() {
+		return previousStandstill;
+	}
+
+	/**
+	 * @param previousStandstill the standstill before this visit
+	 */
+	public void setPreviousStandstill(Standstill previousStandstill) {
+		this.previousStandstill = previousStandstill;
+	}
+
+	@Override
+	public Visit getNextVisit() {
+		return nextVisit;
+	}
+
+	@Override
+	public void setNextVisit(Visit nextVisit) {
+		this.nextVisit = nextVisit;
+	}
+}
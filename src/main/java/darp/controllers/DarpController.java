@@ -2,10 +2,13 @@ package darp.controllers;
 
 import java.awt.Component;
 import java.awt.Container;
+import java.awt.EventQueue;
 import java.awt.event.ActionEvent;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -21,6 +24,8 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.AbstractAction;
 import javax.swing.ActionMap;
@@ -29,6 +34,7 @@ import javax.swing.JComponent;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.KeyStroke;
+import javax.swing.Timer;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import org.jxmapviewer.JXMapViewer;
@@ -40,10 +46,9 @@ import org.jxmapviewer.viewer.DefaultTileFactory;
 import org.jxmapviewer.viewer.GeoPosition;
 import org.jxmapviewer.viewer.TileFactoryInfo;
 
-import com.graphhopper.GHResponse;
-
 import darp.algorithm.DarpSolver;
-import darp.algorithm.Psaraftis;
+import darp.algorithm.PortfolioSolver;
+import darp.algorithm.Progress;
 import darp.jxmapviewer2.FancyWaypointRenderer;
 import darp.jxmapviewer2.JXMapViewerBounded;
 import darp.jxmapviewer2.MouseInputListener;
@@ -58,6 +63,7 @@ import darp.models.TestModel;
 import darp.utils.Log;
 import darp.utils.RouteSegment;
 import darp.utils.Router;
+import darp.utils.RoutingSession;
 import darp.utils.Utilities;
 import darp.views.DarpView;
 
@@ -74,6 +80,15 @@ public class DarpController {
 	private DarpSolver darpSolver;
 	private Thread darpThread;
 
+	// the better routes of the test being solved are shown at most once per interval
+	private Timer previewTimer;
+	private final AtomicReference<List<MyWaypoint>> preview = new AtomicReference<>();
+	private volatile int solvingIndex = -1;
+	private volatile List<MyWaypoint> incumbent;
+
+	// the time the first route of the test being solved was reported (the solvers only report routes after the routing)
+	private volatile long incumbentTime;
+
 	private ParametersController parametersController;
 	private ResultController resultController;
 	private TestManagerController testManagerController;
@@ -89,6 +104,10 @@ public class DarpController {
 	private Set<TestModel> invalidResults;
 
 	private final String CACHE_PATH = "src/main/resources/.jxmapviewer2";
+	private final int PREVIEW_INTERVAL = 250;
+
+	// the maximum time (in millis) to wait for the calculation to stop when the program is closed
+	private final int CLOSE_TIMEOUT = 1000;
 
 	private enum Visibility {
 		FULL, RESULT_ONLY, NONE;
@@ -125,6 +144,7 @@ public class DarpController {
 		setupMapViewer();
 		setupController();
 		setupStartButton();
+		setupCloseOperation();
 	}
 
 	/**
@@ -222,8 +242,9 @@ public class DarpController {
 	 */
 	private void createDarpSolver() {
 		router = new Router(model.getGHPath());
-		darpSolver = new Psaraftis(router);
+		darpSolver = new PortfolioSolver(router);
 		darpThread = new Thread();
+		previewTimer = new Timer(PREVIEW_INTERVAL, e -> showPreview());
 	}
 
 	/**
@@ -314,6 +335,33 @@ public class DarpController {
 		view.getBtnStart().addActionListener(e -> startDarpThread());
 	}
 
+	/**
+	 * Add the close operation for the view.
+	 * The calculation is stopped and the router is closed before the program exits.
+	 */
+	private void setupCloseOperation() {
+		view.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosing(WindowEvent windowEvent) {
+				if (darpThread.isAlive()) {
+					darpThread.interrupt();
+					darpSolver.cancel();
+
+					try {
+						darpThread.join(CLOSE_TIMEOUT);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+
+				// the router must not be closed while it's used
+				if (!darpThread.isAlive()) {
+					router.close();
+				}
+			}
+		});
+	}
+
 	/**
 	 * Starts a new thread to solve the darp for the current tests.
 	 * If a thread has already started, it will be interrupted instead.
@@ -321,10 +369,14 @@ public class DarpController {
 	private void startDarpThread() {
 		if (darpThread.isAlive()) {
 			darpThread.interrupt();
+			darpSolver.cancel();
 			view.getBtnStart().setText("Stoppe...");
 			return;
 		}
 
+		// a stop that arrived after the last test of the previous run would cancel the first test of this one
+		darpSolver = new PortfolioSolver(router);
+
 		darpThread = new Thread(() -> startDarpSolver());
 		darpThread.start();
 	}
@@ -339,22 +391,74 @@ public class DarpController {
 		List<TestModel> tests = testManagerController.getTests();
 		List<MyWaypoint> sequence;
 
-		// map for the optimal routes of all tests
+		// map for the best routes of all tests
 		Map<TestModel, List<RouteSegment>> results = new HashMap<>();
 
 		// contains all errors of all tests
 		String report = "";
 		String errors;
 
-		// calculate the optimal route for each test and save it in result
+		previewTimer.start();
+
+		// calculate the best route for each test and save it in result
 		for (int i = 0; i < tests.size(); i++) {
 			// inform the user which test is being worked on
 			view.getBtnStart().setText("Stopp (" + i + "/" + tests.size() + ")");
 
+			// show the progress of the current test on the start button
+			int index = i;
+			darpSolver.setProgressListener(progress -> EventQueue.invokeLater(() -> showProgress(index, tests.size(), progress)));
+
+			// show the better routes of the current test while it is calculated
+			solvingIndex = i;
+			incumbent = null;
+			darpSolver.setIncumbentListener((route, cost) -> {
+				if (incumbent == null) {
+					incumbentTime = System.currentTimeMillis();
+				}
+
+				incumbent = route;
+
+				if (index == testManagerController.getIndexOfCurrent()) {
+					preview.set(route);
+				}
+			});
+
 			test = tests.get(i);
+			boolean stopped = false;
+
+			// points without a road nearby can't be routed, so the test isn't solved
+			errors = getUnroutableErrors(test);
+
+			if (!errors.isEmpty()) {
+				report += test.getRequestsModel().getTestName() + ":\n" + errors + "\n";
+				continue;
+			}
+
+			// calculate the best route and save it in result
+			// (the result tells whether the route is optimal or the time limit of the test was reached)
+			long startTime = System.currentTimeMillis();
+
+			try {
+				sequence = darpSolver.getOptRoute(test);
+			} catch (CancellationException e) {
+				// the user clicked stop while the test was calculated
+				// the best route found so far is kept (if the solver reported one)
+				sequence = incumbent;
+				stopped = true;
+
+				if (sequence == null) {
+					break;
+				}
+
+				// the solver didn't set the times, so they are measured up to the stop
+				ResultModel result = test.getResultModel();
+				result.setTotalTime(System.currentTimeMillis() - startTime);
+				result.setRoutingTime(incumbentTime - startTime);
+				result.setAlgoTime(result.getTotalTime() - result.getRoutingTime());
+				result.setOptimal(false);
+			}
 
-			// calculate the optimal route and save it in result
-			sequence = darpSolver.getOptRoute(test);
 			errors = constructRoute(test, sequence, results);
 
 			// add the test errors if there were any
@@ -368,11 +472,17 @@ public class DarpController {
 			}
 
 			// stop the calculations if the user clicked stop
-			if (darpThread.isInterrupted()) {
+			if (stopped || darpThread.isInterrupted()) {
 				break;
 			}
 		}
 
+		// the results replace the preview
+		darpSolver.setIncumbentListener(null);
+		solvingIndex = -1;
+		incumbent = null;
+		preview.set(null);
+
 		// set results
 		for (Entry<TestModel, List<RouteSegment>> entry : results.entrySet()) {
 			test = entry.getKey();
@@ -399,8 +509,15 @@ public class DarpController {
 		// all results are valid again
 		invalidResults.clear();
 
+		darpSolver.setProgressListener(null);
+
 		// update view
-		view.getBtnStart().setText("Start");
+		// (after the progress updates that are still queued)
+		EventQueue.invokeLater(() -> {
+			previewTimer.stop();
+			view.getBtnStart().setText("Start");
+			view.getBtnStart().setToolTipText(null);
+		});
 		updateView();
 
 		// show errors if there were any
@@ -410,9 +527,93 @@ public class DarpController {
 		}
 	}
 
+	/**
+	 * Shows the latest better route of the test being solved, if it is the current test.
+	 * The stops are connected by straight lines, the final route follows the roads.
+	 * This is called on the event dispatch thread by the preview timer.
+	 */
+	private void showPreview() {
+		List<MyWaypoint> sequence = preview.getAndSet(null);
+
+		if (sequence == null || solvingIndex != testManagerController.getIndexOfCurrent()) {
+			return;
+		}
+
+		List<RouteSegment> route = new ArrayList<>();
+
+		for (int i = 1; i < sequence.size(); i++) {
+			route.add(new RouteSegment(Arrays.asList(sequence.get(i - 1).getPosition(), sequence.get(i).getPosition()), sequence.get(i).getColor()));
+		}
+
+		routePainter.setRoute(route);
+		routePainter.stopAt(route.size());
+		updateView();
+	}
+
+	/**
+	 * Shows the progress of the current test on the start button.
+	 * This should be called on the event dispatch thread.
+	 * @param index the index of the current test
+	 * @param count the number of tests
+	 * @param progress the progress of the current test
+	 */
+	private void showProgress(int index, int count, Progress progress) {
+		// the user clicked stop or the calculations are finished
+		if (!darpThread.isAlive() || darpThread.isInterrupted()) {
+			return;
+		}
+
+		view.getBtnStart().setText("Stopp (" + index + "/" + count + ") " + Math.round(progress.getFraction() * 100) + "%");
+
+		String phase;
+
+		switch (progress.getPhase()) {
+		case COST_MATRIX:
+			phase = "Fahrzeiten";
+			break;
+		case GENERATION:
+			phase = "Erzeugung";
+			break;
+		case RECURSION:
+			phase = "Optimierung";
+			break;
+		default:
+			phase = "Identifikation";
+			break;
+		}
+
+		long remaining = progress.getEstimatedRemainingTime();
+
+		view.getBtnStart().setToolTipText(phase + ": " + progress.getProcessed() + "/" + progress.getTotal() + ", zulässig: " + progress.getFeasible()
+				+ ", Restzeit: " + (remaining < 0 ? "?" : (remaining / 1000) + " s"));
+	}
+
+	/**
+	 * Returns the points of the given test that can't be snapped to a road, if routing is enabled.
+	 * @param test the test
+	 * @return the errors for the points (empty if all points can be routed)
+	 */
+	private String getUnroutableErrors(TestModel test) {
+		if (!test.getParametersModel().isRouting()) {
+			return "";
+		}
+
+		List<MyWaypoint> points = new ArrayList<>();
+		points.addAll(test.getRequestsModel().getStartWaypoints());
+		points.addAll(test.getRequestsModel().getDestWaypoints());
+
+		String errors = "";
+
+		for (MyWaypoint point : router.getSession(points).getUnroutable()) {
+			errors += "Keine Straße in der Nähe von " + point.getLabel() + "\n";
+		}
+
+		return errors;
+	}
+
 	/**
 	 * Constructs the route for the given test based on the given sequence of waypoints.
-	 * If routing is enabled, the actual path between the points is calculated.
+	 * If routing is enabled, the actual path between the points is used (see {@link RoutingSession#getPath(MyWaypoint, MyWaypoint)}).
 	 * Otherwise the points are connected by straight lines.
 	 * @param test the test
 	 * @param sequence the sequence of waypoints
@@ -429,21 +630,24 @@ public class DarpController {
 		// routing errors
 		String errors = "";
 
+		// the session of the test already contains the paths found while solving it
+		RoutingSession session = routing ? router.getSession(sequence) : null;
+
 		for (int i = 1; i < sequence.size(); i++) {
 			positions = new ArrayList<>();
 
 			if (routing) {
-				// calculate path
-				GHResponse response = router.getRoute(sequence.get(i - 1), sequence.get(i));
+				// get path
+				List<GeoPosition> path = session.getPath(sequence.get(i - 1), sequence.get(i));
 
 				// add routing errors if there were any
-				if (response.hasErrors()) {
-					errors += response.getErrors() + "\n";
+				if (path == null) {
+					errors += "Keine Route von " + sequence.get(i - 1).getLabel() + " nach " + sequence.get(i).getLabel() + " gefunden\n";
 					continue;
 				}
 
 				// add path to list
-				positions = Utilities.pointListToGeoList(response.getBest().getPoints());
+				positions = path;
 			} else {
 				// add points to list
 				positions.add(sequence.get(i - 1).getPosition());
@@ -42,6 +42,7 @@ public class ParametersController {
 		view.getNumCapacity().addChangeListener(() -> darpController.clearResult());
 		view.getNumMPS().addChangeListener(() -> darpController.clearResult());
 		view.getNumTimePref().addChangeListener(() -> darpController.clearResult());
+		view.getNumTimeLimit().addChangeListener(() -> darpController.clearResult());
 	}
 
 	/**
@@ -79,6 +80,7 @@ public class ParametersController {
 		parameters.setCapacity(view.getNumCapacity().getIntValue());
 		parameters.setMPS(view.getNumMPS().getIntValue());
 		parameters.setTimePref(view.getNumTimePref().getDoubleValue());
+		parameters.setTimeLimit(view.getNumTimeLimit().getLongValue());
 		parameters.setWeight(view.getSliderWeights().getValue());
 		parameters.setRouting(view.getCbRouting().isSelected());
 
@@ -97,6 +99,7 @@ public class ParametersController {
 		view.getNumCapacity().setIntValue(parameters.getCapacity());
 		view.getNumMPS().setIntValue(parameters.getMPS());
 		view.getNumTimePref().setDoubleValue(parameters.getTimePref());
+		view.getNumTimeLimit().setLongValue(parameters.getTimeLimit());
 		view.getSliderWeights().setValue(parameters.getWeight());
 		view.getCbRouting().setSelected(parameters.isRouting());
 	}
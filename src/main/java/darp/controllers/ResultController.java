@@ -19,6 +19,7 @@ public class ResultController {
 
 	private List<RouteSegment> route;
 	private int frame;
+	private boolean optimal;
 
 	/**
 	 * Creates new controller for a given ResultView.
@@ -113,6 +114,7 @@ public class ResultController {
 		result.setRoutingTime(view.getNumRouting().getLongValue());
 		result.setAlgoTime(view.getNumAlgo().getLongValue());
 		result.setFrame(frame);
+		result.setOptimal(optimal);
 
 		return result;
 	}
@@ -134,7 +136,7 @@ public class ResultController {
 	}
 
 	/**
-	 * @param result the ResultModel that contains the times that should be set by the view
+	 * @param result the ResultModel that contains the times and the optimality that should be set by the view
 	 * @throws NullPointerException if result is null
 	 */
 	public void setTimes(ResultModel result) throws NullPointerException {
@@ -145,5 +147,9 @@ public class ResultController {
 		view.getNumAlgo().setLongValue(result.getAlgoTime());
 		view.getNumRouting().setLongValue(result.getRoutingTime());
 		view.getNumTotal().setLongValue(result.getTotalTime());
+
+		// a result without a calculation is neither optimal nor not
+		optimal = result.isOptimal();
+		view.getTxtOptimal().setText(result.getTotalTime() == 0 && !optimal ? "-" : optimal ? "ja" : "nein");
 	}
 }
\ No newline at end of file
@@ -11,6 +11,7 @@ public class ParametersModel implements Serializable {
 	private static final long serialVersionUID = -7613421855696447925L;
 
 	private int capacity, mps, weight;
+	private long timeLimit;
 	private double timePref;
 	private boolean routing;
 
@@ -23,6 +24,7 @@ public class ParametersModel implements Serializable {
 		weight = 50;
 		timePref = 1;
 		routing = false;
+		timeLimit = 10;
 	}
 
 	/**
@@ -94,4 +96,18 @@ public class ParametersModel implements Serializable {
 	public void setRouting(boolean routing) {
 		this.routing = routing;
 	}
+
+	/**
+	 * @return the time limit of the calculation (in seconds), 0 if there is none
+	 */
+	public long getTimeLimit() {
+		return timeLimit;
+	}
+
+	/**
+	 * @param timeLimit the new time limit of the calculation (in seconds), 0 if there should be none
+	 */
+	public void setTimeLimit(long timeLimit) {
+		this.timeLimit = timeLimit;
+	}
 }
\ No newline at end of file
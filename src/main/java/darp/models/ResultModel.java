@@ -17,6 +17,7 @@ public class ResultModel implements Serializable {
 	private List<RouteSegment> route;
 	private long totalTime, routingTime, algoTime;
 	private int frame;
+	private boolean optimal;
 
 	/**
 	 * Creates a default result.
@@ -27,6 +28,7 @@ public class ResultModel implements Serializable {
 		routingTime = 0;
 		algoTime = 0;
 		frame = 0;
+		optimal = false;
 	}
 
 	/**
@@ -98,4 +100,18 @@ public class ResultModel implements Serializable {
 	public void setFrame(int frame) {
 		this.frame = frame;
 	}
+
+	/**
+	 * @return <code> true </code> if the route is known to be optimal
+	 */
+	public boolean isOptimal() {
+		return optimal;
+	}
+
+	/**
+	 * @param optimal <code> true </code> if the route is known to be optimal
+	 */
+	public void setOptimal(boolean optimal) {
+		this.optimal = optimal;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,233 @@
+package darp.utils;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+/**
+ * Calculates the fastest travel times from one node of a graph to many others with a single Dijkstra search,
+ * which stops as soon as all target nodes are settled.
+ * <p>
+ * The travel times are calculated like GraphHopper does for a route with the "fastest" weighting:
+ * the time of an edge is its distance divided by the speed of the vehicle on it (in whole millis).
+ * The arrays of the search are allocated once and reused for all searches on the same graph.
+ * @author Daniel Schröder
+ */
+final class OneToManyDijkstra {
+
+	// the initial capacity of the heap
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final FlagEncoder encoder;
+	private final EdgeExplorer explorer;
+
+	// indexed by the node (only valid if the node was reached by the current search)
+	private final double[] weights;
+	private final long[] times;
+	private final int[] reached, targets;
+
+	// the last edge of the fastest known path to a node and the node before it
+	private final int[] parentEdges, parentNodes;
+
+	// counts the searches to detect which nodes are reached by the current one
+	private int search;
+
+	// binary heap of the reached nodes ordered by their weight (entries may be outdated)
+	private int[] heap = new int[INITIAL_CAPACITY];
+	private double[] heapWeights = new double[INITIAL_CAPACITY];
+	private int heapSize;
+
+	// statistics
+	private long settledNodes;
+
+	/**
+	 * Creates a new search on a graph.
+	 * @param graph the graph
+	 * @param encoder the encoder of the vehicle
+	 * @throws NullPointerException if null is passed
+	 */
+	OneToManyDijkstra(Graph graph, FlagEncoder encoder) throws NullPointerException {
+		this.encoder = Objects.requireNonNull(encoder);
+
+		// only the edges the vehicle can use in their direction
+		explorer = Objects.requireNonNull(graph).createEdgeExplorer(new DefaultEdgeFilter(encoder, false, true));
+
+		int nodes = graph.getNodes();
+		weights = new double[nodes];
+		times = new long[nodes];
+		reached = new int[nodes];
+		targets = new int[nodes];
+		parentEdges = new int[nodes];
+		parentNodes = new int[nodes];
+	}
+
+	/**
+	 * Returns the travel times from a node to the given target nodes.
+	 * @param from the start node
+	 * @param to the target nodes
+	 * @return the travel times (in millis) or {@link Double#MAX_VALUE} if a target can't be reached
+	 * @throws NullPointerException if to is null
+	 */
+	double[] getTimes(int from, int[] to) throws NullPointerException {
+		search++;
+
+		// the number of different target nodes that are not settled yet
+		int remaining = 0;
+
+		for (int node : Objects.requireNonNull(to)) {
+			if (targets[node] != search) {
+				targets[node] = search;
+				remaining++;
+			}
+		}
+
+		heapSize = 0;
+		reach(from, 0, 0, -1, -1);
+
+		while (heapSize > 0 && remaining > 0) {
+			double weight = heapWeights[0];
+			int node = pop();
+
+			// the node was reached more cheaply
+			if (weight > weights[node]) {
+				continue;
+			}
+
+			settledNodes++;
+
+			if (targets[node] == search) {
+				// the node is settled only once, as later entries have a higher weight
+				targets[node] = 0;
+				remaining--;
+			}
+
+			EdgeIterator edge = explorer.setBaseNode(node);
+
+			while (edge.next()) {
+				double speed = encoder.getSpeed(edge.getFlags());
+
+				if (speed <= 0) {
+					continue;
+				}
+
+				// the time of the edge in millis (km/h -> m/ms)
+				double edgeTime = edge.getDistance() * 3600 / speed;
+				int adjNode = edge.getAdjNode();
+
+				if (reached[adjNode] != search || weight + edgeTime < weights[adjNode]) {
+					reach(adjNode, weight + edgeTime, times[node] + (long) edgeTime, edge.getEdge(), node);
+				}
+			}
+		}
+
+		double[] result = new double[to.length];
+
+		for (int i = 0; i < to.length; i++) {
+			result[i] = reached[to[i]] == search ? times[to[i]] : Double.MAX_VALUE;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Reaches a node with a lower weight than before and adds it to the heap.
+	 * @param node the node
+	 * @param weight the exact travel time of the fastest known path
+	 * @param time the travel time of the path in whole millis per edge
+	 * @param edge the last edge of the path (-1 for the start node)
+	 * @param parent the node before the last edge
+	 */
+	private void reach(int node, double weight, long time, int edge, int parent) {
+		reached[node] = search;
+		weights[node] = weight;
+		times[node] = time;
+		parentEdges[node] = edge;
+		parentNodes[node] = parent;
+
+		if (heapSize == heap.length) {
+			heap = Arrays.copyOf(heap, 2 * heap.length);
+			heapWeights = Arrays.copyOf(heapWeights, 2 * heapWeights.length);
+		}
+
+		int i = heapSize++;
+
+		while (i > 0 && heapWeights[(i - 1) / 2] > weight) {
+			heap[i] = heap[(i - 1) / 2];
+			heapWeights[i] = heapWeights[(i - 1) / 2];
+			i = (i - 1) / 2;
+		}
+
+		heap[i] = node;
+		heapWeights[i] = weight;
+	}
+
+	/**
+	 * Returns the fastest path of the last search to one of its target nodes.
+	 * @param to the target node
+	 * @return the edges of the path, each followed by its adjacent node (edge, node, edge, node, ...), or null if the node wasn't reached
+	 */
+	int[] getPath(int to) {
+		if (reached[to] != search) {
+			return null;
+		}
+
+		int edges = 0;
+
+		for (int node = to; parentEdges[node] != -1; node = parentNodes[node]) {
+			edges++;
+		}
+
+		int[] path = new int[2 * edges];
+
+		for (int node = to, i = path.length; parentEdges[node] != -1; node = parentNodes[node]) {
+			path[--i] = node;
+			path[--i] = parentEdges[node];
+		}
+
+		return path;
+	}
+
+	/**
+	 * Removes the node with the smallest weight from the heap.
+	 * @return the node
+	 */
+	private int pop() {
+		int top = heap[0];
+		int last = heap[--heapSize];
+		double lastWeight = heapWeights[heapSize];
+		int i = 0;
+
+		while (2 * i + 1 < heapSize) {
+			int child = 2 * i + 1;
+
+			if (child + 1 < heapSize && heapWeights[child + 1] < heapWeights[child]) {
+				child++;
+			}
+
+			if (heapWeights[child] >= lastWeight) {
+				break;
+			}
+
+			heap[i] = heap[child];
+			heapWeights[i] = heapWeights[child];
+			i = child;
+		}
+
+		heap[i] = last;
+		heapWeights[i] = lastWeight;
+
+		return top;
+	}
+
+	/**
+	 * @return the number of nodes settled by all searches so far
+	 */
+	long getSettledNodes() {
+		return settledNodes;
+	}
+}
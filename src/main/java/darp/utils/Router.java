@@ -1,25 +1,66 @@
 package darp.utils;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 
 import org.jxmapviewer.viewer.GeoPosition;
 
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.QueryResult;
 
 import darp.jxmapviewer2.MyWaypoint;
 
 /**
  * Easy to use access point for (offline) car routing.
+ * The travel times are stored in a persistent cache (see {@link TravelTimeCache}) in the GraphHopper folder,
+ * so the same test only needs to be routed once, even after a restart.
+ * <p>
+ * A router can be used by several threads at the same time: the graph of GraphHopper is read-only after it is loaded
+ * and all objects of a query are created for that query. Batch queries (see {@link #getTimes(List)}) are executed
+ * by a bounded pool of daemon threads, one per processor.
+ * <p>
+ * A router should be closed (see {@link #close()}) when it's not needed anymore, which stops its threads and closes its files.
  * @author Daniel Schröder
  */
-public class Router {
+public class Router implements Closeable {
 
 	private GraphHopper graphHopper;
 	private final String LOCATION_PATH = "src/main/resources/gh-car";
 
+	// the file of the travel time cache (in the GraphHopper folder) and the number of travel times kept in memory
+	private static final String CACHE_FILE = "travel-times.cache";
+	private static final int CACHE_CAPACITY = 1_000_000;
+
+	// the road network and its index, which is used to snap positions to it (the cache is keyed by the snapped positions)
+	private Graph graph;
+	private LocationIndex locationIndex;
+	private FlagEncoder encoder;
+	private EdgeFilter edgeFilter;
+
+	// the travel time cache (null if it can't be used)
+	private TravelTimeCache cache;
+
+	// the session of the last test (see getSession)
+	private RoutingSession session;
+
+	// executes the searches of batch queries
+	private final ExecutorService executor;
+
 	/**
 	 * Creates and initializes a GraphHopper instance for (offline) car routing.
 	 * @param path the GraphHopper folder
@@ -41,6 +82,73 @@ public class Router {
 		graphHopper.forServer();
 		// this can take minutes if it imports or a few seconds for loading
 		graphHopper.importOrLoad();
+
+		graph = graphHopper.getGraphHopperStorage();
+		locationIndex = graphHopper.getLocationIndex();
+		encoder = graphHopper.getEncodingManager().getEncoder("car");
+		edgeFilter = new DefaultEdgeFilter(encoder);
+
+		// the cached travel times are only valid for the same map data
+		File osmFile = new File(path);
+		String source = "car,fastest," + osmFile.getAbsolutePath() + "," + osmFile.length() + "," + osmFile.lastModified();
+
+		try {
+			cache = new TravelTimeCache(new File(LOCATION_PATH, CACHE_FILE), source, CACHE_CAPACITY);
+		} catch (IOException e) {
+			Log.getLogger().log(Level.WARNING, "The travel time cache can't be used", e);
+		}
+
+		executor = createExecutor();
+	}
+
+	/**
+	 * Creates a router for a given road network without GraphHopper and without a cache.
+	 * Only the sessions can be used (see {@link #getSession(List)}), as the other queries need GraphHopper.
+	 * (Mainly for testing purposes)
+	 * @param graph the road network
+	 * @param locationIndex the index of the road network
+	 * @param encoder the encoder of the car
+	 * @throws NullPointerException if null is passed
+	 */
+	Router(Graph graph, LocationIndex locationIndex, FlagEncoder encoder) throws NullPointerException {
+		this.graph = Objects.requireNonNull(graph);
+		this.locationIndex = Objects.requireNonNull(locationIndex);
+		this.encoder = Objects.requireNonNull(encoder);
+		edgeFilter = new DefaultEdgeFilter(encoder);
+
+		executor = createExecutor();
+	}
+
+	/**
+	 * Creates the pool of daemon threads (one per processor) for the searches of batch queries.
+	 * @return the executor
+	 */
+	private static ExecutorService createExecutor() {
+		// the threads must not keep the program alive
+		AtomicInteger threads = new AtomicInteger();
+
+		return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+			Thread thread = new Thread(runnable, "Router-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Stops the threads of the router and closes the travel time cache and GraphHopper.
+	 * This should only be called when no query is running, the router must not be used anymore afterwards.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+
+		if (cache != null) {
+			cache.close();
+		}
+
+		if (graphHopper != null) {
+			graphHopper.close();
+		}
 	}
 
 	/**
@@ -53,8 +161,99 @@ public class Router {
 	 * @throws NullPointerException if null gets passed
 	 */
 	public double getTime(MyWaypoint start, MyWaypoint dest) throws NullPointerException {
+		QueryResult from = snap(Objects.requireNonNull(start).getPosition());
+		QueryResult to = snap(Objects.requireNonNull(dest).getPosition());
+
+		// positions that can't be snapped are not cached (the routing reports the error)
+		boolean cached = cache != null && from.isValid() && to.isValid();
+
+		if (cached) {
+			double time = cache.get(from.getSnappedPoint().getLat(), from.getSnappedPoint().getLon(), to.getSnappedPoint().getLat(),
+					to.getSnappedPoint().getLon());
+
+			if (!Double.isNaN(time)) {
+				return time;
+			}
+		}
+
 		GHResponse route = getRoute(start, dest, false);
-		return route.hasErrors() ? Double.MAX_VALUE : route.getBest().getTime();
+		double time = route.hasErrors() ? Double.MAX_VALUE : route.getBest().getTime();
+
+		if (cached) {
+			cache.put(from.getSnappedPoint().getLat(), from.getSnappedPoint().getLon(), to.getSnappedPoint().getLat(),
+					to.getSnappedPoint().getLon(), time);
+		}
+
+		return time;
+	}
+
+	/**
+	 * Returns the travel times (in millis) between all given waypoints with the car.
+	 * Unlike calling {@link #getTime(MyWaypoint, MyWaypoint)} for each pair, each waypoint is snapped only once
+	 * and the road network is searched only once for each start waypoint, which finds the travel times to all other waypoints
+	 * (see {@link RoutingSession}).
+	 * @param points the waypoints
+	 * @return the travel times (the time from points[i] to points[j] at [i][j]) or {@link Double#MAX_VALUE} if there is no route
+	 * @throws NullPointerException if null gets passed
+	 */
+	public double[][] getTimes(List<MyWaypoint> points) throws NullPointerException {
+		return getSession(points).getTimes(points);
+	}
+
+	/**
+	 * Returns a routing session containing the given waypoints.
+	 * The session of the last call is reused if it contains the positions of all waypoints,
+	 * so the waypoints of a test are only snapped once, no matter how often the test is routed.
+	 * @param points the waypoints
+	 * @return the session
+	 * @throws NullPointerException if null gets passed
+	 */
+	public synchronized RoutingSession getSession(List<MyWaypoint> points) throws NullPointerException {
+		Objects.requireNonNull(points);
+
+		if (session == null || !session.contains(points)) {
+			session = new RoutingSession(this, points);
+		}
+
+		return session;
+	}
+
+	/**
+	 * Returns the closest position on a road the car can use.
+	 * GraphHopper starts and ends the routes at these positions, so positions with the same snapped position have the same travel times.
+	 * @param position the position
+	 * @return the result of the snapping (invalid if no road is close enough)
+	 */
+	QueryResult snap(GeoPosition position) {
+		return locationIndex.findClosest(position.getLatitude(), position.getLongitude(), edgeFilter);
+	}
+
+	/**
+	 * @return the road network
+	 */
+	Graph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * @return the encoder of the car
+	 */
+	FlagEncoder getEncoder() {
+		return encoder;
+	}
+
+	/**
+	 * @return the executor for the searches of batch queries
+	 */
+	ExecutorService getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * @return the travel time cache or null if it can't be used
+	 */
+	TravelTimeCache getCache() {
+		return cache;
 	}
 
 	/**
@@ -0,0 +1,407 @@
+package darp.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jxmapviewer.viewer.GeoPosition;
+
+import com.graphhopper.routing.QueryGraph;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.EdgeIteratorState;
+
+import darp.jxmapviewer2.MyWaypoint;
+
+/**
+ * The routing between the waypoints of one test.
+ * Each waypoint is snapped to the road network only once, when the session is created (see {@link Router#getSession(List)}).
+ * The snapped positions are inserted into the graph as virtual nodes, which are used for all later queries.
+ * Waypoints that are too far away from any road are known before any travel time is calculated (see {@link #getUnroutable()}).
+ * <p>
+ * The travel times are calculated for all destinations of a start waypoint at once (see {@link OneToManyDijkstra})
+ * and are kept for the lifetime of the session. All methods are thread-safe: the travel times from several start waypoints
+ * are calculated in parallel by the executor of the router and each start waypoint is only searched once. The travel times are also looked up in and added to the persistent cache of the router.
+ * The paths found by a search are kept as well, so the route of a solved test can be drawn without searching the graph again
+ * (see {@link #getPath(MyWaypoint, MyWaypoint)}). Waypoints at the same position share their travel times and paths.
+ * @author Daniel Schröder
+ */
+public class RoutingSession {
+
+	// the index of each distinct position of the waypoints
+	private final Map<GeoPosition, Integer> indices = new HashMap<>();
+
+	// the waypoints that can't be snapped to a road
+	private final List<MyWaypoint> unroutable = new ArrayList<>();
+
+	// indexed by the position (the snapped position and its node in the query graph, -1 if it can't be snapped)
+	private final double[] lats, lons;
+	private final int[] nodes;
+
+	// the nodes of all positions that can be snapped
+	private final int[] targets;
+
+	// the graph with the snapped positions (read-only after the lookup)
+	private final Router router;
+	private final QueryGraph queryGraph;
+
+	// the searches that are not in use (each thread needs its own one)
+	private final ConcurrentLinkedQueue<OneToManyDijkstra> dijkstras = new ConcurrentLinkedQueue<>();
+
+	// indexed by the start position (the travel times and the paths to all positions, null if not known yet)
+	private final AtomicReferenceArray<double[]> times;
+	private final AtomicReferenceArray<int[][]> paths;
+
+	// used to calculate the values of a start position only once, even if several threads need them
+	private final Object[] locks;
+
+	/**
+	 * Snaps the given waypoints and creates a new session for them.
+	 * @param router the router
+	 * @param points the waypoints
+	 * @throws NullPointerException if null is passed
+	 */
+	RoutingSession(Router router, List<MyWaypoint> points) throws NullPointerException {
+		this.router = Objects.requireNonNull(router);
+
+		List<QueryResult> snapped = new ArrayList<>();
+		List<QueryResult> valid = new ArrayList<>();
+
+		for (MyWaypoint point : Objects.requireNonNull(points)) {
+			GeoPosition position = Objects.requireNonNull(point).getPosition();
+			Integer index = indices.get(position);
+
+			if (index == null) {
+				indices.put(position, snapped.size());
+				snapped.add(router.snap(position));
+				index = snapped.size() - 1;
+			}
+
+			if (!snapped.get(index).isValid()) {
+				unroutable.add(point);
+			}
+		}
+
+		int size = snapped.size();
+
+		lats = new double[size];
+		lons = new double[size];
+		nodes = new int[size];
+		times = new AtomicReferenceArray<>(size);
+		paths = new AtomicReferenceArray<>(size);
+		locks = new Object[size];
+
+		for (int i = 0; i < size; i++) {
+			QueryResult result = snapped.get(i);
+			locks[i] = new Object();
+
+			if (result.isValid()) {
+				lats[i] = result.getSnappedPoint().getLat();
+				lons[i] = result.getSnappedPoint().getLon();
+				valid.add(result);
+			} else {
+				// no route starts at a position that can't be snapped
+				double[] row = new double[size];
+				Arrays.fill(row, Double.MAX_VALUE);
+				row[i] = 0;
+
+				times.set(i, row);
+			}
+		}
+
+		// insert the snapped positions into the graph as virtual nodes (this changes the closest nodes of the query results)
+		queryGraph = new QueryGraph(router.getGraph());
+		queryGraph.lookup(valid);
+
+		targets = new int[valid.size()];
+
+		for (int i = 0, k = 0; i < size; i++) {
+			nodes[i] = snapped.get(i).isValid() ? snapped.get(i).getClosestNode() : -1;
+
+			if (nodes[i] != -1) {
+				targets[k++] = nodes[i];
+			}
+		}
+	}
+
+	/**
+	 * @param points the waypoints
+	 * @return <code> true </code> if the session contains the positions of all given waypoints
+	 */
+	boolean contains(List<MyWaypoint> points) {
+		for (MyWaypoint point : points) {
+			if (!indices.containsKey(point.getPosition())) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the waypoints that can't be snapped to a road (they can't be reached and no route starts at them)
+	 */
+	public List<MyWaypoint> getUnroutable() {
+		return new ArrayList<>(unroutable);
+	}
+
+	/**
+	 * @param point a waypoint of the session
+	 * @return <code> true </code> if the waypoint could be snapped to a road
+	 * @throws NullPointerException if point is null
+	 * @throws IllegalArgumentException if the position of the waypoint isn't part of the session
+	 */
+	public boolean isRoutable(MyWaypoint point) throws NullPointerException, IllegalArgumentException {
+		return nodes[getIndex(point)] != -1;
+	}
+
+	/**
+	 * Returns the time (in millis) it takes from the start to the destination waypoint with the car.
+	 * @param start the start waypoint
+	 * @param dest the destination waypoint
+	 * @return the time or {@link Double#MAX_VALUE} if there is no route
+	 * @throws NullPointerException if null is passed
+	 * @throws IllegalArgumentException if the position of a waypoint isn't part of the session
+	 */
+	public double getTime(MyWaypoint start, MyWaypoint dest) throws NullPointerException, IllegalArgumentException {
+		int j = getIndex(dest);
+
+		return getTimes(getIndex(start))[j];
+	}
+
+	/**
+	 * Returns the travel times (in millis) between all given waypoints with the car.
+	 * The travel times from different start waypoints are calculated in parallel.
+	 * @param points the waypoints
+	 * @return the travel times (the time from points[i] to points[j] at [i][j]) or {@link Double#MAX_VALUE} if there is no route
+	 * @throws NullPointerException if null is passed
+	 * @throws IllegalArgumentException if the position of a waypoint isn't part of the session
+	 * @throws CancellationException if the calling thread is interrupted while waiting for the travel times
+	 */
+	public double[][] getTimes(List<MyWaypoint> points) throws NullPointerException, IllegalArgumentException, CancellationException {
+		int size = Objects.requireNonNull(points).size();
+		int[] index = new int[size];
+
+		for (int i = 0; i < size; i++) {
+			index[i] = getIndex(points.get(i));
+		}
+
+		load(index);
+
+		double[][] result = new double[size][size];
+
+		for (int i = 0; i < size; i++) {
+			double[] row = times.get(index[i]);
+
+			for (int j = 0; j < size; j++) {
+				result[i][j] = i == j ? 0 : row[index[j]];
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Calculates the travel times from the given start positions that are not known yet in parallel.
+	 * @param index the indices of the start positions
+	 * @throws CancellationException if the calling thread is interrupted while waiting for the travel times
+	 */
+	private void load(int[] index) throws CancellationException {
+		List<Callable<double[]>> tasks = new ArrayList<>();
+		boolean[] added = new boolean[nodes.length];
+
+		for (int i : index) {
+			if (times.get(i) == null && !added[i]) {
+				added[i] = true;
+				tasks.add(() -> getTimes(i));
+			}
+		}
+
+		// a single start position isn't worth a task
+		if (tasks.size() < 2) {
+			for (int i : index) {
+				getTimes(i);
+			}
+
+			return;
+		}
+
+		try {
+			for (Future<double[]> future : router.getExecutor().invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("The calculation was cancelled");
+		} catch (ExecutionException e) {
+			// the tasks don't throw checked exceptions
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Returns the positions of the fastest path from the start to the destination waypoint with the car.
+	 * The path is only searched if the start waypoint wasn't searched from before, e.g. because its travel times were cached.
+	 * @param start the start waypoint
+	 * @param dest the destination waypoint
+	 * @return the positions of the path (from the snapped start to the snapped destination position) or null if there is no route
+	 * @throws NullPointerException if null is passed
+	 * @throws IllegalArgumentException if the position of a waypoint isn't part of the session
+	 */
+	public List<GeoPosition> getPath(MyWaypoint start, MyWaypoint dest) throws NullPointerException, IllegalArgumentException {
+		int i = getIndex(start);
+		int j = getIndex(dest);
+
+		if (nodes[i] == -1 || nodes[j] == -1) {
+			return null;
+		}
+
+		int[][] row = paths.get(i);
+
+		if (row == null) {
+			synchronized (locks[i]) {
+				row = paths.get(i);
+
+				if (row == null) {
+					search(i, times.get(i));
+					row = paths.get(i);
+				}
+			}
+		}
+
+		int[] path = row[j];
+
+		if (path == null) {
+			return null;
+		}
+
+		List<GeoPosition> positions = new ArrayList<>();
+
+		if (path.length == 0) {
+			// both waypoints are snapped to the same position
+			positions.add(new GeoPosition(lats[i], lons[i]));
+			positions.add(new GeoPosition(lats[j], lons[j]));
+			return positions;
+		}
+
+		for (int e = 0; e < path.length; e += 2) {
+			// the first edge with its base node, the others without (it's the adjacent node of the previous one)
+			EdgeIteratorState edge = queryGraph.getEdgeIteratorState(path[e], path[e + 1]);
+			positions.addAll(Utilities.pointListToGeoList(edge.fetchWayGeometry(e == 0 ? 3 : 2)));
+		}
+
+		return positions;
+	}
+
+	/**
+	 * @param point the waypoint
+	 * @return the index of the position of the waypoint
+	 * @throws NullPointerException if point is null
+	 * @throws IllegalArgumentException if the position isn't part of the session
+	 */
+	private int getIndex(MyWaypoint point) throws NullPointerException, IllegalArgumentException {
+		Integer index = indices.get(Objects.requireNonNull(point).getPosition());
+
+		if (index == null) {
+			throw new IllegalArgumentException("The waypoint " + point.getLabel() + " isn't part of the routing session");
+		}
+
+		return index;
+	}
+
+	/**
+	 * Returns the travel times from a position to all others and calculates them if they aren't known yet.
+	 * The travel times are looked up in the cache first, the graph is only searched if one is missing.
+	 * @param i the index of the start position
+	 * @return the travel times
+	 */
+	private double[] getTimes(int i) {
+		double[] row = times.get(i);
+
+		if (row != null) {
+			return row;
+		}
+
+		synchronized (locks[i]) {
+			row = times.get(i);
+
+			if (row != null) {
+				return row;
+			}
+
+			TravelTimeCache cache = router.getCache();
+			boolean missing = false;
+
+			row = new double[nodes.length];
+
+			for (int j = 0; j < nodes.length; j++) {
+				if (j == i) {
+					continue;
+				}
+
+				// positions that can't be snapped can't be reached
+				row[j] = nodes[j] == -1 ? Double.MAX_VALUE : cache != null ? cache.get(lats[i], lons[i], lats[j], lons[j]) : Double.NaN;
+				missing |= Double.isNaN(row[j]);
+			}
+
+			if (missing) {
+				search(i, row);
+			}
+
+			times.set(i, row);
+
+			return row;
+		}
+	}
+
+	/**
+	 * Searches the graph from a position and keeps the paths to all other positions.
+	 * The travel times that aren't known yet are set in the given row and added to the cache.
+	 * This must only be called while holding the lock of the position.
+	 * @param i the index of the start position
+	 * @param row the travel times from the position (the known ones aren't changed, may be null)
+	 */
+	private void search(int i, double[] row) {
+		OneToManyDijkstra dijkstra = dijkstras.poll();
+
+		if (dijkstra == null) {
+			dijkstra = new OneToManyDijkstra(queryGraph, router.getEncoder());
+		}
+
+		try {
+			TravelTimeCache cache = router.getCache();
+
+			double[] found = dijkstra.getTimes(nodes[i], targets);
+			int[][] path = new int[nodes.length][];
+
+			for (int j = 0, k = 0; j < nodes.length; j++) {
+				if (nodes[j] == -1) {
+					continue;
+				}
+
+				double time = found[k++];
+				path[j] = dijkstra.getPath(nodes[j]);
+
+				if (row != null && Double.isNaN(row[j])) {
+					row[j] = time;
+
+					if (cache != null) {
+						cache.put(lats[i], lons[i], lats[j], lons[j], time);
+					}
+				}
+			}
+
+			paths.set(i, path);
+		} finally {
+			dijkstras.offer(dijkstra);
+		}
+	}
+}
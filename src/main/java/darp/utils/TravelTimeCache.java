@@ -0,0 +1,330 @@
+package darp.utils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.logging.Level;
+
+/**
+ * A persistent cache of travel times between positions, which survives restarts of the program.
+ * <p>
+ * The travel times are appended to a compact file (24 bytes per travel time) as soon as they are calculated.
+ * When the cache is opened, the file is read and the most recent travel times are kept in memory
+ * (the least recently used ones are dropped if there are more than the capacity).
+ * The file belongs to the map data it was created for: if the source passed to the constructor differs
+ * from the one in the file (e.g. because the OSM file changed), the file is cleared.
+ * <p>
+ * The positions are rounded to 1e-6 degrees (about 0.1 m). All methods are thread-safe.
+ * @author Daniel Schröder
+ */
+public class TravelTimeCache implements Closeable {
+
+	// identifies the file format
+	private static final int MAGIC = 0x44545443;
+	private static final int VERSION = 1;
+
+	// the bytes of a travel time (two packed positions and the time)
+	private static final int RECORD_SIZE = 24;
+
+	// the precision of the stored positions
+	private static final double SCALE = 1e6;
+
+	// the file and the channel to append new travel times (null if the file can't be written)
+	private final File file;
+	private FileChannel channel;
+
+	// the travel times in the order of their last use
+	private final LinkedHashMap<Key, Double> times;
+
+	// statistics
+	private long hits, misses;
+
+	/**
+	 * Opens the cache stored in the given file or creates a new one.
+	 * @param file the file
+	 * @param source identifies the map data the travel times are calculated with
+	 * @param capacity the maximum number of travel times kept in memory
+	 * @throws NullPointerException if file or source is null
+	 * @throws IllegalArgumentException if capacity is less than 1
+	 * @throws IOException if the file can't be read or created
+	 */
+	public TravelTimeCache(File file, String source, int capacity) throws NullPointerException, IllegalArgumentException, IOException {
+		this.file = Objects.requireNonNull(file);
+		Objects.requireNonNull(source);
+
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity must be at least 1");
+		}
+
+		times = new LinkedHashMap<Key, Double>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = -4018309236715562913L;
+
+			@Override
+			protected boolean removeEldestEntry(Entry<Key, Double> eldest) {
+				return size() > capacity;
+			}
+		};
+
+		byte[] header = getHeader(source);
+		long records = load(header);
+
+		// the file is rewritten if it's new, belongs to other map data or contains many outdated travel times
+		if (records < 0 || records > 2 * times.size()) {
+			rewrite(header);
+		}
+
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Returns the header of a file for the given source.
+	 * @param source the source
+	 * @return the header
+	 */
+	private static byte[] getHeader(String source) {
+		byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+
+		return ByteBuffer.allocate(12 + bytes.length).putInt(MAGIC).putInt(VERSION).putInt(bytes.length).put(bytes).array();
+	}
+
+	/**
+	 * Reads the travel times of the file.
+	 * @param header the expected header
+	 * @return the number of travel times in the file or -1 if the file doesn't exist or has another header
+	 * @throws IOException if the file can't be read
+	 */
+	private long load(byte[] header) throws IOException {
+		if (!file.isFile()) {
+			return -1;
+		}
+
+		long size = file.length();
+
+		if (size < header.length) {
+			return -1;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			byte[] actual = new byte[header.length];
+			in.readFully(actual);
+
+			if (!Arrays.equals(header, actual)) {
+				return -1;
+			}
+
+			long records = (size - header.length) / RECORD_SIZE;
+
+			for (long i = 0; i < records; i++) {
+				times.put(new Key(in.readLong(), in.readLong()), in.readDouble());
+			}
+
+			// an incomplete last record (e.g. because the program was killed) has to be removed by rewriting the file
+			return header.length + records * RECORD_SIZE == size ? records : Long.MAX_VALUE;
+		} catch (EOFException e) {
+			// the file was truncated while reading
+			return Long.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Replaces the file by one that only contains the travel times in memory.
+	 * @param header the header
+	 * @throws IOException if the file can't be written
+	 */
+	private void rewrite(byte[] header) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+
+		if (parent != null) {
+			parent.mkdirs();
+		}
+
+		File temp = new File(file.getPath() + ".tmp");
+
+		try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			out.write(ByteBuffer.wrap(header));
+
+			ByteBuffer buffer = ByteBuffer.allocate(1024 * RECORD_SIZE);
+
+			for (Entry<Key, Double> entry : times.entrySet()) {
+				if (!buffer.hasRemaining()) {
+					buffer.flip();
+					writeFully(out, buffer);
+					buffer.clear();
+				}
+
+				buffer.putLong(entry.getKey().from).putLong(entry.getKey().to).putDouble(entry.getValue());
+			}
+
+			buffer.flip();
+			writeFully(out, buffer);
+		}
+
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Writes all remaining bytes of a buffer.
+	 * @param out the channel
+	 * @param buffer the buffer
+	 * @throws IOException if the bytes can't be written
+	 */
+	private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	/**
+	 * Returns the cached travel time between two positions.
+	 * @param fromLat the latitude of the start position
+	 * @param fromLon the longitude of the start position
+	 * @param toLat the latitude of the destination position
+	 * @param toLon the longitude of the destination position
+	 * @return the travel time or {@link Double#NaN} if it isn't cached
+	 */
+	public synchronized double get(double fromLat, double fromLon, double toLat, double toLon) {
+		Double time = times.get(new Key(pack(fromLat, fromLon), pack(toLat, toLon)));
+
+		if (time == null) {
+			misses++;
+			return Double.NaN;
+		}
+
+		hits++;
+		return time;
+	}
+
+	/**
+	 * Adds a travel time between two positions to the cache and appends it to the file.
+	 * If the file can't be written, the travel times are only cached in memory from now on.
+	 * @param fromLat the latitude of the start position
+	 * @param fromLon the longitude of the start position
+	 * @param toLat the latitude of the destination position
+	 * @param toLon the longitude of the destination position
+	 * @param time the travel time
+	 */
+	public synchronized void put(double fromLat, double fromLon, double toLat, double toLon, double time) {
+		Key key = new Key(pack(fromLat, fromLon), pack(toLat, toLon));
+		times.put(key, time);
+
+		if (channel == null) {
+			return;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE).putLong(key.from).putLong(key.to).putDouble(time);
+		buffer.flip();
+
+		try {
+			writeFully(channel, buffer);
+		} catch (IOException e) {
+			Log.getLogger().log(Level.WARNING, "The travel time cache can't be written", e);
+			closeChannel();
+		}
+	}
+
+	/**
+	 * Packs a position into a long (the latitude in the upper and the longitude in the lower 32 bits).
+	 * @param lat the latitude
+	 * @param lon the longitude
+	 * @return the packed position
+	 */
+	private static long pack(double lat, double lon) {
+		return ((long) (int) Math.round(lat * SCALE) << 32) | ((int) Math.round(lon * SCALE) & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @return the number of travel times in memory
+	 */
+	public synchronized int size() {
+		return times.size();
+	}
+
+	/**
+	 * @return the number of travel times that were found in the cache
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of travel times that were not found in the cache
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Closes the file. The travel times in memory can still be used, but new ones are not stored anymore.
+	 */
+	@Override
+	public synchronized void close() {
+		closeChannel();
+	}
+
+	/**
+	 * Closes the channel to the file (if it's open).
+	 */
+	private void closeChannel() {
+		if (channel == null) {
+			return;
+		}
+
+		try {
+			channel.close();
+		} catch (IOException e) {
+			Log.getLogger().log(Level.WARNING, "The travel time cache can't be closed", e);
+		}
+
+		channel = null;
+	}
+
+	/**
+	 * The packed start and destination positions of a travel time.
+	 */
+	private static final class Key {
+
+		private final long from, to;
+
+		/**
+		 * Creates a new key.
+		 * @param from the packed start position
+		 * @param to the packed destination position
+		 */
+		public Key(long from, long to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+
+			Key other = (Key) obj;
+
+			return from == other.from && to == other.to;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(from * 31 + to);
+		}
+	}
+}
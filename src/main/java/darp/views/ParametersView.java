@@ -20,7 +20,7 @@ public class ParametersView extends JPanel {
 
 	private static final long serialVersionUID = -4282400004385850291L;
 
-	private JNumberField numCapacity, numMPS, numTimePref;
+	private JNumberField numCapacity, numMPS, numTimePref, numTimeLimit;
 	private JSlider sliderWeights;
 	private JLabel lblWeight1, lblWeight2;
 	private JCheckBox cbRouting;
@@ -29,7 +29,7 @@ public class ParametersView extends JPanel {
 	 * Creates a new GUI representing the parameters of a test.
 	 */
 	public ParametersView() {
-		setLayout(new MigLayout("insets 0", "[grow][grow][75px,grow][grow]", "[grow][grow][grow][grow][grow][grow]"));
+		setLayout(new MigLayout("insets 0", "[grow][grow][75px,grow][grow]", "[grow][grow][grow][grow][grow][grow][grow]"));
 
 		// add components
 		addNumberFields();
@@ -38,7 +38,7 @@ public class ParametersView extends JPanel {
 	}
 
 	/**
-	 * Adds the fields for capacity, mps, and time preference.
+	 * Adds the fields for capacity, mps, time preference and time limit.
 	 */
 	private void addNumberFields() {
 		JLabel lblCapacity = new JLabel("Fahrzeugkapazität (C):", SwingConstants.RIGHT);
@@ -58,6 +58,12 @@ public class ParametersView extends JPanel {
 
 		numTimePref = new JNumberField("1", 3, SwingConstants.CENTER, new NumberFilter("[0-1](\\.[0-9]*)?|2|^$"));
 		add(numTimePref, "cell 2 2,growx");
+
+		JLabel lblTimeLimit = new JLabel("Zeitlimit in s (0 = keins):", SwingConstants.RIGHT);
+		add(lblTimeLimit, "cell 0 3,growx");
+
+		numTimeLimit = new JNumberField("10", 3, SwingConstants.CENTER, new NumberFilter("[0-9]*"));
+		add(numTimeLimit, "cell 2 3,growx");
 	}
 
 	/**
@@ -65,7 +71,7 @@ public class ParametersView extends JPanel {
 	 */
 	private void addSlider() {
 		JLabel lblWeights = new JLabel("Gewichtung (w1, w2):", SwingConstants.RIGHT);
-		add(lblWeights, "cell 0 3,growx");
+		add(lblWeights, "cell 0 4,growx");
 
 		sliderWeights = new JSlider();
 		// show ticks
@@ -74,17 +80,17 @@ public class ParametersView extends JPanel {
 		sliderWeights.setPaintTicks(true);
 		// transparent background
 		sliderWeights.setOpaque(false);
-		add(sliderWeights, "cell 1 3 3 1,growx");
+		add(sliderWeights, "cell 1 4 3 1,growx");
 
 		// displays the value of w1
 		lblWeight1 = new JLabel("w1: 0.5", SwingConstants.CENTER);
 		lblWeight1.setFont(new Font("Tahoma", Font.BOLD, 10));
-		add(lblWeight1, "cell 1 4,growx,aligny top");
+		add(lblWeight1, "cell 1 5,growx,aligny top");
 
 		// displays the value of w2
 		lblWeight2 = new JLabel("w1: 0.5", SwingConstants.CENTER);
 		lblWeight2.setFont(new Font("Tahoma", Font.BOLD, 10));
-		add(lblWeight2, "cell 3 4,growx,aligny top");
+		add(lblWeight2, "cell 3 5,growx,aligny top");
 	}
 
 	/**
@@ -95,7 +101,7 @@ public class ParametersView extends JPanel {
 		cbRouting.setHorizontalAlignment(SwingConstants.CENTER);
 		// transparent background
 		cbRouting.setOpaque(false);
-		add(cbRouting, "cell 2 5,growx");
+		add(cbRouting, "cell 2 6,growx");
 	}
 
 	/**
@@ -119,6 +125,13 @@ public class ParametersView extends JPanel {
 		return numTimePref;
 	}
 
+	/**
+	 * @return the JNumberField containing the time limit value
+	 */
+	public JNumberField getNumTimeLimit() {
+		return numTimeLimit;
+	}
+
 	/**
 	 * @return the JSlider that controls the weighting
 	 */
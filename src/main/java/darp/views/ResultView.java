@@ -18,6 +18,7 @@ public class ResultView extends JPanel {
 	private static final long serialVersionUID = -5584042920239135643L;
 
 	private JNumberField numAlgo, numRouting, numTotal;
+	private JTextField txtOptimal;
 	private JButton btnFirst, btnPrev, btnNext, btnLast;
 	private JTextField txtFrame;
 
@@ -33,7 +34,7 @@ public class ResultView extends JPanel {
 	}
 
 	/**
-	 * Adds fields for the algorithm time, the routing time and total time.
+	 * Adds fields for the algorithm time, the routing time, the total time and whether the route is optimal.
 	 */
 	private void addStatistics() {
 		JLabel lblAlgo = new JLabel("Algorithmus (ms)", SwingConstants.CENTER);
@@ -56,6 +57,15 @@ public class ResultView extends JPanel {
 		numTotal = new JNumberField("0", 10, SwingConstants.CENTER);
 		numTotal.setEditable(false);
 		add(numTotal, "cell 3 1,growx");
+
+		JLabel lblOptimal = new JLabel("Optimal", SwingConstants.CENTER);
+		add(lblOptimal, "cell 4 0,growx");
+
+		// the route might only be the best one found within the time limit
+		txtOptimal = new JTextField("-", 10);
+		txtOptimal.setHorizontalAlignment(SwingConstants.CENTER);
+		txtOptimal.setEditable(false);
+		add(txtOptimal, "cell 4 1,growx");
 	}
 
 	/**
@@ -102,6 +112,13 @@ public class ResultView extends JPanel {
 		return numTotal;
 	}
 
+	/**
+	 * @return the JTextField that shows whether the route is optimal
+	 */
+	public JTextField getTxtOptimal() {
+		return txtOptimal;
+	}
+
 	/**
 	 * @return the JButton to hide the route
 	 */
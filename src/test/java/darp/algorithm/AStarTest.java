@@ -0,0 +1,23 @@
+package darp.algorithm;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the AStar class.
+ * @author Daniel Schröder
+ */
+public class AStarTest {
+
+	@Test
+	public void getOptRouteTest() {
+		AStar solver = new AStar();
+
+		assertThrows(NullPointerException.class, () -> solver.getOptRoute(null));
+		assertThrows(IllegalArgumentException.class, () -> solver.getOptRoute(PsaraftisTest.createLargeTest(StateSpace.MAX_CUSTOMERS + 1)));
+
+		PsaraftisTest.assertOptimalCosts(solver);
+		PsaraftisTest.assertStartOnlyWhenInfeasible(solver);
+	}
+}
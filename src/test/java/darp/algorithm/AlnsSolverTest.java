@@ -0,0 +1,105 @@
+package darp.algorithm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import darp.jxmapviewer2.MyWaypoint;
+import darp.models.ParametersModel;
+import darp.models.TestModel;
+
+/**
+ * Tests the AlnsSolver and Alns classes.
+ * @author Daniel Schröder
+ */
+public class AlnsSolverTest {
+
+	@Test
+	public void getOptRouteTest() {
+		AlnsSolver solver = new AlnsSolver();
+		solver.setIterations(2000);
+
+		assertThrows(NullPointerException.class, () -> solver.getOptRoute(null));
+		assertThrows(IllegalArgumentException.class, () -> solver.setIterations(0));
+		assertThrows(IllegalArgumentException.class, () -> solver.setTimeLimit(0));
+
+		// the tests are small enough to find the optimal route
+		for (int n = 1; n <= 6; n++) {
+			TestModel test = PsaraftisTest.createLargeTest(n);
+			ParametersModel parameters = test.getParametersModel();
+			parameters.setCapacity(1 + n % 3);
+			parameters.setMPS(1 + n % 2);
+			parameters.setWeight(20 * (n % 5));
+
+			List<MyWaypoint> expected = new Psaraftis().getOptRoute(test);
+			assertEquals(expected, solver.getOptRoute(test));
+		}
+
+		PsaraftisTest.assertStartOnlyWhenInfeasible(solver);
+	}
+
+	@Test
+	public void searchTest() {
+		TestModel test = PsaraftisTest.createLargeTest(30);
+		test.getParametersModel().setCapacity(3);
+		test.getParametersModel().setMPS(2);
+		test.getParametersModel().setWeight(30);
+
+		RouteEvaluator evaluator = RouteEvaluatorTest.createEvaluator(test);
+		int[] initial = new Insertion(evaluator).construct(2);
+
+		assertThrows(IllegalArgumentException.class, () -> new Alns(evaluator, new Random(0)).search(new int[] { 0, 31, 1 }, 1, 1000));
+
+		// the same seed leads to the same route
+		int[] route = new Alns(evaluator, new Random(7)).search(initial, 500, 60000);
+		assertArrayEquals(route, new Alns(evaluator, new Random(7)).search(initial, 500, 60000));
+
+		assertTrue(evaluator.isFeasible(route));
+		assertTrue(evaluator.getCost(route) <= evaluator.getCost(initial));
+	}
+
+	@Test
+	public void incumbentTest() {
+		TestModel test = PsaraftisTest.createLargeTest(20);
+		test.getParametersModel().setCapacity(3);
+		test.getParametersModel().setMPS(2);
+
+		AlnsSolver solver = new AlnsSolver();
+		solver.setIterations(1000);
+
+		List<Double> costs = Collections.synchronizedList(new ArrayList<>());
+		List<List<MyWaypoint>> routes = Collections.synchronizedList(new ArrayList<>());
+		solver.setIncumbentListener((sequence, cost) -> {
+			routes.add(sequence);
+			costs.add(cost);
+		});
+
+		List<MyWaypoint> sequence = solver.getOptRoute(test);
+
+		// the routes get better and the last one is the result
+		assertTrue(!costs.isEmpty());
+
+		for (int i = 1; i < costs.size(); i++) {
+			assertTrue(costs.get(i) < costs.get(i - 1));
+		}
+
+		assertEquals(sequence, routes.get(routes.size() - 1));
+
+		RouteEvaluator evaluator = RouteEvaluatorTest.createEvaluator(test);
+		assertEquals(evaluator.getCost(RouteEvaluatorTest.getStops(test, sequence)), costs.get(costs.size() - 1), 1e-6);
+
+		// the listener can be removed
+		solver.setIncumbentListener(null);
+		costs.clear();
+		solver.getOptRoute(test);
+		assertTrue(costs.isEmpty());
+	}
+}
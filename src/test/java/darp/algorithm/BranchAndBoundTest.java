@@ -0,0 +1,22 @@
+package darp.algorithm;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the BranchAndBound class.
+ * @author Daniel Schröder
+ */
+public class BranchAndBoundTest {
+
+	@Test
+	public void getOptRouteTest() {
+		BranchAndBound solver = new BranchAndBound();
+
+		assertThrows(NullPointerException.class, () -> solver.getOptRoute(null));
+
+		PsaraftisTest.assertOptimalCosts(solver);
+		PsaraftisTest.assertStartOnlyWhenInfeasible(solver);
+	}
+}
@@ -0,0 +1,85 @@
+package darp.algorithm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import darp.jxmapviewer2.MyWaypoint;
+import darp.models.ParametersModel;
+import darp.models.TestModel;
+
+/**
+ * Tests the InsertionSolver and Insertion classes.
+ * @author Daniel Schröder
+ */
+public class InsertionSolverTest {
+
+	@Test
+	public void getOptRouteTest() {
+		InsertionSolver solver = new InsertionSolver();
+
+		assertThrows(NullPointerException.class, () -> solver.getOptRoute(null));
+		assertThrows(IllegalArgumentException.class, () -> solver.setRegret(0));
+
+		// there is only one possible route for one customer
+		TestModel test = new TestModel();
+		assertEquals(new Psaraftis().getOptRoute(test), solver.getOptRoute(test));
+
+		for (int regret = 1; regret <= 3; regret++) {
+			solver.setRegret(regret);
+
+			for (int n = 2; n <= 8; n++) {
+				test = PsaraftisTest.createLargeTest(n);
+				ParametersModel parameters = test.getParametersModel();
+				parameters.setCapacity(1 + n % 3);
+				parameters.setMPS(n % 4);
+				parameters.setWeight(20 * (n % 5));
+
+				// the route is feasible, but it can't be cheaper than the optimal route
+				RouteEvaluator evaluator = RouteEvaluatorTest.createEvaluator(test);
+				int[] optRoute = RouteEvaluatorTest.getStops(test, new Psaraftis().getOptRoute(test));
+
+				List<MyWaypoint> sequence = solver.getOptRoute(test);
+				int[] route = RouteEvaluatorTest.getStops(test, sequence);
+
+				assertEquals(2 * n + 1, sequence.size());
+				assertTrue(evaluator.isFeasible(route));
+				assertTrue(evaluator.getCost(route) >= evaluator.getCost(optRoute) - 1e-9);
+			}
+		}
+
+		PsaraftisTest.assertStartOnlyWhenInfeasible(solver);
+	}
+
+	@Test
+	public void constructTest() {
+		// tight constraints for many customers
+		for (int n = 10; n <= 40; n += 10) {
+			for (int mps = 0; mps <= 3; mps++) {
+				TestModel test = PsaraftisTest.createLargeTest(n);
+				test.getParametersModel().setCapacity(2);
+				test.getParametersModel().setMPS(mps);
+
+				Insertion insertion = new Insertion(RouteEvaluatorTest.createEvaluator(test));
+				RouteEvaluator evaluator = insertion.getEvaluator();
+
+				for (int regret = 1; regret <= 3; regret++) {
+					int[] route = insertion.construct(regret);
+
+					assertTrue(evaluator.isFeasible(route));
+				}
+
+				// the customers in the order of their numbers
+				int[] route = new int[2 * n + 1];
+				assertEquals(route.length, insertion.insertInOrder(route, 1));
+				assertTrue(evaluator.isFeasible(route));
+			}
+		}
+
+		assertThrows(IllegalArgumentException.class, () -> new Insertion(RouteEvaluatorTest.createEvaluator(new TestModel())).construct(0));
+	}
+}
@@ -0,0 +1,83 @@
+package darp.algorithm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import darp.jxmapviewer2.MyWaypoint;
+import darp.models.TestModel;
+
+/**
+ * Tests the LocalSearchSolver and LocalSearch classes.
+ * @author Daniel Schröder
+ */
+public class LocalSearchSolverTest {
+
+	@Test
+	public void getOptRouteTest() {
+		assertThrows(NullPointerException.class, () -> new LocalSearchSolver(null));
+		assertThrows(NullPointerException.class, () -> new LocalSearchSolver(new InsertionSolver()).getOptRoute(null));
+		assertThrows(IllegalArgumentException.class, () -> new LocalSearchSolver(new InsertionSolver()).setTimeLimit(0));
+
+		for (boolean bestImprovement : new boolean[] { false, true }) {
+			LocalSearchSolver solver = new LocalSearchSolver(new InsertionSolver());
+			solver.setBestImprovement(bestImprovement);
+
+			for (int n = 1; n <= 20; n += 3) {
+				TestModel test = PsaraftisTest.createLargeTest(n);
+				test.getParametersModel().setCapacity(1 + n % 3);
+				test.getParametersModel().setMPS(1 + n % 2);
+				test.getParametersModel().setWeight(20 * (n % 5));
+
+				RouteEvaluator evaluator = RouteEvaluatorTest.createEvaluator(test);
+				int[] initial = RouteEvaluatorTest.getStops(test, new InsertionSolver().getOptRoute(test));
+				int[] route = RouteEvaluatorTest.getStops(test, solver.getOptRoute(test));
+
+				assertTrue(evaluator.isFeasible(route));
+				assertTrue(evaluator.getCost(route) <= evaluator.getCost(initial));
+			}
+		}
+
+		// the optimal route can't be improved
+		TestModel test = PsaraftisTest.createLargeTest(6);
+		List<MyWaypoint> expected = new Psaraftis().getOptRoute(test);
+
+		assertEquals(expected, new LocalSearchSolver(new Psaraftis()).getOptRoute(test));
+	}
+
+	@Test
+	public void improveTest() {
+		TestModel test = PsaraftisTest.createLargeTest(30);
+		test.getParametersModel().setCapacity(3);
+		test.getParametersModel().setMPS(2);
+		test.getParametersModel().setWeight(30);
+
+		RouteEvaluator evaluator = RouteEvaluatorTest.createEvaluator(test);
+		LocalSearch search = new LocalSearch(evaluator);
+
+		assertThrows(IllegalArgumentException.class, () -> search.improve(new int[] { 0, 31, 1 }, 1000));
+
+		int[] initial = new Insertion(evaluator).construct(2);
+		Route route = new Route(evaluator, search.improve(initial, 60000));
+
+		assertTrue(route.isFeasible());
+		assertTrue(search.getMoves() > 0);
+		assertTrue(route.getCost() < evaluator.getCost(initial));
+
+		// the route is a local optimum
+		for (int i = 1; i < route.size(); i++) {
+			for (int j = 1; j < route.size(); j++) {
+				assertTrue(route.evaluateSwap(i, j) >= route.getCost() - 1e-6);
+				assertTrue(route.evaluateTwoOpt(i, j) >= route.getCost() - 1e-6);
+
+				for (int length = 1; length <= 3 && Math.max(i, j) + length <= route.size(); length++) {
+					assertTrue(route.evaluateOrOpt(i, length, j) >= route.getCost() - 1e-6);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package darp.algorithm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import darp.jxmapviewer2.MyWaypoint;
+import darp.models.TestModel;
+
+/**
+ * Tests the PortfolioSolver class.
+ * @author Daniel Schröder
+ */
+public class PortfolioSolverTest {
+
+	@Test
+	public void getOptRouteTest() {
+		PortfolioSolver solver = new PortfolioSolver();
+		solver.setSearches(2);
+
+		assertThrows(NullPointerException.class, () -> solver.getOptRoute(null));
+		assertThrows(IllegalArgumentException.class, () -> solver.setSearches(-1));
+		assertThrows(IllegalArgumentException.class, () -> solver.setTimeLimit(0));
+
+		// the exact solver finishes long before the time limit
+		// routes with the same cost might differ (the pruned solver may return the shared route), so only the costs are compared
+		for (int n = 1; n <= 6; n++) {
+			TestModel test = PsaraftisTest.createLargeTest(n);
+			test.getParametersModel().setCapacity(2);
+			test.getParametersModel().setMPS(1);
+
+			RouteEvaluator evaluator = RouteEvaluatorTest.createEvaluator(test);
+			double expected = evaluator.getCost(RouteEvaluatorTest.getStops(test, new Psaraftis().getOptRoute(test)));
+			assertEquals(expected, evaluator.getCost(RouteEvaluatorTest.getStops(test, solver.getOptRoute(test))), 1e-6);
+			assertTrue(test.getResultModel().isOptimal());
+		}
+
+		// too many customers for the exact solver
+		TestModel test = PsaraftisTest.createLargeTest(40);
+		test.getParametersModel().setCapacity(3);
+		test.getParametersModel().setMPS(2);
+
+		solver.setIterations(200);
+		solver.setTimeLimit(5000);
+
+		RouteEvaluator evaluator = RouteEvaluatorTest.createEvaluator(test);
+		int[] route = RouteEvaluatorTest.getStops(test, solver.getOptRoute(test));
+
+		assertTrue(evaluator.isFeasible(route));
+		assertTrue(evaluator.getCost(route) <= evaluator.getCost(new Insertion(evaluator).construct(2)) + 1e-9);
+		assertTrue(test.getResultModel().getTotalTime() < 5000);
+		assertTrue(!test.getResultModel().isOptimal());
+
+		// the route of a test without a feasible route is optimal, as it's the only one
+		PsaraftisTest.assertStartOnlyWhenInfeasible(solver);
+
+		TestModel infeasible = PsaraftisTest.createLargeTest(1);
+		infeasible.getParametersModel().setCapacity(0);
+		solver.getOptRoute(infeasible);
+		assertTrue(infeasible.getResultModel().isOptimal());
+	}
+
+	@Test
+	public void timeLimitTest() {
+		PortfolioSolver solver = new PortfolioSolver();
+		solver.setSearches(1);
+		solver.setIterations(Long.MAX_VALUE);
+
+		// the time limit of the test is shorter than the one of the solver
+		TestModel test = PsaraftisTest.createLargeTest(40);
+		test.getParametersModel().setTimeLimit(1);
+
+		RouteEvaluator evaluator = RouteEvaluatorTest.createEvaluator(test);
+		assertTrue(evaluator.isFeasible(RouteEvaluatorTest.getStops(test, solver.getOptRoute(test))));
+		assertTrue(test.getResultModel().getTotalTime() < 2000);
+		assertTrue(!test.getResultModel().isOptimal());
+
+		// the time limit of the solver is shorter than the one of the test
+		solver.setTimeLimit(500);
+		test.getParametersModel().setTimeLimit(60);
+
+		solver.getOptRoute(test);
+		assertTrue(test.getResultModel().getTotalTime() < 1500);
+	}
+
+	@Test
+	public void pruningTest() {
+		PortfolioSolver solver = new PortfolioSolver();
+
+		// only the exact solver runs, so the shared bound is the improved route of the insertion heuristic
+		solver.setSearches(0);
+
+		Psaraftis exactSolver = solver.getExactSolver();
+		assertTrue(exactSolver.isReachableOnly());
+		assertTrue(exactSolver.isPruning());
+
+		TestModel test = PsaraftisTest.createLargeTest(10);
+		test.getParametersModel().setCapacity(3);
+		test.getParametersModel().setMPS(2);
+
+		Psaraftis unpruned = new Psaraftis();
+		unpruned.setReachableOnly(true);
+
+		AtomicLong unprunedStates = new AtomicLong();
+		unpruned.setProgressListener(progress -> recordStates(progress, unprunedStates));
+		List<MyWaypoint> expected = unpruned.getOptRoute(test);
+
+		AtomicLong prunedStates = new AtomicLong();
+		solver.setProgressListener(progress -> recordStates(progress, prunedStates));
+		List<MyWaypoint> actual = solver.getOptRoute(test);
+
+		RouteEvaluator evaluator = RouteEvaluatorTest.createEvaluator(test);
+		assertEquals(evaluator.getCost(RouteEvaluatorTest.getStops(test, expected)), evaluator.getCost(RouteEvaluatorTest.getStops(test, actual)), 1e-6);
+
+		// the shared route prunes states
+		assertTrue(prunedStates.get() > 0);
+		assertTrue(prunedStates.get() < unprunedStates.get());
+	}
+
+	/**
+	 * Saves the number of states of the recursion of the exact solver.
+	 * @param progress the progress of the exact solver
+	 * @param states the number of states
+	 */
+	private static void recordStates(Progress progress, AtomicLong states) {
+		if (progress.getPhase() == Progress.Phase.RECURSION) {
+			states.set(progress.getTotal());
+		}
+	}
+
+	@Test
+	public void cancelTest() throws InterruptedException {
+		PortfolioSolver solver = new PortfolioSolver();
+		solver.setSearches(1);
+		solver.setTimeLimit(60000);
+		solver.setIterations(Long.MAX_VALUE);
+
+		TestModel test = PsaraftisTest.createLargeTest(40);
+
+		// a cancellation before the calculation starts isn't lost
+		solver.cancel();
+		assertThrows(CancellationException.class, () -> solver.getOptRoute(test));
+
+		// cancel a running calculation from another thread as soon as it reports the route of the insertion heuristic
+		CountDownLatch started = new CountDownLatch(1);
+		solver.setIncumbentListener((route, cost) -> started.countDown());
+
+		AtomicReference<Throwable> thrown = new AtomicReference<>();
+		Thread thread = new Thread(() -> {
+			try {
+				solver.getOptRoute(test);
+			} catch (Throwable t) {
+				thrown.set(t);
+			}
+		});
+
+		thread.start();
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		solver.cancel();
+		thread.join(5000);
+
+		assertTrue(!thread.isAlive());
+		assertTrue(thrown.get() instanceof CancellationException);
+
+		// neither the solver nor its exact solver remain cancelled
+		solver.setIncumbentListener(null);
+		TestModel small = PsaraftisTest.createLargeTest(6);
+
+		solver.getOptRoute(small);
+		assertTrue(small.getResultModel().isOptimal());
+	}
+}
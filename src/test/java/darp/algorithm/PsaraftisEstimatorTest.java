@@ -0,0 +1,78 @@
+package darp.algorithm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import darp.algorithm.PsaraftisEstimator.Estimate;
+import darp.models.ParametersModel;
+import darp.models.TestModel;
+
+/**
+ * Tests the PsaraftisEstimator class.
+ * @author Daniel Schröder
+ */
+public class PsaraftisEstimatorTest {
+
+	@Test
+	public void estimateTest() {
+		Psaraftis solver = new Psaraftis();
+		PsaraftisEstimator estimator = new PsaraftisEstimator(solver);
+
+		for (int n = 1; n <= 5; n++) {
+			for (int c = 1; c <= n; c++) {
+				TestModel test = PsaraftisTest.createLargeTest(n);
+				ParametersModel parameters = test.getParametersModel();
+				parameters.setCapacity(c);
+				parameters.setMPS(1);
+
+				// compare with all states that pass the screens 1-3
+				Estimate estimate = estimator.estimate(test.getRequestsModel(), parameters);
+				assertEquals(countScreenedStates(new StateSpace(n, c, 1)), estimate.getFeasibleStates());
+				assertEquals(Math.pow(3, n) * (2 * n + 1), estimate.getStates());
+				assertTrue(estimate.fits(Long.MAX_VALUE));
+			}
+		}
+
+		// too many customers for the dense tables
+		TestModel test = PsaraftisTest.createLargeTest(StateSpace.MAX_RANKED_CUSTOMERS + 1);
+		assertTrue(!estimator.estimate(test.getRequestsModel(), test.getParametersModel()).fits(Long.MAX_VALUE));
+
+		// but the reachable states of a tight test are few
+		solver.setReachableOnly(true);
+		test.getParametersModel().setCapacity(2);
+		test.getParametersModel().setMPS(1);
+
+		Estimate estimate = estimator.estimate(test.getRequestsModel(), test.getParametersModel());
+		assertTrue(estimate.isSupported());
+		assertTrue(estimate.getMemory() < 1024 * 1024);
+	}
+
+	/**
+	 * Counts the states that pass the screens 1-3 by enumerating all states.
+	 * @param space the state space
+	 * @return the number of states
+	 */
+	private static long countScreenedStates(StateSpace space) {
+		int n = space.getN();
+		int[] k = new int[n];
+		long count = 0;
+
+		for (int vector = 0; vector < Math.pow(3, n); vector++) {
+			for (int j = 0, rest = vector; j < n; j++, rest /= 3) {
+				k[j] = rest % 3 + 1;
+			}
+
+			for (int l = 0; l <= 2 * n; l++) {
+				long state = space.encode(l, k);
+
+				if (space.checkStateConsistency(state) && space.checkVehicleCapacity(state) && space.checkMPS(state)) {
+					count++;
+				}
+			}
+		}
+
+		return count;
+	}
+}
@@ -2,6 +2,7 @@ package darp.algorithm;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -10,6 +11,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -150,4 +155,248 @@ public class PsaraftisTest {
 			assertEquals(darpSolver.getOptRoute(entry.getKey()), entry.getValue());
 		}
 	}
+
+	@Test
+	public void getOptRouteSinglePrecisionTest() {
+		Psaraftis solver = new Psaraftis();
+		solver.setSinglePrecision(true);
+
+		// compare results
+		for (Entry<TestModel, List<MyWaypoint>> entry : expectedResults.entrySet()) {
+			assertEquals(solver.getOptRoute(entry.getKey()), entry.getValue());
+		}
+	}
+
+	@Test
+	public void getOptRouteParallelTest() {
+		Psaraftis solver = new Psaraftis();
+		solver.setParallelism(4);
+
+		// compare results
+		for (Entry<TestModel, List<MyWaypoint>> entry : expectedResults.entrySet()) {
+			assertEquals(solver.getOptRoute(entry.getKey()), entry.getValue());
+		}
+
+		// enough customers to split the layers into tasks
+		assertOptimalCosts(solver, 7, 9);
+
+		assertThrows(IllegalArgumentException.class, () -> solver.setParallelism(0));
+	}
+
+	@Test
+	public void getOptRouteReachableOnlyTest() {
+		Psaraftis solver = new Psaraftis();
+		solver.setReachableOnly(true);
+
+		// compare results
+		for (Entry<TestModel, List<MyWaypoint>> entry : expectedResults.entrySet()) {
+			assertEquals(solver.getOptRoute(entry.getKey()), entry.getValue());
+		}
+
+		solver.setParallelism(4);
+
+		for (Entry<TestModel, List<MyWaypoint>> entry : expectedResults.entrySet()) {
+			assertEquals(solver.getOptRoute(entry.getKey()), entry.getValue());
+		}
+
+		// without capacity and mps restrictions, the middle levels have enough states to be split into tasks
+		TestModel test = createLargeTest(9);
+		RouteEvaluator evaluator = RouteEvaluatorTest.createEvaluator(test);
+		double expected = evaluator.getCost(RouteEvaluatorTest.getStops(test, new Psaraftis().getOptRoute(test)));
+
+		assertEquals(expected, evaluator.getCost(RouteEvaluatorTest.getStops(test, solver.getOptRoute(test))), 1e-6);
+	}
+
+	@Test
+	public void getOptRoutePruningTest() {
+		Psaraftis solver = new Psaraftis();
+		solver.setReachableOnly(true);
+		solver.setPruning(true);
+
+		// the portfolio solver prunes with several threads
+		Psaraftis parallelSolver = new Psaraftis();
+		parallelSolver.setReachableOnly(true);
+		parallelSolver.setPruning(true);
+		parallelSolver.setParallelism(4);
+
+		// routes with the same cost might differ, so only the costs are compared
+		for (int n = 1; n <= 8; n++) {
+			for (int c = 1; c <= 3; c++) {
+				TestModel test = createLargeTest(n);
+				test.getParametersModel().setCapacity(c);
+				test.getParametersModel().setMPS(1 + n % 3);
+				test.getParametersModel().setWeight(20 * (n % 5));
+
+				RouteEvaluator evaluator = RouteEvaluatorTest.createEvaluator(test);
+				int[] optimal = RouteEvaluatorTest.getStops(test, new Psaraftis().getOptRoute(test));
+				double expected = evaluator.getCost(optimal);
+
+				solver.setIncumbent(null);
+				assertEquals(expected, evaluator.getCost(RouteEvaluatorTest.getStops(test, solver.getOptRoute(test))), 1e-6);
+
+				// an optimal incumbent prunes every state
+				Incumbent incumbent = new Incumbent();
+				incumbent.update(optimal, expected);
+
+				solver.setIncumbent(incumbent);
+				assertEquals(expected, evaluator.getCost(RouteEvaluatorTest.getStops(test, solver.getOptRoute(test))), 1e-6);
+
+				assertEquals(expected, evaluator.getCost(RouteEvaluatorTest.getStops(test, parallelSolver.getOptRoute(test))), 1e-6);
+			}
+		}
+
+		// like without pruning, the route of a test without a feasible route only contains the start position
+		solver.setIncumbent(null);
+		assertStartOnlyWhenInfeasible(solver);
+	}
+
+	@Test
+	public void progressTest() {
+		Psaraftis solver = new Psaraftis();
+		List<Progress> reports = Collections.synchronizedList(new ArrayList<>());
+		solver.setProgressListener(reports::add);
+
+		for (boolean reachableOnly : new boolean[] { false, true }) {
+			solver.setReachableOnly(reachableOnly);
+			reports.clear();
+
+			List<MyWaypoint> route = solver.getOptRoute(createLargeTest(6));
+
+			// every phase starts with an empty and ends with a complete report
+			Progress last = reports.get(reports.size() - 1);
+			assertEquals(Progress.Phase.IDENTIFICATION, last.getPhase());
+			assertEquals(route.size() - 1, last.getProcessed());
+			assertEquals(last.getTotal(), last.getProcessed());
+
+			for (Progress progress : reports) {
+				if (progress.getPhase() == Progress.Phase.RECURSION && progress.getProcessed() == progress.getTotal()) {
+					assertTrue(progress.getFeasible() > 0);
+				}
+			}
+		}
+
+		// the listener can be removed
+		solver.setProgressListener(null);
+		reports.clear();
+		solver.getOptRoute(createLargeTest(4));
+		assertTrue(reports.isEmpty());
+	}
+
+	@Test
+	public void cancelTest() throws InterruptedException {
+		TestModel test = createLargeTest(12);
+
+		// an interrupted thread stops immediately
+		Psaraftis solver = new Psaraftis();
+		Thread.currentThread().interrupt();
+		assertThrows(CancellationException.class, () -> solver.getOptRoute(test));
+		Thread.interrupted();
+
+		// a cancellation before the calculation starts isn't lost
+		solver.cancel();
+		assertThrows(CancellationException.class, () -> solver.getOptRoute(test));
+
+		// cancel a running calculation from another thread as soon as it reports its progress
+		CountDownLatch started = new CountDownLatch(1);
+		solver.setProgressListener(progress -> started.countDown());
+
+		AtomicReference<Throwable> thrown = new AtomicReference<>();
+		Thread thread = new Thread(() -> {
+			try {
+				solver.getOptRoute(test);
+			} catch (Throwable t) {
+				thrown.set(t);
+			}
+		});
+
+		thread.start();
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		solver.cancel();
+		thread.join(5000);
+
+		assertTrue(!thread.isAlive());
+		assertTrue(thrown.get() instanceof CancellationException);
+
+		solver.setProgressListener(null);
+
+		// the solver can be used again after it was cancelled
+		for (Entry<TestModel, List<MyWaypoint>> entry : expectedResults.entrySet()) {
+			assertEquals(solver.getOptRoute(entry.getKey()), entry.getValue());
+		}
+	}
+
+	/**
+	 * Creates a test with the given number of customers and without capacity or mps restrictions.
+	 * @param n the number of customers
+	 * @return the test
+	 */
+	public static TestModel createLargeTest(int n) {
+		TestModel test = new TestModel();
+		List<MyWaypoint> starts = new ArrayList<>();
+		List<MyWaypoint> dests = new ArrayList<>();
+
+		starts.add(new MyWaypoint("AS", new GeoPosition(0, 0)));
+
+		for (int i = 1; i <= n; i++) {
+			starts.add(new MyWaypoint("K" + i + "S", new GeoPosition((i * 7) % 11, (i * 5) % 13)));
+			dests.add(new MyWaypoint("K" + i + "Z", new GeoPosition((i * 3) % 17, (i * 11) % 7)));
+		}
+
+		test.getRequestsModel().setStartWaypoints(starts);
+		test.getRequestsModel().setDestWaypoints(dests);
+		test.getParametersModel().setCapacity(n);
+		test.getParametersModel().setMPS(n);
+
+		return test;
+	}
+
+	/**
+	 * Asserts that a solver finds feasible routes with the optimal cost for tests with 1 to 8 customers and different constraints.
+	 * @param solver the solver
+	 */
+	public static void assertOptimalCosts(DarpSolver solver) {
+		assertOptimalCosts(solver, 1, 8);
+	}
+
+	/**
+	 * Asserts that a solver finds feasible routes with the optimal cost for tests with the given numbers of customers and different constraints.
+	 * Routes with the same cost might differ, so only the costs are compared with the routes of Psaraftis.
+	 * @param solver the solver
+	 * @param minCustomers the smallest number of customers
+	 * @param maxCustomers the largest number of customers
+	 */
+	public static void assertOptimalCosts(DarpSolver solver, int minCustomers, int maxCustomers) {
+		for (int n = minCustomers; n <= maxCustomers; n++) {
+			for (int c = 1; c <= 3; c++) {
+				TestModel test = createLargeTest(n);
+				ParametersModel parameters = test.getParametersModel();
+				parameters.setCapacity(c);
+				parameters.setMPS(1 + n % 3);
+				parameters.setWeight(20 * (n % 5));
+
+				RouteEvaluator evaluator = RouteEvaluatorTest.createEvaluator(test);
+				int[] expected = RouteEvaluatorTest.getStops(test, new Psaraftis().getOptRoute(test));
+				int[] route = RouteEvaluatorTest.getStops(test, solver.getOptRoute(test));
+
+				assertTrue(evaluator.isFeasible(route));
+				assertEquals(evaluator.getCost(expected), evaluator.getCost(route), 1e-6);
+			}
+		}
+	}
+
+	/**
+	 * Asserts that, like the route of Psaraftis, the route of a solver for a test without a feasible route only contains the start position.
+	 * @param solver the solver
+	 */
+	public static void assertStartOnlyWhenInfeasible(DarpSolver solver) {
+		for (int n = 1; n <= 3; n += 2) {
+			TestModel test = createLargeTest(n);
+			test.getParametersModel().setCapacity(0);
+
+			List<MyWaypoint> route = solver.getOptRoute(test);
+
+			assertEquals(1, route.size());
+			assertEquals(new Psaraftis().getOptRoute(test), route);
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,148 @@
+package darp.algorithm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import darp.jxmapviewer2.MyWaypoint;
+import darp.models.ParametersModel;
+import darp.models.TestModel;
+
+/**
+ * Tests the RouteEvaluator and Route classes.
+ * @author Daniel Schröder
+ */
+public class RouteEvaluatorTest {
+
+	@Test
+	public void getCostTest() {
+		TestModel test = PsaraftisTest.createLargeTest(4);
+		ParametersModel parameters = test.getParametersModel();
+		parameters.setCapacity(2);
+		parameters.setMPS(1);
+		parameters.setWeight(50);
+
+		RouteEvaluator evaluator = createEvaluator(test);
+
+		// the customers one after the other
+		assertTrue(evaluator.isFeasible(new int[] { 0, 1, 5, 2, 6, 3, 7, 4, 8 }));
+
+		// precedence, capacity and maximum position shift
+		assertEquals(1, evaluator.getViolations(new int[] { 0, 5, 1, 2, 6, 3, 7, 4, 8 }));
+		assertEquals(1, evaluator.getViolations(new int[] { 0, 1, 2, 3, 5, 6, 7, 4, 8 }));
+		assertEquals(2, evaluator.getViolations(new int[] { 0, 2, 6, 3, 7, 1, 5, 4, 8 }));
+		assertTrue(!evaluator.isFeasible(new int[] { 0, 1, 5 }));
+
+		assertThrows(IllegalArgumentException.class, () -> evaluator.getCost(new int[] { 1, 0 }));
+		assertThrows(IllegalArgumentException.class, () -> evaluator.getCost(new int[] { 0, 1, 1 }));
+
+		// no route is feasible without capacity
+		assertTrue(evaluator.hasFeasibleRoute());
+		parameters.setCapacity(0);
+		assertTrue(!createEvaluator(test).hasFeasibleRoute());
+		parameters.setCapacity(2);
+
+		// the optimal route is feasible
+		int[] optRoute = getStops(test, new Psaraftis().getOptRoute(test));
+		assertTrue(evaluator.isFeasible(optRoute));
+
+		Route route = new Route(evaluator, optRoute);
+
+		// no move improves the optimal route
+		for (int i = 1; i < route.size(); i++) {
+			for (int j = 1; j < route.size(); j++) {
+				assertTrue(route.evaluateSwap(i, j) >= route.getCost() - 1e-9);
+				assertTrue(route.evaluateRelocate(i, j) >= route.getCost() - 1e-9);
+				assertTrue(route.evaluateTwoOpt(i, j) >= route.getCost() - 1e-9);
+			}
+		}
+
+		for (int i = 1; i < route.size() - 1; i++) {
+			for (int j = 1; j < route.size() - 1; j++) {
+				assertTrue(route.evaluateOrOpt(i, 2, j) >= route.getCost() - 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void evaluateMoveTest() {
+		TestModel test = PsaraftisTest.createLargeTest(6);
+		test.getParametersModel().setCapacity(3);
+		test.getParametersModel().setMPS(2);
+		test.getParametersModel().setWeight(30);
+
+		RouteEvaluator evaluator = createEvaluator(test);
+		Route route = new Route(evaluator, new int[] { 0, 1, 7, 2, 8, 3, 9, 4, 10, 5, 11, 6, 12 });
+		Random random = new Random(0);
+
+		// the evaluated cost of a move equals the cost of the route after the move
+		for (int k = 0; k < 1000; k++) {
+			int move = random.nextInt(4);
+			int length = move == 3 ? 1 + random.nextInt(3) : 1;
+			int i = 1 + random.nextInt(route.size() - length);
+			int j = 1 + random.nextInt(route.size() - length);
+
+			double cost = move == 0 ? route.evaluateSwap(i, j) : move == 1 ? route.evaluateRelocate(i, j)
+					: move == 2 ? route.evaluateTwoOpt(i, j) : route.evaluateOrOpt(i, length, j);
+
+			if (cost == Double.POSITIVE_INFINITY) {
+				continue;
+			}
+
+			if (move == 0) {
+				route.applySwap(i, j);
+			} else if (move == 1) {
+				route.applyRelocate(i, j);
+			} else if (move == 2) {
+				route.applyTwoOpt(i, j);
+			} else {
+				route.applyOrOpt(i, length, j);
+			}
+
+			assertTrue(route.isFeasible());
+			assertEquals(cost, route.getCost(), 1e-9);
+			assertEquals(evaluator.getCost(route.getStops()), route.getCost(), 1e-9);
+		}
+	}
+
+	/**
+	 * @param test the test
+	 * @return the evaluator for the straight-line distances of the test
+	 */
+	static RouteEvaluator createEvaluator(TestModel test) {
+		return new RouteEvaluator(new CostMatrix(getPoints(test)), test.getParametersModel());
+	}
+
+	/**
+	 * @param test the test
+	 * @return all points of the test
+	 */
+	private static List<MyWaypoint> getPoints(TestModel test) {
+		List<MyWaypoint> points = new ArrayList<>(test.getRequestsModel().getStartWaypoints());
+		points.addAll(test.getRequestsModel().getDestWaypoints());
+
+		return points;
+	}
+
+	/**
+	 * @param test the test
+	 * @param sequence a sequence of waypoints of the test
+	 * @return the stops of the sequence
+	 */
+	static int[] getStops(TestModel test, List<MyWaypoint> sequence) {
+		List<MyWaypoint> points = getPoints(test);
+		int[] stops = new int[sequence.size()];
+
+		for (int i = 0; i < stops.length; i++) {
+			stops[i] = points.indexOf(sequence.get(i));
+		}
+
+		return stops;
+	}
+}
@@ -0,0 +1,137 @@
+package darp.algorithm.optaplanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.optaplanner.core.api.score.buildin.hardsoftdouble.HardSoftDoubleScore;
+
+import darp.algorithm.CostMatrix;
+import darp.algorithm.Psaraftis;
+import darp.algorithm.PsaraftisTest;
+import darp.algorithm.RouteEvaluator;
+import darp.jxmapviewer2.MyWaypoint;
+import darp.models.ParametersModel;
+import darp.models.TestModel;
+
+/**
+ * Tests the DarpScoreCalculator class.
+ * @author Daniel Schröder
+ */
+public class DarpScoreCalculatorTest {
+
+	@Test
+	public void calculateScoreTest() {
+		TestModel test = PsaraftisTest.createLargeTest(3);
+		ParametersModel parameters = test.getParametersModel();
+		parameters.setCapacity(2);
+		parameters.setMPS(1);
+		parameters.setWeight(50);
+
+		List<MyWaypoint> points = new ArrayList<>(test.getRequestsModel().getStartWaypoints());
+		points.addAll(test.getRequestsModel().getDestWaypoints());
+
+		DarpSolution solution = new DarpSolution(new RouteEvaluator(new CostMatrix(points), parameters));
+
+		DarpScoreCalculator calculator = new DarpScoreCalculator();
+		calculator.resetWorkingSolution(solution);
+
+		// the route to start with is feasible
+		assertTrue(calculator.calculateScore().isFeasible());
+
+		// the optimal route has the best score of all feasible routes
+		List<MyWaypoint> optRoute = new Psaraftis().getOptRoute(test);
+		List<Visit> visits = new ArrayList<>();
+
+		for (MyWaypoint point : optRoute.subList(1, optRoute.size())) {
+			visits.add(findVisit(solution, points.indexOf(point)));
+		}
+
+		HardSoftDoubleScore optScore = setRoute(solution, calculator, visits);
+		assertTrue(optScore.isFeasible());
+
+		for (List<Visit> route : permutations(solution.getVisits())) {
+			HardSoftDoubleScore score = setRoute(solution, calculator, route);
+
+			if (score.isFeasible()) {
+				assertTrue(score.getSoftScore() <= optScore.getSoftScore() + 1e-9);
+			}
+
+			// the incremental score equals the score of a new calculation
+			DarpScoreCalculator newCalculator = new DarpScoreCalculator();
+			newCalculator.resetWorkingSolution(solution);
+			assertEquals(newCalculator.calculateScore().getSoftScore(), score.getSoftScore(), 1e-9);
+			assertEquals(newCalculator.calculateScore().getHardScore(), score.getHardScore());
+		}
+	}
+
+	/**
+	 * Returns the visit of a point.
+	 * @param solution the solution
+	 * @param point the point
+	 * @return the visit
+	 */
+	private static Visit findVisit(DarpSolution solution, int point) {
+		for (Visit visit : solution.getVisits()) {
+			if (visit.getPoint() == point) {
+				return visit;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Changes the chain of the solution to the given route and calculates the score incrementally.
+	 * @param solution the solution
+	 * @param calculator the score calculator
+	 * @param route the visits in the new order
+	 * @return the score
+	 */
+	private static HardSoftDoubleScore setRoute(DarpSolution solution, DarpScoreCalculator calculator, List<Visit> route) {
+		Standstill previous = solution.getVehicle();
+
+		for (Visit visit : route) {
+			if (visit.getPreviousStandstill() != previous) {
+				calculator.beforeVariableChanged(visit, "previousStandstill");
+				visit.setPreviousStandstill(previous);
+				calculator.afterVariableChanged(visit, "previousStandstill");
+			}
+
+			previous.setNextVisit(visit);
+			previous = visit;
+		}
+
+		previous.setNextVisit(null);
+
+		return calculator.calculateScore();
+	}
+
+	/**
+	 * @param visits the visits
+	 * @return all permutations of the visits
+	 */
+	private static List<List<Visit>> permutations(List<Visit> visits) {
+		List<List<Visit>> result = new ArrayList<>();
+
+		if (visits.isEmpty()) {
+			result.add(new ArrayList<>());
+			return result;
+		}
+
+		for (Visit visit : visits) {
+			List<Visit> rest = new ArrayList<>(visits);
+			rest.remove(visit);
+
+			for (List<Visit> permutation : permutations(rest)) {
+				permutation.add(0, visit);
+				result.add(permutation);
+			}
+		}
+
+		return result;
+	}
+}
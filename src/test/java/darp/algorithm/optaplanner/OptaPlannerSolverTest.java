@@ -0,0 +1,41 @@
+package darp.algorithm.optaplanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import darp.algorithm.Psaraftis;
+import darp.algorithm.PsaraftisTest;
+import darp.jxmapviewer2.MyWaypoint;
+import darp.models.TestModel;
+
+/**
+ * Tests the OptaPlannerSolver class.
+ * @author Daniel Schröder
+ */
+public class OptaPlannerSolverTest {
+
+	@Test
+	public void getOptRouteTest() {
+		OptaPlannerSolver solver = new OptaPlannerSolver();
+		solver.setTimeLimit(1000);
+
+		assertThrows(NullPointerException.class, () -> solver.getOptRoute(null));
+		assertThrows(IllegalArgumentException.class, () -> solver.setTimeLimit(0));
+
+		// the tests are small enough to find the optimal route
+		for (int n = 1; n <= 4; n++) {
+			TestModel test = PsaraftisTest.createLargeTest(n);
+			test.getParametersModel().setCapacity(2);
+			test.getParametersModel().setMPS(1);
+
+			List<MyWaypoint> expected = new Psaraftis().getOptRoute(test);
+			assertEquals(expected, solver.getOptRoute(test));
+		}
+
+		PsaraftisTest.assertStartOnlyWhenInfeasible(solver);
+	}
+}
@@ -0,0 +1,335 @@
+package darp.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.jxmapviewer.viewer.GeoPosition;
+
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.GraphBuilder;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.util.DistanceCalcEarth;
+
+import darp.jxmapviewer2.MyWaypoint;
+
+/**
+ * Tests the Router class.
+ * @author Daniel Schröder
+ */
+public class RouterTest {
+
+	// the number of nodes per side of the grid and the distance between them (in degrees)
+	private static final int SIZE = 15;
+	private static final double SPACING = 0.001;
+
+	@Test
+	public void concurrentSessionsTest() throws Exception {
+		EncodingManager encodingManager = new EncodingManager("car");
+		FlagEncoder encoder = encodingManager.getEncoder("car");
+		GraphHopperStorage graph = createGrid(encodingManager, encoder);
+
+		LocationIndex index = new LocationIndexTree(graph, new RAMDirectory()).prepareIndex();
+
+		// the tests share some of their waypoints, the last waypoint is too far away from any road
+		List<MyWaypoint> points = new ArrayList<>();
+		Random random = new Random(1);
+
+		for (int i = 0; i < 12; i++) {
+			points.add(new MyWaypoint("P" + i, new GeoPosition(51.9 + random.nextInt(SIZE) * SPACING, 7.6 + random.nextInt(SIZE) * SPACING)));
+		}
+
+		points.add(new MyWaypoint("P12", new GeoPosition(0, 0)));
+
+		List<List<MyWaypoint>> tests = new ArrayList<>();
+
+		for (int i = 0; i < 8; i++) {
+			List<MyWaypoint> test = new ArrayList<>();
+
+			for (int j = 0; j < 6; j++) {
+				test.add(points.get((2 * i + j) % points.size()));
+			}
+
+			tests.add(test);
+		}
+
+		// the results of the tests one after the other
+		List<double[][]> expectedTimes = new ArrayList<>();
+		List<List<List<GeoPosition>>> expectedPaths = new ArrayList<>();
+
+		try (Router router = new Router(graph, index, encoder)) {
+			for (List<MyWaypoint> test : tests) {
+				expectedTimes.add(router.getTimes(test));
+				expectedPaths.add(getPaths(router, test));
+			}
+		}
+
+		// the same tests by several threads at the same time (each thread replaces the session of the others)
+		Router router = new Router(graph, index, encoder);
+		ExecutorService executor = Executors.newFixedThreadPool(tests.size());
+		CountDownLatch start = new CountDownLatch(1);
+
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+
+			for (int t = 0; t < tests.size(); t++) {
+				int first = t;
+
+				results.add(executor.submit(() -> {
+					start.await();
+
+					for (int k = 0; k < tests.size(); k++) {
+						int i = (first + k) % tests.size();
+						List<MyWaypoint> test = tests.get(i);
+
+						if (!Arrays.deepEquals(expectedTimes.get(i), router.getTimes(test)) || !expectedPaths.get(i).equals(getPaths(router, test))) {
+							return false;
+						}
+					}
+
+					return true;
+				}));
+			}
+
+			start.countDown();
+
+			for (Future<Boolean> result : results) {
+				assertTrue(result.get(30, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+			router.close();
+		}
+
+		// the threads of the router are stopped
+		assertTrue(router.getExecutor().isShutdown());
+		assertTrue(router.getExecutor().awaitTermination(5, TimeUnit.SECONDS));
+
+		// the waypoint without a road nearby can't be reached
+		assertEquals(Double.MAX_VALUE, expectedTimes.get(4)[0][4]);
+		assertEquals(Double.MAX_VALUE, expectedTimes.get(4)[4][0]);
+	}
+
+	@Test
+	public void travelTimesTest() {
+		EncodingManager encodingManager = new EncodingManager("car");
+		FlagEncoder encoder = encodingManager.getEncoder("car");
+		GraphHopperStorage graph = new GraphBuilder(encodingManager).create();
+		NodeAccess nodes = graph.getNodeAccess();
+
+		int size = 5;
+
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				nodes.setNode(y * size + x, 51.9 + y * SPACING, 7.6 + x * SPACING);
+			}
+		}
+
+		// the waypoints at some nodes and their nodes in the reference graph
+		List<MyWaypoint> points = new ArrayList<>();
+		List<Integer> pointNodes = new ArrayList<>();
+
+		for (int node : new int[] { 0, 4, 12, 20, 24 }) {
+			points.add(new MyWaypoint("N" + node, new GeoPosition(nodes.getLatitude(node), nodes.getLongitude(node))));
+			pointNodes.add(node);
+		}
+
+		// the edges of the reference graph in the direction they can be used (start node, end node, travel time in millis)
+		List<double[]> arcs = new ArrayList<>();
+		int referenceNodes = size * size;
+
+		DistanceCalcEarth distanceCalc = new DistanceCalcEarth();
+		Random random = new Random(2);
+		boolean splitEdge = false;
+
+		for (int a = 0; a < size * size; a++) {
+			for (int b : new int[] { a % size + 1 < size ? a + 1 : -1, a + size < size * size ? a + size : -1 }) {
+				if (b == -1) {
+					continue;
+				}
+
+				// 0: both directions, 1: only from a to b, 2: only from b to a
+				int direction = random.nextInt(3);
+				double speed = 5 * (1 + random.nextInt(20));
+				double distance = distanceCalc.calcDist(nodes.getLatitude(a), nodes.getLongitude(a), nodes.getLatitude(b), nodes.getLongitude(b));
+
+				graph.edge(a, b).setDistance(distance).setFlags(encoder.setProperties(speed, direction != 2, direction != 1));
+
+				// a waypoint in the middle of every third one-way edge, which is snapped to a virtual node that splits the edge
+				if (direction != 0 && random.nextInt(3) == 0) {
+					int middle = referenceNodes++;
+
+					points.add(new MyWaypoint("E" + a + "-" + b, new GeoPosition((nodes.getLatitude(a) + nodes.getLatitude(b)) / 2,
+							(nodes.getLongitude(a) + nodes.getLongitude(b)) / 2)));
+					pointNodes.add(middle);
+
+					addArcs(arcs, a, middle, distance / 2, speed, direction);
+					addArcs(arcs, middle, b, distance / 2, speed, direction);
+
+					splitEdge = true;
+				} else {
+					addArcs(arcs, a, b, distance, speed, direction);
+				}
+			}
+		}
+
+		assertTrue(splitEdge);
+
+		LocationIndex index = new LocationIndexTree(graph, new RAMDirectory()).prepareIndex();
+		boolean asymmetric = false;
+
+		try (Router router = new Router(graph, index, encoder)) {
+			double[][] times = router.getTimes(points);
+
+			for (int i = 0; i < points.size(); i++) {
+				int[] edges = new int[referenceNodes];
+				double[] expected = getReferenceTimes(referenceNodes, arcs, pointNodes.get(i), edges);
+
+				for (int j = 0; j < points.size(); j++) {
+					int to = pointNodes.get(j);
+
+					if (expected[to] == Double.POSITIVE_INFINITY) {
+						assertEquals(Double.MAX_VALUE, times[i][j]);
+					} else {
+						// the time of each edge is rounded down to whole millis
+						assertEquals(expected[to], times[i][j], edges[to] + 1e-6);
+					}
+
+					asymmetric |= Math.abs(times[i][j] - times[j][i]) > 1000;
+				}
+			}
+		}
+
+		// the one-way edges make some routes longer in one direction
+		assertTrue(asymmetric);
+	}
+
+	/**
+	 * Adds the edges of a road to the reference graph in the directions the road can be used.
+	 * @param arcs the edges of the reference graph
+	 * @param a the first node of the road
+	 * @param b the second node of the road
+	 * @param distance the distance (in meters)
+	 * @param speed the speed (in km/h)
+	 * @param direction 0 for both directions, 1 for only from a to b, 2 for only from b to a
+	 */
+	private static void addArcs(List<double[]> arcs, int a, int b, double distance, double speed, int direction) {
+		double time = distance * 3600 / speed;
+
+		if (direction != 2) {
+			arcs.add(new double[] { a, b, time });
+		}
+
+		if (direction != 1) {
+			arcs.add(new double[] { b, a, time });
+		}
+	}
+
+	/**
+	 * A plain Dijkstra search on the reference graph.
+	 * @param nodes the number of nodes
+	 * @param arcs the edges (start node, end node, travel time)
+	 * @param from the start node
+	 * @param edges is filled with the number of edges of the fastest path to each node
+	 * @return the travel times to all nodes or {@link Double#POSITIVE_INFINITY} if a node can't be reached
+	 */
+	private static double[] getReferenceTimes(int nodes, List<double[]> arcs, int from, int[] edges) {
+		double[] times = new double[nodes];
+		boolean[] settled = new boolean[nodes];
+
+		Arrays.fill(times, Double.POSITIVE_INFINITY);
+		times[from] = 0;
+
+		while (true) {
+			int node = -1;
+
+			for (int i = 0; i < nodes; i++) {
+				if (!settled[i] && times[i] < Double.POSITIVE_INFINITY && (node == -1 || times[i] < times[node])) {
+					node = i;
+				}
+			}
+
+			if (node == -1) {
+				return times;
+			}
+
+			settled[node] = true;
+
+			for (double[] arc : arcs) {
+				int to = (int) arc[1];
+
+				if ((int) arc[0] == node && times[node] + arc[2] < times[to]) {
+					times[to] = times[node] + arc[2];
+					edges[to] = edges[node] + 1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a grid of roads with different speeds.
+	 * @param encodingManager the encoding manager of the car
+	 * @param encoder the encoder of the car
+	 * @return the graph
+	 */
+	private static GraphHopperStorage createGrid(EncodingManager encodingManager, FlagEncoder encoder) {
+		GraphHopperStorage graph = new GraphBuilder(encodingManager).create();
+		NodeAccess nodes = graph.getNodeAccess();
+		Random random = new Random(0);
+
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < SIZE; x++) {
+				nodes.setNode(y * SIZE + x, 51.9 + y * SPACING, 7.6 + x * SPACING);
+			}
+		}
+
+		for (int y = 0; y < SIZE; y++) {
+			for (int x = 0; x < SIZE; x++) {
+				int node = y * SIZE + x;
+
+				if (x + 1 < SIZE) {
+					graph.edge(node, node + 1).setDistance(70 + random.nextInt(30)).setFlags(encoder.setProperties(5 * (1 + random.nextInt(20)), true, true));
+				}
+
+				if (y + 1 < SIZE) {
+					graph.edge(node, node + SIZE).setDistance(110 + random.nextInt(30)).setFlags(encoder.setProperties(5 * (1 + random.nextInt(20)), true, true));
+				}
+			}
+		}
+
+		return graph;
+	}
+
+	/**
+	 * @param router the router
+	 * @param points the waypoints of a test
+	 * @return the paths between all waypoints of the test
+	 */
+	private static List<List<GeoPosition>> getPaths(Router router, List<MyWaypoint> points) {
+		RoutingSession session = router.getSession(points);
+		List<List<GeoPosition>> paths = new ArrayList<>();
+
+		for (MyWaypoint start : points) {
+			for (MyWaypoint dest : points) {
+				paths.add(session.getPath(start, dest));
+			}
+		}
+
+		return paths;
+	}
+}
@@ -0,0 +1,82 @@
+package darp.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the TravelTimeCache class.
+ * @author Daniel Schröder
+ */
+public class TravelTimeCacheTest {
+
+	@Test
+	public void cacheTest() throws IOException {
+		File file = Files.createTempFile("travel-times", ".cache").toFile();
+		file.delete();
+
+		try {
+			assertThrows(NullPointerException.class, () -> new TravelTimeCache(null, "a", 10));
+			assertThrows(IllegalArgumentException.class, () -> new TravelTimeCache(file, "a", 0));
+
+			try (TravelTimeCache cache = new TravelTimeCache(file, "a", 10)) {
+				assertTrue(Double.isNaN(cache.get(51.96, 7.62, 51.95, 7.63)));
+
+				cache.put(51.96, 7.62, 51.95, 7.63, 1234);
+				cache.put(51.95, 7.63, 51.96, 7.62, Double.MAX_VALUE);
+
+				// the positions are rounded
+				assertEquals(1234, cache.get(51.96, 7.62, 51.95, 7.63));
+				assertEquals(1234, cache.get(51.96000001, 7.62, 51.95, 7.63));
+				assertEquals(1, cache.getMisses());
+				assertEquals(2, cache.getHits());
+			}
+
+			// the travel times survive a restart
+			try (TravelTimeCache cache = new TravelTimeCache(file, "a", 10)) {
+				assertEquals(2, cache.size());
+				assertEquals(1234, cache.get(51.96, 7.62, 51.95, 7.63));
+				assertEquals(Double.MAX_VALUE, cache.get(51.95, 7.63, 51.96, 7.62));
+			}
+
+			// an incomplete last travel time is ignored
+			Files.write(file.toPath(), new byte[5], StandardOpenOption.APPEND);
+
+			try (TravelTimeCache cache = new TravelTimeCache(file, "a", 10)) {
+				assertEquals(2, cache.size());
+				cache.put(0, 0, 1, 1, 42);
+			}
+
+			try (TravelTimeCache cache = new TravelTimeCache(file, "a", 10)) {
+				assertEquals(3, cache.size());
+				assertEquals(42, cache.get(0, 0, 1, 1));
+			}
+
+			// the travel times of other map data are removed
+			try (TravelTimeCache cache = new TravelTimeCache(file, "b", 10)) {
+				assertEquals(0, cache.size());
+			}
+
+			// only the most recently used travel times are kept in memory
+			try (TravelTimeCache cache = new TravelTimeCache(file, "b", 2)) {
+				cache.put(0, 0, 1, 1, 1);
+				cache.put(0, 0, 2, 2, 2);
+				cache.get(0, 0, 1, 1);
+				cache.put(0, 0, 3, 3, 3);
+
+				assertEquals(2, cache.size());
+				assertEquals(1, cache.get(0, 0, 1, 1));
+				assertTrue(Double.isNaN(cache.get(0, 0, 2, 2)));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+}